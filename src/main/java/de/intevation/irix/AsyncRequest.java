@@ -0,0 +1,471 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * A request processed asynchronously on a thread of the IRIXClient.
+ *
+ * The container thread is released as soon as the request is handed to
+ * the request executor. Exactly one of the worker, the timeout or the
+ * rejection completes the request. On timeout the worker is interrupted,
+ * which aborts pending requests to mapfish-print or image hosts, and the
+ * client gets a 503.
+ *
+ * The worker writes to a fenced response: once the request has been
+ * completed, its writes fail instead of reaching a response the container
+ * may already have recycled for another request. A timeout never waits
+ * for a write of the worker, which may be stalled by a client that
+ * stopped reading.
+ */
+public class AsyncRequest implements Runnable, AsyncListener {
+    private static System.Logger log = System.getLogger(AsyncRequest.class.getName());
+
+    /** Seconds after which a rejected client may retry. */
+    private static final String RETRY_AFTER = "10";
+
+    /** Processing of the request. */
+    public interface Handler {
+        /**
+         * Process the request.
+         *
+         * @param request the request.
+         * @param response the response.
+         * @throws ServletException if the request could not be processed.
+         * @throws IOException if reading or writing failed.
+         */
+        void handle(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException;
+    }
+
+    private final AsyncContext context;
+    private final Handler handler;
+
+    /**
+     * Thread currently processing the request. It is only interrupted and
+     * cleared while holding the lock of this request.
+     */
+    private volatile Thread worker;
+
+    /** Whether the request has been completed. */
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /** Held by the worker while it uses the response. */
+    private final ReentrantLock io = new ReentrantLock();
+
+    /**
+     * Create an asynchronous request.
+     *
+     * @param ctx the started asynchronous context.
+     * @param requestHandler the processing of the request.
+     */
+    public AsyncRequest(AsyncContext ctx, Handler requestHandler) {
+        this.context = ctx;
+        this.handler = requestHandler;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+        worker = Thread.currentThread();
+        if (finished.get()) {
+            release();
+            return;
+        }
+        HttpServletResponse response = new FencedResponse(
+            (HttpServletResponse) context.getResponse());
+        try {
+            handler.handle((HttpServletRequest) context.getRequest(),
+                response);
+        } catch (ServletException | IOException | RuntimeException e) {
+            if (finished.get()) {
+                log.log(WARNING, "Processing of completed request aborted: "
+                    + e.getMessage());
+                return;
+            }
+            log.log(ERROR, "Processing request failed.", e);
+            fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                e.getMessage());
+        } finally {
+            release();
+            if (finished.compareAndSet(false, true)) {
+                context.complete();
+            }
+        }
+    }
+
+    /** Detach the worker from the request. */
+    private synchronized void release() {
+        worker = null;
+        // do not pass an interrupt on to the next request
+        Thread.interrupted();
+    }
+
+    /**
+     * Complete the request with a 503 because the executor is busy.
+     */
+    public void reject() {
+        HttpServletResponse response =
+            (HttpServletResponse) context.getResponse();
+        response.setHeader("Retry-After", RETRY_AFTER);
+        fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            "Too many requests in progress.");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        if (finished.get()) {
+            return;
+        }
+        log.log(WARNING, "Request timed out after "
+            + context.getTimeout() + " ms.");
+        // fence the worker off before waking it up
+        fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            "Request timed out.");
+        synchronized (this) {
+            Thread current = worker;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onError(AsyncEvent event) {
+        log.log(WARNING, "Asynchronous request failed: "
+            + event.getThrowable());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onComplete(AsyncEvent event) {
+        // nothing to clean up
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // not restarted
+    }
+
+    private void fail(int status, String message) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        HttpServletResponse response =
+            (HttpServletResponse) context.getResponse();
+        // a worker stuck in a write has committed the response anyway
+        if (!io.tryLock()) {
+            context.complete();
+            return;
+        }
+        try {
+            if (!response.isCommitted()) {
+                response.sendError(status, message);
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.log(WARNING, "Could not send error: " + e.getMessage());
+        } finally {
+            io.unlock();
+            context.complete();
+        }
+    }
+
+    /**
+     * Fail if the request has been completed. Callers hold {@link #io}
+     * while they use the response.
+     */
+    private void checkOpen() throws IOException {
+        if (finished.get()) {
+            throw new IOException("Request already completed.");
+        }
+    }
+
+    /** Response of the worker, cut off once the request is completed. */
+    private final class FencedResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        FencedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                if (stream == null) {
+                    stream = new FencedStream(super.getOutputStream());
+                }
+                return stream;
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                if (writer == null) {
+                    writer = new PrintWriter(
+                        new FencedWriter(super.getWriter()));
+                }
+                return writer;
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                super.sendError(sc, msg);
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                super.sendError(sc);
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                super.sendRedirect(location);
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                super.flushBuffer();
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    super.setStatus(sc);
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    super.setHeader(name, value);
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    super.addHeader(name, value);
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void setContentType(String type) {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    super.setContentType(type);
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    super.setContentLength(len);
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    super.setContentLengthLong(len);
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+    }
+
+    /** Output stream of the worker, cut off once the request is completed. */
+    private final class FencedStream extends ServletOutputStream {
+        private final ServletOutputStream out;
+
+        FencedStream(ServletOutputStream target) {
+            this.out = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                out.write(b);
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                out.write(b, off, len);
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                out.flush();
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    out.close();
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            out.setWriteListener(listener);
+        }
+    }
+
+    /** Writer of the worker, cut off once the request is completed. */
+    private final class FencedWriter extends Writer {
+        private final Writer out;
+
+        FencedWriter(Writer target) {
+            this.out = target;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                out.write(cbuf, off, len);
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            io.lock();
+            try {
+                checkOpen();
+                out.flush();
+            } finally {
+                io.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            io.lock();
+            try {
+                if (!finished.get()) {
+                    out.close();
+                }
+            } finally {
+                io.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Storage for the attachments of a single request.
+ *
+ * Payloads up to a memory threshold are kept on the heap, larger ones
+ * in temporary files. They are hashed with the configured algorithm
+ * while they are written. The store is closed at the end of the request,
+ * after the report has been marshalled or uploaded, which deletes all
+ * its temporary files. The store may be used by several threads.
+ */
+public class AttachmentStore implements Closeable {
+    private static System.Logger log = System.getLogger(AttachmentStore.class.getName());
+
+    /** Default number of bytes of a payload kept in memory. */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1048576;
+
+    /**
+     * Produces the content of an attachment.
+     *
+     * @param <E> the checked exception type besides IOException.
+     */
+    public interface Writer<E extends Exception> {
+        /**
+         * Write the content.
+         *
+         * @param out the stream to write to.
+         * @throws IOException if reading or writing failed.
+         * @throws E if the source returned an error.
+         */
+        void writeTo(OutputStream out) throws IOException, E;
+    }
+
+    private final int memoryThreshold;
+    private final Path dir;
+    private final String algorithm;
+    private final List<Path> files = new ArrayList<Path>();
+    private boolean closed;
+
+    /**
+     * Create a store hashing with {@link Digests#DEFAULT_ALGORITHM}.
+     *
+     * @param threshold number of bytes of a payload kept in memory.
+     * @param tempDir directory for temporary files.
+     */
+    public AttachmentStore(int threshold, Path tempDir) {
+        this(threshold, tempDir, Digests.DEFAULT_ALGORITHM);
+    }
+
+    /**
+     * Create a store.
+     *
+     * @param threshold number of bytes of a payload kept in memory.
+     * @param tempDir directory for temporary files.
+     * @param hashAlgorithm one of {@link Digests#ALGORITHMS}.
+     */
+    public AttachmentStore(int threshold, Path tempDir,
+            String hashAlgorithm) {
+        this.memoryThreshold = threshold;
+        this.dir = tempDir;
+        this.algorithm = hashAlgorithm;
+    }
+
+    /**
+     * Create a sink for a new payload.
+     *
+     * @return the sink.
+     */
+    public PayloadSink newSink() {
+        return new PayloadSink(this, memoryThreshold, algorithm);
+    }
+
+    /**
+     * Store the content produced by a writer.
+     *
+     * @param <E> the checked exception type of the writer.
+     * @param writer the producer of the content.
+     * @return the stored payload.
+     * @throws IOException if reading or writing failed.
+     * @throws E if the source returned an error.
+     */
+    public <E extends Exception> Payload store(Writer<E> writer)
+            throws IOException, E {
+        PayloadSink sink = newSink();
+        try {
+            writer.writeTo(sink);
+        } finally {
+            sink.close();
+        }
+        return sink.toPayload();
+    }
+
+    /**
+     * Store a base64 encoded value, optionally given as data URI.
+     *
+     * @param value the base64 encoded content.
+     * @return the decoded payload.
+     * @throws IllegalArgumentException if the value is not valid base64.
+     * @throws IOException if writing a temporary file failed.
+     */
+    public Payload storeBase64(String value) throws IOException {
+        PayloadSink sink = newSink();
+        try {
+            sink.writeBase64(new StringReader(value));
+        } catch (IOException e) {
+            // a string can only fail on invalid content
+            throw new IllegalArgumentException(
+                "Invalid base64 value: " + e.getMessage(), e);
+        } finally {
+            sink.close();
+        }
+        return sink.toPayload();
+    }
+
+    /**
+     * Store a spilled base64 encoded value, optionally given as data URI.
+     *
+     * @param value the base64 encoded content.
+     * @return the decoded payload.
+     * @throws IOException if reading failed or the value is not valid
+     *                     base64.
+     */
+    public Payload storeBase64(SpilledValue value) throws IOException {
+        PayloadSink sink = newSink();
+        try (Reader in = value.openReader()) {
+            sink.writeBase64(in);
+        } finally {
+            sink.close();
+        }
+        return sink.toPayload();
+    }
+
+    /**
+     * Delete all temporary files.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.log(WARNING, "Could not delete " + file + ": "
+                    + e.getMessage());
+            }
+        }
+        files.clear();
+    }
+
+    /**
+     * Create a temporary file owned by this store.
+     *
+     * @return the new empty file.
+     * @throws IOException if the file could not be created or the store
+     *                     is already closed.
+     */
+    synchronized Path createTempFile() throws IOException {
+        if (closed) {
+            throw new IOException("Attachment store already closed.");
+        }
+        Path file = Files.createTempFile(dir, "irix-attachment", ".bin");
+        files.add(file);
+        log.log(DEBUG, "Spilling attachment to " + file);
+        return file;
+    }
+}
@@ -0,0 +1,213 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Bulkhead and circuit breaker of a single backend host.
+ *
+ * The bulkhead limits the number of concurrent requests to the host. A
+ * request waits a limited time for a free slot and is rejected after
+ * that, so a hanging host cannot tie up all threads of the servlet.
+ *
+ * The circuit opens after a number of consecutive failures, i.e.
+ * connection errors, timeouts or 5xx responses. While it is open,
+ * requests are rejected at once. After the open time a single probe
+ * request is let through; if it succeeds the circuit closes again,
+ * otherwise it stays open for another open time. Only the probe moves
+ * the circuit out of the open state: the outcome of a request admitted
+ * before the circuit opened tells nothing about the host now.
+ */
+public class BackendGuard {
+    private static System.Logger log = System.getLogger(BackendGuard.class.getName());
+
+    /** State of the circuit. */
+    public enum State {
+        /** Requests pass. */
+        CLOSED,
+        /** Requests are rejected. */
+        OPEN,
+        /** A probe request is in flight, others are rejected. */
+        HALF_OPEN
+    }
+
+    private final String host;
+    private final Semaphore permits;
+    private final long queueTimeoutMs;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Create a guard.
+     *
+     * @param backend the host, used in messages.
+     * @param maxConcurrent maximum number of concurrent requests.
+     * @param queueTimeout milliseconds a request waits for a free slot,
+     *                     a negative value waits without limit.
+     * @param threshold consecutive failures opening the circuit, 0 for
+     *                  a circuit that never opens.
+     * @param openTime milliseconds the circuit stays open before a probe.
+     */
+    public BackendGuard(String backend, int maxConcurrent, long queueTimeout,
+            int threshold, long openTime) {
+        this.host = backend;
+        this.permits = new Semaphore(maxConcurrent);
+        this.queueTimeoutMs = queueTimeout;
+        this.failureThreshold = threshold;
+        this.openMs = openTime;
+    }
+
+    /**
+     * Obtain the permission to send a request.
+     *
+     * Every successful call must be followed by
+     * {@link #release(boolean, boolean)}.
+     *
+     * @return true if the request is the probe of a half-open circuit,
+     *         to be passed on to {@link #release(boolean, boolean)}.
+     * @throws BackendUnavailableException if the circuit is open or no
+     *                                     slot became free in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean acquire()
+            throws BackendUnavailableException, InterruptedException {
+        boolean probe = allow();
+        boolean acquired = false;
+        try {
+            if (queueTimeoutMs < 0) {
+                permits.acquire();
+                acquired = true;
+            } else {
+                acquired = permits.tryAcquire(queueTimeoutMs,
+                    TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (!acquired && probe) {
+                cancelProbe();
+            }
+        }
+        if (!acquired) {
+            rejections.incrementAndGet();
+            throw new BackendUnavailableException("Too many concurrent "
+                + "requests to " + host + ", no free slot within "
+                + queueTimeoutMs + " ms.");
+        }
+        return probe;
+    }
+
+    /**
+     * Return the permission and record the outcome of the request.
+     *
+     * @param probe the result of {@link #acquire()}.
+     * @param success false if the host failed to answer properly.
+     */
+    public void release(boolean probe, boolean success) {
+        permits.release();
+        if (failureThreshold <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (probe) {
+                if (success) {
+                    log.log(INFO, "Circuit to " + host + " closed.");
+                    state = State.CLOSED;
+                    failures = 0;
+                } else {
+                    open();
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // admitted before the circuit opened
+                return;
+            }
+            if (success) {
+                failures = 0;
+                return;
+            }
+            failures++;
+            if (failures >= failureThreshold) {
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        log.log(WARNING, "Circuit to " + host + " opened after "
+            + failures + " consecutive failures.");
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * The state of the circuit.
+     *
+     * @return the state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Number of requests rejected by the circuit or the bulkhead.
+     *
+     * @return the rejection count.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * Check the circuit.
+     *
+     * @return true if the caller is the probe of a half-open circuit.
+     */
+    private synchronized boolean allow()
+            throws BackendUnavailableException {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now - openedAt >= openMs) {
+            log.log(INFO, "Circuit to " + host + " half-open, probing.");
+            state = State.HALF_OPEN;
+            return true;
+        }
+        rejections.incrementAndGet();
+        if (state == State.HALF_OPEN) {
+            throw new BackendUnavailableException("Circuit to " + host
+                + " is half-open, waiting for a probe request.");
+        }
+        throw new BackendUnavailableException("Circuit to " + host
+            + " is open after " + failures + " consecutive failures, retry"
+            + " in " + TimeUnit.MILLISECONDS.toSeconds(
+                openMs - (now - openedAt) + TimeUnit.SECONDS.toMillis(1) - 1)
+            + " s.");
+    }
+
+    /** Let the next request probe again, the probe was never sent. */
+    private synchronized void cancelProbe() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis() - openMs;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+
+/** Exception for requests rejected without contacting the backend. */
+public class BackendUnavailableException extends IOException {
+    /** A request was rejected by the {@link BackendGuard} of a host.
+     *
+     * @param message the reason, e.g. an open circuit.
+     */
+    public BackendUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -23,6 +23,9 @@ public class BaseServletContextListener implements ServletContextListener {
     private static System.Logger log =
         System.getLogger(BaseServletContextListener.class.getName());
 
+    /** Time to wait for pending uploads on shutdown. */
+    private static final long OUTBOX_DRAIN_TIMEOUT_MS = 30000;
+
     /** {@inheritDoc} */
     @Override
     public void  contextInitialized(ServletContextEvent sce) {
@@ -34,6 +37,54 @@ public class BaseServletContextListener implements ServletContextListener {
     /** {@inheritDoc} */
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
+        ServletContext sc = sce.getServletContext();
+        // drain the outbox while the upload service is still available
+        UploadOutbox outbox = (UploadOutbox)
+            sc.getAttribute(UploadOutbox.class.getName());
+        if (outbox != null) {
+            outbox.shutdown(OUTBOX_DRAIN_TIMEOUT_MS);
+        }
+        UploadServiceClient uploadService = (UploadServiceClient)
+            sc.getAttribute(UploadServiceClient.class.getName());
+        if (uploadService != null) {
+            uploadService.shutdown();
+        }
+        CapabilitiesCache capabilitiesCache = (CapabilitiesCache)
+            sc.getAttribute(CapabilitiesCache.class.getName());
+        if (capabilitiesCache != null) {
+            capabilitiesCache.shutdown();
+        }
+        RenderCache renderCache = (RenderCache)
+            sc.getAttribute(RenderCache.class.getName());
+        if (renderCache != null) {
+            renderCache.shutdown();
+        }
+        ImageCache imageCache = (ImageCache)
+            sc.getAttribute(ImageCache.class.getName());
+        if (imageCache != null) {
+            imageCache.shutdown();
+        }
+        ParallelFetcher fetcher = (ParallelFetcher)
+            sc.getAttribute(ParallelFetcher.class.getName());
+        if (fetcher != null) {
+            fetcher.shutdown();
+        }
+        ParallelFetcher batchFetcher = (ParallelFetcher)
+            sc.getAttribute(IRIXClient.BATCH_FETCHER_ATTRIBUTE);
+        if (batchFetcher != null) {
+            batchFetcher.shutdown();
+        }
+        JobRegistry jobs = (JobRegistry)
+            sc.getAttribute(JobRegistry.class.getName());
+        if (jobs != null) {
+            jobs.shutdown();
+        }
+        StageMetrics metrics = (StageMetrics)
+            sc.getAttribute(StageMetrics.class.getName());
+        if (metrics != null) {
+            metrics.shutdown();
+        }
+        OutboundHttp.shutdown();
     }
 
     private void initLogging(ServletContext sc) {
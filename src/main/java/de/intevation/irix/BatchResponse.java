@@ -0,0 +1,216 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Response to a batch of report requests.
+ *
+ * Without respond items the response is a JSON array with the status of
+ * every item in the order of the request. If at least one item asked for
+ * the report in the response, it is a multipart/mixed message: the first
+ * part is the status array, followed by one part per respond item carrying
+ * the report (or the error) of that item. The status entry of an item
+ * names its part in {@code part}, matching the Content-ID of the part.
+ */
+public class BatchResponse {
+
+    /** First HTTP status code considered an error. */
+    private static final int FIRST_ERROR_STATUS = 400;
+
+    /** Maximum length of an error body copied into the status array. */
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private static final String CRLF = "\r\n";
+
+    /** Outcome of a single item of a batch. */
+    public static final class Item {
+        private final int index;
+        private final boolean respond;
+        private final int httpStatus;
+        private final String contentType;
+        private final Payload body;
+        private final String message;
+
+        /**
+         * Create the outcome of an item.
+         *
+         * @param position index of the item in the batch.
+         * @param respondItem whether the item asked for the report.
+         * @param status the HTTP status the item would have produced.
+         * @param type content type of the body, may be null.
+         * @param content the body, may be null.
+         * @param error the error message, may be null.
+         */
+        public Item(int position, boolean respondItem, int status,
+                String type, Payload content, String error) {
+            this.index = position;
+            this.respond = respondItem;
+            this.httpStatus = status;
+            this.contentType = type;
+            this.body = content;
+            this.message = error;
+        }
+
+        /**
+         * The status code of the item.
+         *
+         * @return the HTTP status code.
+         */
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+
+        private boolean isFailed() {
+            return httpStatus >= FIRST_ERROR_STATUS;
+        }
+
+        private boolean hasPart() {
+            return respond && body != null && body.size() > 0;
+        }
+
+        private String partId() {
+            return "item-" + index;
+        }
+
+        private JSONObject toJSON() throws IOException {
+            JSONObject json = new JSONObject();
+            json.put("index", index);
+            if (isFailed()) {
+                json.put("status", "failed");
+            } else {
+                json.put("status", "done");
+            }
+            json.put("httpStatus", httpStatus);
+            String error = message;
+            if (error == null && isFailed() && body != null
+                    && body.size() <= MAX_MESSAGE_LENGTH) {
+                error = new String(body.toByteArray(),
+                    StandardCharsets.UTF_8);
+            }
+            if (error != null) {
+                json.put("message", error);
+            }
+            if (hasPart()) {
+                json.put("part", partId());
+            }
+            return json;
+        }
+    }
+
+    private final List<Item> items;
+    private final String boundary = "irix-batch-" + UUID.randomUUID();
+
+    /**
+     * Create the response.
+     *
+     * @param results the outcomes in the order of the batch.
+     */
+    public BatchResponse(List<Item> results) {
+        this.items = results;
+    }
+
+    /**
+     * Whether the response is a multipart message.
+     *
+     * @return true if an item asked for the report in the response.
+     */
+    public boolean isMultipart() {
+        for (Item item : items) {
+            if (item.respond) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The content type of the response.
+     *
+     * @return the content type including the boundary of a multipart
+     * response.
+     */
+    public String getContentType() {
+        if (isMultipart()) {
+            return "multipart/mixed; boundary=" + boundary;
+        }
+        return "application/json";
+    }
+
+    /**
+     * The status of all items.
+     *
+     * @return the status array.
+     * @throws IOException if an error body could not be read.
+     */
+    public JSONArray toJSON() throws IOException {
+        JSONArray status = new JSONArray();
+        for (Item item : items) {
+            status.put(item.toJSON());
+        }
+        return status;
+    }
+
+    /**
+     * Write the response body.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if writing failed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] status = toJSON().toString().getBytes(StandardCharsets.UTF_8);
+        if (!isMultipart()) {
+            out.write(status);
+            return;
+        }
+        writeHeaders(out, "application/json", "status", null);
+        out.write(status);
+        for (Item item : items) {
+            if (!item.hasPart()) {
+                continue;
+            }
+            write(out, CRLF);
+            writeHeaders(out, item.contentType, item.partId(),
+                item.httpStatus);
+            try (InputStream in = item.body.openStream()) {
+                in.transferTo(out);
+            }
+        }
+        write(out, CRLF + "--" + boundary + "--" + CRLF);
+    }
+
+    private void writeHeaders(OutputStream out, String type, String id,
+            Integer status) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        headers.append("--").append(boundary).append(CRLF);
+        if (type != null) {
+            headers.append("Content-Type: ").append(type).append(CRLF);
+        }
+        headers.append("Content-ID: <").append(id).append('>').append(CRLF);
+        if (status != null) {
+            headers.append("X-IRIX-Status: ").append(status).append(CRLF);
+        }
+        headers.append(CRLF);
+        write(out, headers.toString());
+    }
+
+    private static void write(OutputStream out, String text)
+            throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,291 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Cache for the layouts announced in the capabilities.json of
+ * mapfish-print apps.
+ *
+ * Entries are keyed by the capabilities URL, i.e. by print base URL and
+ * print app, and hold the set of layout names. An entry that is older
+ * than three quarters of its time to live is refreshed in the background
+ * while the cached layouts are still served, so requests only wait for
+ * mapfish-print if an app was not asked for a full time to live.
+ * Listeners are told when the capabilities of an app differ from the
+ * ones loaded before. Concurrent loads of the same app share one request.
+ */
+public class CapabilitiesCache {
+    private static System.Logger log = System.getLogger(CapabilitiesCache.class.getName());
+
+    /** Default time to live of an entry in seconds. */
+    public static final int DEFAULT_TTL = 300;
+
+    /** Number of threads used for refreshing entries. */
+    private static final int REFRESH_THREADS = 2;
+
+    /** Maximum number of queued refreshes. */
+    private static final int REFRESH_QUEUE = 100;
+
+    /** Entries are refreshed after REFRESH_AHEAD / 4 of their ttl. */
+    private static final int REFRESH_AHEAD = 3;
+    private static final int QUARTERS = 4;
+
+    /** Time to wait for running refreshes on shutdown. */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private final long ttlMs;
+    private final int timeout;
+    private final SingleFlight flights;
+    private final Map<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+    private final ThreadPoolExecutor refresher;
+    private final List<Consumer<String>> listeners =
+        new CopyOnWriteArrayList<Consumer<String>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Create a capabilities cache.
+     *
+     * @param ttlSeconds time to live of an entry in seconds.
+     * @param printTimeout timeout of the requests to mapfish-print in
+     *                     milliseconds.
+     */
+    public CapabilitiesCache(long ttlSeconds, int printTimeout) {
+        this(ttlSeconds, printTimeout, new SingleFlight());
+    }
+
+    /**
+     * Create a capabilities cache sharing requests in flight with other
+     * users of the given {@link SingleFlight}.
+     *
+     * @param ttlSeconds time to live of an entry in seconds.
+     * @param printTimeout timeout of the requests to mapfish-print in
+     *                     milliseconds.
+     * @param inFlight coalesces concurrent loads.
+     */
+    public CapabilitiesCache(long ttlSeconds, int printTimeout,
+            SingleFlight inFlight) {
+        this.ttlMs = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.timeout = printTimeout;
+        this.flights = inFlight;
+        this.refresher = ThreadPools.newBoundedPool(
+            "irix-capabilities", REFRESH_THREADS, REFRESH_QUEUE);
+    }
+
+    /**
+     * Get the names of the layouts of a print app.
+     *
+     * @param capabilitiesUrl URL of the capabilities.json of the print app.
+     * @return the layout names.
+     * @throws IOException if communication with print service failed.
+     * @throws PrintException if the print service returned an error.
+     */
+    public Set<String> getLayouts(String capabilitiesUrl)
+            throws IOException, PrintException {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(capabilitiesUrl);
+        if (entry != null && now - entry.loaded < ttlMs) {
+            hits.incrementAndGet();
+            if (now - entry.loaded > ttlMs / QUARTERS * REFRESH_AHEAD) {
+                refreshAsync(capabilitiesUrl, entry);
+            }
+            return entry.layouts;
+        }
+        misses.incrementAndGet();
+        return load(capabilitiesUrl).layouts;
+    }
+
+    /**
+     * Register a listener for changed capabilities.
+     *
+     * @param listener called with the capabilities URL of a print app
+     *                 whose capabilities changed.
+     */
+    public void addChangeListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Load the capabilities of the given print apps in the background.
+     *
+     * @param baseUrl base URL of the mapfish-print service.
+     * @param apps names of the print apps. If empty, the apps are taken
+     *             from the apps.json of the service.
+     */
+    public void prefetch(String baseUrl, List<String> apps) {
+        try {
+            refresher.execute(() -> {
+                List<String> printApps = apps;
+                try {
+                    if (printApps.isEmpty()) {
+                        printApps = PrintClient.getApps(PrintClient.encodeUrl(
+                            baseUrl + "/apps.json"), timeout);
+                    }
+                    for (String app : printApps) {
+                        load(PrintClient.encodeUrl(
+                            baseUrl + "/" + app + "/capabilities.json"));
+                    }
+                    log.log(INFO, "Prefetched capabilities of "
+                        + printApps.size() + " print apps");
+                } catch (IOException | PrintException
+                        | RuntimeException e) {
+                    log.log(WARNING, "Prefetching capabilities from "
+                        + baseUrl + " failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.log(WARNING, "Prefetching capabilities rejected.");
+        }
+    }
+
+    /**
+     * Stop background refreshes and drop all entries.
+     */
+    public void shutdown() {
+        ThreadPools.shutdown(refresher, SHUTDOWN_TIMEOUT_MS);
+        entries.clear();
+    }
+
+    /**
+     * Number of lookups served from the cache.
+     *
+     * @return the hit count.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that had to wait for mapfish-print.
+     *
+     * @return the miss count.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of background refreshes.
+     *
+     * @return the refresh count.
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * Number of failed background refreshes.
+     *
+     * @return the failure count.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Extract the layout names from a capabilities.json.
+     *
+     * @param capabilities the parsed capabilities.json.
+     * @return the layout names.
+     */
+    public static Set<String> layoutNames(JSONObject capabilities) {
+        Set<String> names = new HashSet<String>();
+        if (capabilities.has("layouts")) {
+            JSONArray layouts = capabilities.getJSONArray("layouts");
+            for (int i = 0; i < layouts.length(); i++) {
+                names.add(layouts.getJSONObject(i).get("name").toString());
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    private Entry load(String capabilitiesUrl)
+            throws IOException, PrintException {
+        return flights.execute(SingleFlight.key("GET", capabilitiesUrl, null),
+            () -> loadNow(capabilitiesUrl), PrintException.class);
+    }
+
+    private Entry loadNow(String capabilitiesUrl)
+            throws IOException, PrintException {
+        JSONObject capabilities =
+            PrintClient.getLayouts(capabilitiesUrl, timeout);
+        Entry entry = new Entry(layoutNames(capabilities),
+            RenderCache.fingerprint(capabilities));
+        Entry old = entries.put(capabilitiesUrl, entry);
+        if (old != null && !old.fingerprint.equals(entry.fingerprint)) {
+            log.log(INFO, "Capabilities of " + capabilitiesUrl + " changed");
+            for (Consumer<String> listener : listeners) {
+                listener.accept(capabilitiesUrl);
+            }
+        }
+        return entry;
+    }
+
+    private void refreshAsync(String capabilitiesUrl, Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(capabilitiesUrl);
+                    refreshes.incrementAndGet();
+                    log.log(DEBUG, "Refreshed " + capabilitiesUrl);
+                } catch (IOException | PrintException
+                        | RuntimeException e) {
+                    failures.incrementAndGet();
+                    entry.refreshing.set(false);
+                    log.log(WARNING, "Refreshing " + capabilitiesUrl
+                        + " failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /** The layouts of one print app. */
+    private static final class Entry {
+        private final Set<String> layouts;
+        private final String fingerprint;
+        private final long loaded = System.currentTimeMillis();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Set<String> names, String hash) {
+            this.layouts = names;
+            this.fingerprint = hash;
+        }
+    }
+}
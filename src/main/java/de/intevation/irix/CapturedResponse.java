@@ -0,0 +1,252 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response capturing status, content type and body instead of sending
+ * them, so a request can be processed after the client connection has
+ * been answered.
+ *
+ * The body is written to a {@link PayloadSink}. None of the captured
+ * calls reach the wrapped response, which may already be recycled by
+ * the container.
+ */
+public class CapturedResponse extends HttpServletResponseWrapper {
+
+    private final PayloadSink sink;
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    private int status = HttpServletResponse.SC_OK;
+    private String contentType;
+    private String characterEncoding = StandardCharsets.UTF_8.name();
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    /**
+     * Create a captured response.
+     *
+     * @param response the original response, not used for writing.
+     * @param body the sink for the body.
+     */
+    public CapturedResponse(HttpServletResponse response, PayloadSink body) {
+        super(response);
+        this.sink = body;
+    }
+
+    /**
+     * Close the body and get it.
+     *
+     * @return the body.
+     * @throws IOException if writing the body failed.
+     */
+    public Payload toPayload() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        return sink.toPayload();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendError(int sc) {
+        status = sc;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        status = sc;
+        contentType = "text/plain";
+        getOutputStream().print(msg);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setContentType(String type) {
+        contentType = type;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCharacterEncoding(String charset) {
+        characterEncoding = charset;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setContentLength(int len) {
+        // determined by the captured body
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setContentLengthLong(long len) {
+        // determined by the captured body
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setHeader(String name, String value) {
+        headers.put(name.toLowerCase(), value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addHeader(String name, String value) {
+        headers.putIfAbsent(name.toLowerCase(), value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, Integer.toString(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addIntHeader(String name, int value) {
+        addHeader(name, Integer.toString(value));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name.toLowerCase());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Collection<String> getHeaderNames() {
+        return List.copyOf(headers.keySet());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new SinkOutputStream(sink);
+        }
+        return outputStream;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PrintWriter getWriter() {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(
+                getOutputStream(), Charset.forName(characterEncoding)));
+        }
+        return writer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isCommitted() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        // the captured body cannot be discarded, keep what was written
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetBuffer() {
+        // the captured body cannot be discarded, keep what was written
+    }
+
+    /** Servlet output stream writing to a payload sink. */
+    private static final class SinkOutputStream extends ServletOutputStream {
+        private final PayloadSink out;
+
+        SinkOutputStream(PayloadSink target) {
+            this.out = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // closed by toPayload, processing code closes its writers
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            throw new IllegalStateException("Not an asynchronous response.");
+        }
+    }
+}
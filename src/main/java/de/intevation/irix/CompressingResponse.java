@@ -0,0 +1,333 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response compressing its body with the content coding negotiated from
+ * the Accept-Encoding header of the request.
+ *
+ * The body is buffered until it exceeds the threshold. Smaller bodies are
+ * sent uncompressed with a Content-Length, larger ones are compressed
+ * while they are written, so a report is compressed while it is
+ * marshalled. Call {@link #finish()} after the body has been written.
+ */
+public class CompressingResponse extends HttpServletResponseWrapper {
+
+    /** Default size of a body in bytes above which it is compressed. */
+    public static final int DEFAULT_THRESHOLD = 2048;
+
+    /** The gzip content coding. */
+    public static final String GZIP = "gzip";
+
+    /** The deflate (zlib) content coding. */
+    public static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String encoding;
+    private final int threshold;
+
+    private CompressingStream stream;
+    private PrintWriter writer;
+
+    /**
+     * Create a compressing response.
+     *
+     * @param response the response to write to.
+     * @param contentCoding the content coding, see {@link #negotiate}.
+     * @param thresholdBytes bodies up to this size are not compressed.
+     */
+    public CompressingResponse(HttpServletResponse response,
+            String contentCoding, int thresholdBytes) {
+        super(response);
+        this.encoding = contentCoding;
+        this.threshold = thresholdBytes;
+        response.addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * Wrap a response if the client accepts a compressed body.
+     *
+     * @param request the request.
+     * @param response the response.
+     * @param thresholdBytes bodies up to this size are not compressed,
+     *                       a negative value disables compression.
+     * @return the wrapped response or the response itself.
+     */
+    public static HttpServletResponse wrap(HttpServletRequest request,
+            HttpServletResponse response, int thresholdBytes) {
+        if (thresholdBytes < 0) {
+            return response;
+        }
+        String coding = negotiate(request.getHeader("Accept-Encoding"));
+        if (coding == null) {
+            return response;
+        }
+        return new CompressingResponse(response, coding, thresholdBytes);
+    }
+
+    /**
+     * Choose the content coding from an Accept-Encoding header.
+     *
+     * Of the supported codings the one with the highest quality value
+     * wins, gzip if both are equal.
+     *
+     * @param acceptEncoding the header value, may be null.
+     * @return {@link #GZIP}, {@link #DEFLATE} or null if the client does
+     * not accept either of them.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            float quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = quality;
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        if (gzip >= deflate) {
+            return GZIP;
+        }
+        return DEFLATE;
+    }
+
+    /**
+     * Write a body that is still buffered, or complete the compressed
+     * body.
+     *
+     * @throws IOException if writing failed.
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Whether the body is compressed.
+     *
+     * @return true once the body exceeded the threshold.
+     */
+    public boolean isCompressed() {
+        return stream != null && stream.compressed != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() already called.");
+        }
+        if (stream == null) {
+            stream = new CompressingStream();
+        }
+        return stream;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException(
+                    "getOutputStream() already called.");
+            }
+            stream = new CompressingStream();
+            writer = new PrintWriter(new OutputStreamWriter(stream,
+                getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setContentLength(int len) {
+        // the length is only known after compressing
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setContentLengthLong(long len) {
+        // the length is only known after compressing
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flushBuffer() throws IOException {
+        if (isCompressed()) {
+            stream.flush();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null && !isCompressed()) {
+            stream.buffer.reset();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        super.reset();
+        addHeader("Vary", "Accept-Encoding");
+        if (stream != null && !isCompressed()) {
+            stream.buffer.reset();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        discard();
+        super.sendError(sc, msg);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendError(int sc) throws IOException {
+        discard();
+        super.sendError(sc);
+    }
+
+    /** Drop a buffered body replaced by an error page. */
+    private void discard() {
+        if (stream != null && !isCompressed()) {
+            stream.buffer.reset();
+            stream.closed = true;
+        }
+    }
+
+    /** Body buffered up to the threshold, then compressed. */
+    private final class CompressingStream extends ServletOutputStream {
+        private final ByteArrayOutputStream buffer =
+            new ByteArrayOutputStream();
+        private DeflaterOutputStream compressed;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Response already finished.");
+            }
+            if (compressed != null) {
+                compressed.write(b, off, len);
+                return;
+            }
+            buffer.write(b, off, len);
+            if (buffer.size() > threshold) {
+                startCompression();
+            }
+        }
+
+        private void startCompression() throws IOException {
+            HttpServletResponse response =
+                (HttpServletResponse) getResponse();
+            response.setHeader("Content-Encoding", encoding);
+            OutputStream out = response.getOutputStream();
+            if (encoding.equals(GZIP)) {
+                compressed = new GZIPOutputStream(out, BUFFER_SIZE);
+            } else {
+                compressed = new DeflaterOutputStream(out);
+            }
+            buffer.writeTo(compressed);
+            buffer.reset();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // a small body is kept until it is complete
+            if (compressed != null) {
+                compressed.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (compressed != null) {
+                compressed.finish();
+                compressed.flush();
+                return;
+            }
+            ServletOutputStream out = getResponse().getOutputStream();
+            getResponse().setContentLength(buffer.size());
+            buffer.writeTo(out);
+            out.flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            throw new UnsupportedOperationException(
+                "Non-blocking writes are not supported.");
+        }
+    }
+}
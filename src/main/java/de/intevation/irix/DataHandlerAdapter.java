@@ -0,0 +1,35 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import jakarta.activation.DataHandler;
+import jakarta.xml.bind.annotation.adapters.XmlAdapter;
+
+/**
+ * Identity adapter binding base64Binary elements to DataHandler.
+ *
+ * Used via src/main/xjb/bindings.xml for the EnclosedObject of
+ * FileEnclosureType, so JAXB reads attachments from their
+ * {@link Payload} only while marshalling, and JAX-WS can send them as
+ * MTOM attachments straight from their storage.
+ */
+public class DataHandlerAdapter extends XmlAdapter<DataHandler, DataHandler> {
+
+    /** {@inheritDoc} */
+    @Override
+    public DataHandler unmarshal(DataHandler value) {
+        return value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataHandler marshal(DataHandler value) {
+        return value;
+    }
+}
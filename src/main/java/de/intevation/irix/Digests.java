@@ -0,0 +1,147 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pooled MessageDigest instances for the attachment hash sums.
+ *
+ * MessageDigest instances are not thread-safe and looking up a provider
+ * for every attachment is comparatively expensive, so idle instances
+ * are kept per algorithm. A digest has to be given back after use;
+ * digests of a failed computation should simply not be released.
+ */
+public final class Digests {
+
+    /** Hash algorithm used if none is configured. */
+    public static final String DEFAULT_ALGORITHM = "SHA-1";
+
+    /** Hash algorithms supported for attachments. */
+    public static final List<String> ALGORITHMS =
+        List.of("SHA-1", "SHA-256", "SHA-512");
+
+    /** Maximum number of idle digests kept per algorithm. */
+    private static final int MAX_IDLE = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int NIBBLE = 4;
+    private static final int NIBBLE_MASK = 0xf;
+
+    private static final Map<String, Pool> POOLS =
+        new ConcurrentHashMap<String, Pool>();
+
+    private Digests() {
+        // hidden constructor to avoid instantiation.
+    }
+
+    /**
+     * Check that an algorithm is supported.
+     *
+     * @param algorithm the name of the algorithm, e.g. "SHA-256".
+     * @return the canonical name of the algorithm.
+     * @throws IllegalArgumentException if the algorithm is not one of
+     *                                  {@link #ALGORITHMS}.
+     */
+    public static String checkAlgorithm(String algorithm) {
+        for (String supported : ALGORITHMS) {
+            if (supported.equalsIgnoreCase(algorithm.trim())) {
+                return supported;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported hash algorithm '"
+            + algorithm + "', use one of " + ALGORITHMS);
+    }
+
+    /**
+     * Obtain a digest.
+     *
+     * @param algorithm one of {@link #ALGORITHMS}.
+     * @return a reset digest that is exclusively owned by the caller until
+     * it is released.
+     */
+    public static MessageDigest acquire(String algorithm) {
+        Pool pool = POOLS.computeIfAbsent(algorithm, a -> new Pool());
+        MessageDigest digest = pool.digests.poll();
+        if (digest != null) {
+            pool.idle.decrementAndGet();
+            return digest;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(
+                "Hash algorithm " + algorithm + " unavailable.", e);
+        }
+    }
+
+    /**
+     * Give a digest back to the pool.
+     *
+     * @param digest the digest.
+     */
+    public static void release(MessageDigest digest) {
+        if (digest == null) {
+            return;
+        }
+        Pool pool = POOLS.get(digest.getAlgorithm());
+        if (pool == null) {
+            return;
+        }
+        digest.reset();
+        if (pool.idle.incrementAndGet() > MAX_IDLE) {
+            pool.idle.decrementAndGet();
+            return;
+        }
+        pool.digests.offer(digest);
+    }
+
+    /**
+     * Compute the hash sum of a byte array.
+     *
+     * @param algorithm one of {@link #ALGORITHMS}.
+     * @param data the content.
+     * @return the hash sum.
+     */
+    public static byte[] digest(String algorithm, byte[] data) {
+        MessageDigest digest = acquire(algorithm);
+        byte[] hash = digest.digest(data);
+        release(digest);
+        return hash;
+    }
+
+    /**
+     * Encode a hash sum as lower case hex digits.
+     *
+     * @param bytes the hash sum.
+     * @return the hex string.
+     */
+    public static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> NIBBLE) & NIBBLE_MASK];
+            chars[2 * i + 1] = HEX[bytes[i] & NIBBLE_MASK];
+        }
+        return new String(chars);
+    }
+
+    /** Idle digests of one algorithm. */
+    private static final class Pool {
+        private final Queue<MessageDigest> digests =
+            new ConcurrentLinkedQueue<MessageDigest>();
+        private final AtomicInteger idle = new AtomicInteger();
+    }
+}
@@ -23,18 +23,12 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
 import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.Marshaller;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.transform.dom.DOMResult;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import java.io.File;
-import java.lang.reflect.Method;
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -114,6 +108,35 @@ public final class DokpoolUtils {
             "SigningComment",
             "Signed" // Bool
 };
+
+    /** Setters and list getters of the Dokpool classes, by field name. */
+    private static final PropertyAccessors<DokpoolMeta> META_ACCESSORS =
+        PropertyAccessors.of(DokpoolMeta.class);
+    private static final PropertyAccessors<DOKSYS> DOKSYS_ACCESSORS =
+        PropertyAccessors.of(DOKSYS.class);
+    private static final PropertyAccessors<RODOS> RODOS_ACCESSORS =
+        PropertyAccessors.of(RODOS.class);
+    private static final PropertyAccessors<REI> REI_ACCESSORS =
+        PropertyAccessors.of(REI.class);
+
+    private static final List<String> DOKSYS_DATE_FIELDS = Arrays.asList(
+        "SamplingBegin",
+        "SamplingEnd",
+        "TrajectoryStartTime",
+        "TrajectoryEndTime"
+    );
+    private static final List<String> REI_DATE_FIELDS =
+        Arrays.asList("SigningDate");
+    private static final List<String> REI_BOOL_FIELDS =
+        Arrays.asList("Signed");
+    private static final List<String> REI_NUM_FIELDS =
+        Arrays.asList("Year", "Revision");
+    private static final List<String> REI_LIST_FIELDS = Arrays.asList(
+        "ReiLegalBase",
+        "MSt",
+        "Origin",
+        "NuclearInstallation"
+    );
     private DOKSYS methodClass;
 
     private DokpoolUtils() {
@@ -172,15 +195,41 @@ public final class DokpoolUtils {
         annotation.setText(freeText);
         annotation.setTitle(irixObj.getString("Title"));
 
-        // FIXME DokpoolMeta in separate function!
-        JSONObject metaObj = irixObj.getJSONObject(DOKPOOL_DATA_KEY);
+        DokpoolMeta meta = createDokpoolMeta(
+                irixObj.getJSONObject(DOKPOOL_DATA_KEY), userJsonObject);
+
+        DOMResult res = new DOMResult();
+        Element ele = null;
+        Marshaller jaxbMarshaller = JAXBEngine.acquireMarshaller(
+                DokpoolMeta.class);
+        if (schemaFile != null) {
+            jaxbMarshaller.setSchema(SchemaRegistry.getSchema(schemaFile));
+        }
+        jaxbMarshaller.marshal(meta, res);
+        JAXBEngine.releaseMarshaller(DokpoolMeta.class, jaxbMarshaller);
+        ele = ((Document) res.getNode()).getDocumentElement();
+
+        annotation.getAny().add(ele);
+        report.getAnnexes().getAnnotation().add(annotation);
+    }
+
+    /**
+     * Create the DokpoolMeta object from the DokpoolMeta data fields.
+     *
+     * @param metaObj The DokpoolMeta jsonObject of the request.
+     * @param userJsonObject The userJsonObject created from headers.
+     * @return the populated DokpoolMeta object.
+     * @throws JSONException If the JSONObject does not match
+     * expectations.
+     */
+    public static DokpoolMeta createDokpoolMeta(JSONObject metaObj,
+            JSONObject userJsonObject) throws JSONException {
         DokpoolMeta meta = new DokpoolMeta();
         boolean hasType = false;
         for (String field: DOKPOOL_FIELDS) {
             if (!metaObj.has(field)) {
                 continue;
             }
-            String methodName = "set" + field;
             String value = metaObj.get(field).toString();
             if (field.equals("DokpoolDocumentOwner") && userJsonObject
                     .has("uid")) {
@@ -193,10 +242,8 @@ public final class DokpoolUtils {
             }
             try {
                 if (field.startsWith("Is")) {
-                    Method method = meta.getClass().getMethod(methodName,
-                            Boolean.class);
                     boolean bValue = value.toLowerCase().equals("true");
-                    method.invoke(meta, bValue);
+                    META_ACCESSORS.set(meta, field, bValue);
                     hasType = bValue || hasType;
                 } else if (field.equals("Subject")) {
                     if (metaObj.has("Subject")) {
@@ -206,12 +253,11 @@ public final class DokpoolUtils {
                         }
                     }
                 } else {
-                    Method method = meta.getClass().getMethod(methodName, String.class);
-                    method.invoke(meta, value);
+                    META_ACCESSORS.set(meta, field, value);
                 }
             } catch (Exception e) {
                 log.log(ERROR, e.getClass().getName()
-                    + " exception while trying to access " + methodName
+                    + " exception while trying to access set" + field
                     + " on DokpoolMeta object.");
             }
         }
@@ -231,24 +277,7 @@ public final class DokpoolUtils {
                 && meta.isIsRei()) {
             addReiMeta(metaObj, meta);
         }
-
-        DOMResult res = new DOMResult();
-        Element ele = null;
-        JAXBContext jaxbContext = JAXBContext.newInstance(DokpoolMeta.class);
-        Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        jaxbMarshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-        if (schemaFile != null) {
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(
-                    XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(schemaFile);
-            jaxbMarshaller.setSchema(schema);
-        }
-        jaxbMarshaller.marshal(meta, res);
-        ele = ((Document) res.getNode()).getDocumentElement();
-
-        annotation.getAny().add(ele);
-        report.getAnnexes().getAnnotation().add(annotation);
+        return meta;
     }
 
     /**
@@ -268,84 +297,36 @@ public final class DokpoolUtils {
         } else {
             return;
         }
-        List<String> dateParams = Arrays.asList(
-                "SamplingBegin",
-                "SamplingEnd",
-                "TrajectoryStartTime",
-                "TrajectoryEndTime"
-        );
         for (String field: DOKSYS_FIELDS) {
             if (!doksysMetaObj.has(field)) {
                 continue;
             }
-            String setMethodName = "set" + field;
-            String getMethodName = "get" + field;
-            Method[] methods = doksys.getClass().getDeclaredMethods();
             try {
-                if (dateParams.contains(field)) {
-                    String value = doksysMetaObj
-                            .get(field).toString();
-                    XMLGregorianCalendar calval;
-                    calval = ReportUtils.xmlCalendarFromString(value);
-                    Method method = doksys.getClass().getMethod(
-                            setMethodName,
-                            XMLGregorianCalendar.class
-                    );
-                    method.invoke(doksys, calval);
-                } else {
-                    boolean hasGetMethod = false;
-                    boolean hasSetMethod = false;
-                    if (doksysMetaObj.get(field) instanceof String) {
-                        String value = doksysMetaObj.get(field).toString();
-                        for (Method m : methods) {
-                            if (m.getName().equals(getMethodName)) {
-                                hasGetMethod = true;
-                            }
-                            if (m.getName().equals(setMethodName)) {
-                                hasSetMethod = true;
-                            }
-                        }
-                        if (hasSetMethod) {
-                            Method method = doksys.getClass().getMethod(
-                                    setMethodName,
-                                    String.class
-                            );
-                            method.invoke(doksys, value);
-                        }
-                        if (hasGetMethod) {
-                            Method method = doksys.getClass().getMethod(getMethodName);
-                            try {
-                                ArrayList methodArray = (ArrayList) method.invoke(doksys);
-                                methodArray.add(value);
-                            } catch (Exception e) {
-                                log.log(ERROR, e);
-                            }
-                        }
-                    } else if (doksysMetaObj.get(field) instanceof JSONArray) {
-                        JSONArray values = doksysMetaObj.getJSONArray(field);
-                        for (Method m : methods) {
-                            if (m.getName().equals(getMethodName)) {
-                                hasGetMethod = true;
-                            }
-                            if (m.getName().equals(setMethodName)) {
-                                hasSetMethod = true;
-                            }
-                        }
-                        if (hasGetMethod) {
-                            Method method = doksys.getClass().getMethod(getMethodName);
-                            try {
-                                ArrayList methodArray = (ArrayList) method.invoke(doksys);
-                                for (int i = 0; i < values.length(); i++) {
-                                    methodArray.add(values.get(i));
-                                }
-                            } catch (Exception e) {
-                                log.log(ERROR, e);
-                            }
-                        }
-                        if (hasSetMethod) {
-                            log.log(DEBUG, setMethodName + " shouldn't exist here.");
+                Object value = doksysMetaObj.get(field);
+                if (DOKSYS_DATE_FIELDS.contains(field)) {
+                    XMLGregorianCalendar calval =
+                        ReportUtils.xmlCalendarFromString(value.toString());
+                    DOKSYS_ACCESSORS.set(doksys, field, calval);
+                } else if (value instanceof String) {
+                    if (DOKSYS_ACCESSORS.hasSetter(field)) {
+                        DOKSYS_ACCESSORS.set(doksys, field, value);
+                    }
+                    if (DOKSYS_ACCESSORS.hasList(field)) {
+                        DOKSYS_ACCESSORS.getList(doksys, field).add(value);
+                    }
+                } else if (value instanceof JSONArray) {
+                    JSONArray values = (JSONArray) value;
+                    if (DOKSYS_ACCESSORS.hasList(field)) {
+                        List<Object> list =
+                            DOKSYS_ACCESSORS.getList(doksys, field);
+                        for (int i = 0; i < values.length(); i++) {
+                            list.add(values.get(i));
                         }
                     }
+                    if (DOKSYS_ACCESSORS.hasSetter(field)) {
+                        log.log(DEBUG, "set" + field
+                            + " shouldn't exist here.");
+                    }
                 }
             } catch (Exception e) {
                 log.log(ERROR, e.getClass().getName()
@@ -414,17 +395,12 @@ public final class DokpoolUtils {
             return;
         }
         for (String field: rodosMetaObj.keySet()) {
-            String methodName = "set" + field;
             try {
                 String value = rodosMetaObj.get(field).toString();
-                Method method = rodos.getClass().getMethod(
-                        methodName,
-                        String.class
-                );
-                method.invoke(rodos, value);
+                RODOS_ACCESSORS.set(rodos, field, value);
             } catch (Exception e) {
                 log.log(ERROR, e.getClass().getName()
-                        + " exception while trying to access " + methodName
+                        + " exception while trying to access set" + field
                         + " on DokpoolRodosMeta object.");
             }
         }
@@ -448,65 +424,37 @@ public final class DokpoolUtils {
         } else {
             return;
         }
-        List<String> dateParams = Arrays.asList("SigningDate");
-        List<String> boolParams = Arrays.asList("Signed");
-        List<String> numParams = Arrays.asList("Year", "Revision");
-        List<String> listParams = Arrays.asList(
-                "ReiLegalBase",
-                "MSt",
-                "Origin",
-                "NuclearInstallation"
-        );
         for (String field: REI_FIELDS) {
             if (!reiMetaObj.has(field)) {
                 continue;
             }
-            String methodName = "set" + field;
             // TODO add generic list handling as well!
             // TODO allow string if list has only one value for JSON
             try {
-
-                if (dateParams.contains(field)) {
+                if (REI_DATE_FIELDS.contains(field)) {
                     String value = reiMetaObj
                             .get(field).toString();
                     XMLGregorianCalendar calval;
                     calval = ReportUtils.xmlCalendarFromString(value);
-                    Method method = rei.getClass().getMethod(
-                            methodName,
-                            XMLGregorianCalendar.class
-                    );
-                    method.invoke(rei, calval);
-                } else if (boolParams.contains(field)) {
+                    REI_ACCESSORS.set(rei, field, calval);
+                } else if (REI_BOOL_FIELDS.contains(field)) {
                     Boolean bval = reiMetaObj.getBoolean(field);
-                    Method bMethod = REI.class.getMethod(
-                            methodName,
-                            Boolean.class
-                    );
-                    bMethod.invoke(rei, bval);
-                } else if (numParams.contains(field)) {
+                    REI_ACCESSORS.set(rei, field, bval);
+                } else if (REI_NUM_FIELDS.contains(field)) {
                     BigInteger numval = BigInteger.valueOf(
                             reiMetaObj.getInt(field)
                     );
-                    Method numMethod = REI.class.getMethod(
-                            methodName,
-                            BigInteger.class
-                    );
-                    numMethod.invoke(rei, numval);
-                } else if (listParams.contains(field)) {
+                    REI_ACCESSORS.set(rei, field, numval);
+                } else if (REI_LIST_FIELDS.contains(field)) {
                     addReiListParam(reiMetaObj, rei, field);
                 } else {
                     String value = reiMetaObj
                             .getString(field);
-                    Method aMethod = REI.class
-                            .getMethod(
-                                    methodName,
-                                    String.class
-                            );
-                    aMethod.invoke(rei, value);
+                    REI_ACCESSORS.set(rei, field, value);
                 }
             } catch (Exception e) {
                 log.log(ERROR, e.getClass().getName()
-                        + " exception while trying to access " + methodName
+                        + " exception while trying to access set" + field
                         + " on DokpoolReiMeta object.");
             }
         }
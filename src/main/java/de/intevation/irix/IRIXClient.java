@@ -10,7 +10,10 @@ package de.intevation.irix;
 
 import java.io.IOException;
 import java.io.File;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpServlet;
@@ -19,25 +22,21 @@ import jakarta.servlet.http.HttpServletRequest;
 
 import java.net.URISyntaxException;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 import java.net.URL;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Path;
-import java.time.Duration;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 
 import jakarta.xml.bind.JAXBException;
 
-import jakarta.xml.ws.BindingProvider;
-import jakarta.xml.ws.handler.MessageContext;
 
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.ERROR;
@@ -47,12 +46,9 @@ import static java.lang.System.Logger.Level.INFO;
 import org.iaea._2012.irix.format.ReportType;
 
 import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import de.intevation.irixservice.UploadReportService;
-import de.intevation.irixservice.UploadReportInterface;
 import de.intevation.irixservice.UploadReportException_Exception;
 
 import org.xml.sax.SAXException;
@@ -105,6 +101,44 @@ public class IRIXClient extends HttpServlet {
     private static final String DOKPOOL_SCHEMA_LOC =
             "/WEB-INF/irix-schema/Dokpool-3.xsd";
 
+    /**
+     * Path to the WSDL of the irix-webservice bundled with the application.
+     */
+    private static final String BUNDLED_WSDL_LOC =
+            "/META-INF/upload-report-v1.wsdl";
+
+    /** Default number of threads processing POST requests. */
+    private static final int DEFAULT_REQUEST_THREADS = 16;
+
+    /** Default number of POST requests waiting for a thread. */
+    private static final int DEFAULT_REQUEST_QUEUE_SIZE = 100;
+
+    /** Default timeout of asynchronously processed requests. */
+    private static final int DEFAULT_ASYNC_TIMEOUT = 300000;
+
+    /** Time to wait for running requests on shutdown. */
+    private static final long REQUEST_SHUTDOWN_TIMEOUT_MS = 30000;
+
+    /** Default maximum number of items of a batch request. */
+    private static final int DEFAULT_BATCH_MAX_ITEMS = 100;
+
+    /** Path of the metrics below the servlet path. */
+    private static final String METRICS_PATH = "/metrics";
+
+    /** Milliseconds per second, for times exported in seconds. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /** Content type of the Prometheus text format. */
+    private static final String METRICS_CONTENT_TYPE =
+        "text/plain; version=0.0.4";
+
+    /** Name of the context attribute holding the batch fetcher. */
+    public static final String BATCH_FETCHER_ATTRIBUTE =
+        ParallelFetcher.class.getName() + ".batch";
+
+    /** Seconds after which a client rejected for too many jobs may retry. */
+    private static final String JOB_RETRY_AFTER = "30";
+
     /**
      * The IRIX XSD-schema file.
      */
@@ -138,6 +172,97 @@ public class IRIXClient extends HttpServlet {
      * Location of the local temporary copy of the WSDL file.
      */
     protected String irixServiceWsdlTmp;
+    /**
+     * Coalesces identical requests to mapfish-print and image servers
+     * that are in flight at the same time.
+     */
+    protected SingleFlight singleFlight;
+    /**
+     * Cached layouts of the mapfish-print apps.
+     */
+    protected CapabilitiesCache capabilitiesCache;
+    /**
+     * Cache of the documents rendered by mapfish-print, null if disabled.
+     */
+    protected RenderCache renderCache;
+    /**
+     * Time to live of rendered documents in seconds, unless the print
+     * spec sets its own.
+     */
+    protected int renderCacheTtl;
+    /**
+     * Cache of external images, null if disabled.
+     */
+    protected ImageCache imageCache;
+    /**
+     * Runs the print and image requests of a report concurrently.
+     */
+    protected ParallelFetcher fetcher;
+    /**
+     * Runs the items of batch requests concurrently.
+     */
+    protected ParallelFetcher batchFetcher;
+    /**
+     * Maximum number of items of a batch request.
+     */
+    protected int batchMaxItems;
+    /**
+     * Latency histograms of the processing stages.
+     */
+    protected StageMetrics metrics;
+    /**
+     * Whether the metrics are served below the servlet path.
+     */
+    protected boolean metricsEndpoint;
+    /**
+     * Size of a response body in bytes above which it is compressed, a
+     * negative value disables compression.
+     */
+    protected int compressionThreshold;
+    /**
+     * Whether reports in the response are written without indentation.
+     */
+    protected boolean compactXml;
+    /**
+     * Executor for POST requests, null if they are processed synchronously.
+     */
+    protected ThreadPoolExecutor requestExecutor;
+    /**
+     * Background jobs, null if the job API is disabled.
+     */
+    protected JobRegistry jobs;
+    /**
+     * GET resources of the background jobs.
+     */
+    protected JobEndpoint jobEndpoint;
+    /**
+     * Timeout for asynchronously processed requests in milliseconds.
+     */
+    protected long asyncTimeout;
+    /**
+     * Number of characters above which embedded documents are spilled.
+     */
+    protected int spillThreshold;
+    /**
+     * Number of bytes of an attachment kept in memory.
+     */
+    protected int attachmentMemoryThreshold;
+    /**
+     * Hash algorithm for the hash sums of attachments.
+     */
+    protected String hashAlgorithm;
+    /**
+     * Directory for temporary files of a request.
+     */
+    protected Path spillDir;
+    /**
+     * Client for the irix-webservice upload service.
+     */
+    protected UploadServiceClient uploadService;
+    /**
+     * Durable queue of uploads, null if uploads are sent synchronously.
+     */
+    protected UploadOutbox outbox;
      /**
       * Authentication type of irix-webservice upload service.
       * Currently: "none" or "basic-auth".
@@ -169,10 +294,6 @@ public class IRIXClient extends HttpServlet {
      * forward Headers (incl. auth Headers).
      */
     protected Boolean keepRequestHeaders;
-    /**
-     * store request Header fo reuse.
-     */
-    protected HttpServletRequest keptRequest;
 
 
     /**
@@ -245,6 +366,48 @@ public class IRIXClient extends HttpServlet {
                     "All authentication types except 'none' require the 'irix-webservice-auth-cred' parameter.");
         }
 
+        singleFlight = new SingleFlight();
+        capabilitiesCache = new CapabilitiesCache(
+            getIntInitParameter("print-capabilities-ttl-s",
+                CapabilitiesCache.DEFAULT_TTL),
+            printTimeout, singleFlight);
+        getServletContext().setAttribute(
+            CapabilitiesCache.class.getName(), capabilitiesCache);
+
+        initRenderCache();
+
+        int imageCacheSize = getIntInitParameter("image-cache-size",
+            ImageCache.DEFAULT_MAX_BYTES);
+        if (imageCacheSize > 0) {
+            imageCache = new ImageCache(imageCacheSize);
+            getServletContext().setAttribute(
+                ImageCache.class.getName(), imageCache);
+        }
+
+        URL bundledWsdl = null;
+        try {
+            bundledWsdl = getServletContext().getResource(BUNDLED_WSDL_LOC);
+        } catch (MalformedURLException e) {
+            log.log(WARNING, "No bundled WSDL available.");
+        }
+        // configure the shared clients before the first outbound request,
+        // reconfiguring discards the clients of requests in flight
+        OutboundHttp.configure(
+            getIntInitParameter("http-client-threads",
+                OutboundHttp.DEFAULT_THREADS),
+            getIntInitParameter("http-max-connections-per-host",
+                OutboundHttp.DEFAULT_MAX_PER_HOST),
+            Boolean.parseBoolean(getInitParameter("print-http2")),
+            getIntInitParameter("http-keepalive-timeout-s", 0));
+        OutboundHttp.configureGuards(
+            getIntInitParameter("http-queue-timeout-ms",
+                OutboundHttp.DEFAULT_QUEUE_TIMEOUT_MS),
+            getIntInitParameter("circuit-failure-threshold",
+                OutboundHttp.DEFAULT_FAILURE_THRESHOLD),
+            getIntInitParameter("circuit-open-s",
+                OutboundHttp.DEFAULT_OPEN_S));
+        initUploadService(bundledWsdl);
+
         userHeaderString = getInitParameter("user-header");
         if (userHeaderString == null) {
             log.log(DEBUG, "No user-header set.");
@@ -277,6 +440,12 @@ public class IRIXClient extends HttpServlet {
         irixSchemaFile = new File(sc.getRealPath(IRIX_SCHEMA_LOC));
         dokpoolSchemaFile = new File(sc.getRealPath(DOKPOOL_SCHEMA_LOC));
 
+        try {
+            JAXBEngine.init();
+        } catch (JAXBException e) {
+            throw new ServletException("Failed to create JAXBContext.", e);
+        }
+
         keepRequestHeaders = Boolean.parseBoolean(
                 getInitParameter("keep-request-headers")
         );
@@ -285,18 +454,298 @@ public class IRIXClient extends HttpServlet {
             throw new ServletException(
                     "Missing 'keep-request-headers' parameter.");
         }
+
+        initProcessing();
+
+        // background loads only once the configuration is known to be
+        // valid, destroy() is not called if init() fails
+        String prefetchApps = getInitParameter("print-prefetch-apps");
+        if (prefetchApps == null) {
+            capabilitiesCache.prefetch(defaultBaseUrl, List.of());
+        } else if (!prefetchApps.isBlank()) {
+            capabilitiesCache.prefetch(defaultBaseUrl,
+                Arrays.asList(prefetchApps.trim().split("\\s*,\\s*")));
+        }
     }
 
     /**
-     * Parse the content of the request into a json object.
+     * Set up the client of the IRIX webservice.
      *
-     * @param request the request.
-     * @return a {@link org.json.JSONObject} object with the content of the
-     * request.
+     * @param bundledWsdl WSDL to use if fetching fails, may be null.
      */
-    protected JSONObject parseRequest(HttpServletRequest request) {
+    private void initUploadService(URL bundledWsdl) {
+        uploadService = new UploadServiceClient(irixServiceUrl,
+            irixServiceAuthType, irixServiceAuthCred,
+            Path.of(irixServiceWsdlTmp), bundledWsdl,
+            getIntInitParameter("irix-webservice-wsdl-ttl-s",
+                UploadServiceClient.DEFAULT_WSDL_TTL),
+            getIntInitParameter("irix-webservice-port-pool-size",
+                UploadServiceClient.DEFAULT_POOL_SIZE));
+        uploadService.configureTransfer(
+            Boolean.parseBoolean(getInitParameter("irix-webservice-mtom")),
+            getIntInitParameter("irix-webservice-mtom-threshold",
+                UploadServiceClient.DEFAULT_MTOM_THRESHOLD),
+            getIntInitParameter("irix-webservice-chunk-size",
+                UploadServiceClient.DEFAULT_CHUNK_SIZE));
+        uploadService.setAcquireTimeout(
+            getIntInitParameter("http-queue-timeout-ms",
+                OutboundHttp.DEFAULT_QUEUE_TIMEOUT_MS));
+        uploadService.start();
+        getServletContext().setAttribute(
+            UploadServiceClient.class.getName(), uploadService);
+    }
+
+    /**
+     * Set up the cache of rendered print documents, which is emptied for
+     * a print app whenever its capabilities change.
+     *
+     * @throws ServletException if the cache directory cannot be used.
+     */
+    private void initRenderCache() throws ServletException {
+        int renderCacheSize = getIntInitParameter("print-cache-size",
+            RenderCache.DEFAULT_MAX_BYTES);
+        renderCacheTtl = getIntInitParameter("print-cache-ttl-s",
+            RenderCache.DEFAULT_TTL);
+        if (renderCacheSize > 0) {
+            String renderCacheDir = getInitParameter("print-cache-dir");
+            Path diskDir = null;
+            if (renderCacheDir != null && !renderCacheDir.isBlank()) {
+                diskDir = Path.of(renderCacheDir.trim());
+            }
+            try {
+                renderCache = new RenderCache(renderCacheSize, diskDir,
+                    getIntInitParameter("print-cache-disk-size",
+                        RenderCache.DEFAULT_MAX_DISK_BYTES));
+            } catch (IOException e) {
+                throw new ServletException(
+                    "Cannot use print-cache-dir " + renderCacheDir, e);
+            }
+            capabilitiesCache.addChangeListener(renderCache::invalidate);
+            getServletContext().setAttribute(
+                RenderCache.class.getName(), renderCache);
+        }
+    }
+
+    /**
+     * Add the counters of the caches, of the coalesced requests and of
+     * the backend guards to the metrics.
+     */
+    private void addCacheMetrics() {
+        metrics.addCounter("irix_outbound_rejected_total",
+            "Outbound requests rejected by a bulkhead or open circuit.",
+            OutboundHttp::getRejections);
+        metrics.addGauge("irix_outbound_open_circuits",
+            "Backend hosts whose circuit is open or half-open.",
+            OutboundHttp::getOpenCircuits);
+        metrics.addCounter("irix_outbound_sent_total",
+            "Requests to mapfish-print and image servers sent.",
+            singleFlight::getSent);
+        metrics.addCounter("irix_outbound_coalesced_total",
+            "Requests answered by an identical request in flight.",
+            singleFlight::getShared);
+        CapabilitiesCache capabilities = capabilitiesCache;
+        metrics.addCounter("irix_capabilities_cache_hits_total",
+            "Capabilities served from the cache.", capabilities::getHits);
+        metrics.addCounter("irix_capabilities_cache_misses_total",
+            "Capabilities lookups waiting for mapfish-print.",
+            capabilities::getMisses);
+        metrics.addCounter("irix_capabilities_cache_refreshes_total",
+            "Background refreshes of cached capabilities.",
+            capabilities::getRefreshes);
+        metrics.addCounter("irix_capabilities_cache_refresh_failures_total",
+            "Failed background refreshes of cached capabilities.",
+            capabilities::getFailures);
+        metrics.addCounter("irix_schema_cache_hits_total",
+            "Validations using an already compiled schema.",
+            SchemaRegistry::getHits);
+        metrics.addCounter("irix_schema_compiles_total",
+            "Schema compilations.", SchemaRegistry::getCompiles);
+        metrics.addCounter("irix_schema_compile_seconds_total",
+            "Time spent compiling schemas.",
+            () -> SchemaRegistry.getCompileTimeMillis() / MILLIS_PER_SECOND);
+        if (renderCache != null) {
+            RenderCache cache = renderCache;
+            metrics.addCounter("irix_render_cache_hits_total",
+                "Print documents served from the cache.", cache::getHits);
+            metrics.addCounter("irix_render_cache_misses_total",
+                "Print documents not found in the cache.", cache::getMisses);
+            metrics.addCounter("irix_render_cache_evictions_total",
+                "Print documents evicted from the cache.",
+                cache::getEvictions);
+            metrics.addGauge("irix_render_cache_memory_bytes",
+                "Size of the print documents cached in memory.",
+                cache::getMemoryBytes);
+            metrics.addGauge("irix_render_cache_disk_bytes",
+                "Size of the print documents cached on disk.",
+                cache::getDiskBytes);
+        }
+        if (imageCache != null) {
+            ImageCache cache = imageCache;
+            metrics.addCounter("irix_image_cache_hits_total",
+                "Images served from the cache.", cache::getHits);
+            metrics.addCounter("irix_image_cache_revalidations_total",
+                "Images served from the cache after a 304 response.",
+                cache::getRevalidations);
+            metrics.addCounter("irix_image_cache_misses_total",
+                "Images downloaded in full.", cache::getMisses);
+            metrics.addCounter("irix_image_cache_evictions_total",
+                "Images evicted from the cache.", cache::getEvictions);
+            metrics.addGauge("irix_image_cache_hit_ratio",
+                "Fraction of the images served from the cache.",
+                cache::getHitRatio);
+            metrics.addGauge("irix_image_cache_bytes",
+                "Size of the cached images.", cache::getBytes);
+        }
+    }
+
+    /**
+     * Set up the thread pools used for processing requests.
+     *
+     * @throws ServletException if a parameter has an invalid value.
+     */
+    private void initProcessing() throws ServletException {
+        metrics = new StageMetrics();
+        String contextPath = getServletContext().getContextPath();
+        if (contextPath == null || contextPath.isEmpty()) {
+            contextPath = "/";
+        }
+        metrics.register(contextPath);
+        getServletContext().setAttribute(StageMetrics.class.getName(),
+            metrics);
+        String metricsParam = getInitParameter("metrics-endpoint");
+        metricsEndpoint = metricsParam == null
+            || Boolean.parseBoolean(metricsParam);
+        addCacheMetrics();
+
+        fetcher = new ParallelFetcher(
+            getIntInitParameter("fetch-threads",
+                ParallelFetcher.DEFAULT_THREADS),
+            getIntInitParameter("fetch-parallelism",
+                ParallelFetcher.DEFAULT_PARALLELISM));
+        getServletContext().setAttribute(
+            ParallelFetcher.class.getName(), fetcher);
+        batchFetcher = new ParallelFetcher("irix-batch",
+            getIntInitParameter("batch-threads",
+                ParallelFetcher.DEFAULT_THREADS),
+            getIntInitParameter("batch-parallelism",
+                ParallelFetcher.DEFAULT_PARALLELISM));
+        getServletContext().setAttribute(BATCH_FETCHER_ATTRIBUTE,
+            batchFetcher);
+        batchMaxItems = getIntInitParameter("batch-max-items",
+            DEFAULT_BATCH_MAX_ITEMS);
+
+        compressionThreshold = getIntInitParameter(
+            "response-compression-threshold",
+            CompressingResponse.DEFAULT_THRESHOLD);
+        compactXml = Boolean.parseBoolean(getInitParameter("compact-xml"));
+
+        int requestThreads = getIntInitParameter("request-threads",
+            DEFAULT_REQUEST_THREADS);
+        if (requestThreads > 0) {
+            requestExecutor = ThreadPools.newBoundedPool("irix-request",
+                requestThreads, getIntInitParameter("request-queue-size",
+                    DEFAULT_REQUEST_QUEUE_SIZE));
+        }
+        asyncTimeout = getIntInitParameter("async-timeout-ms",
+            DEFAULT_ASYNC_TIMEOUT);
+
+        spillThreshold = getIntInitParameter("request-spill-threshold",
+            JsonRequestReader.DEFAULT_SPILL_THRESHOLD);
+        File tempDir = (File) getServletContext().getAttribute(
+            ServletContext.TEMPDIR);
+        if (tempDir == null) {
+            tempDir = new File(System.getProperty("java.io.tmpdir"));
+        }
+        spillDir = tempDir.toPath();
+        attachmentMemoryThreshold = getIntInitParameter(
+            "attachment-memory-threshold",
+            AttachmentStore.DEFAULT_MEMORY_THRESHOLD);
+        hashAlgorithm = Digests.DEFAULT_ALGORITHM;
+        String algorithm = getInitParameter("attachment-hash-algorithm");
+        if (algorithm != null) {
+            try {
+                hashAlgorithm = Digests.checkAlgorithm(algorithm);
+            } catch (IllegalArgumentException e) {
+                throw new ServletException(e.getMessage());
+            }
+        }
+
+        String outboxDir = getInitParameter("upload-outbox-dir");
+        if (outboxDir != null && !outboxDir.isBlank()) {
+            outbox = new UploadOutbox(Path.of(outboxDir), this::uploadQueued,
+                getIntInitParameter("upload-outbox-parallelism",
+                    UploadOutbox.DEFAULT_PARALLELISM),
+                getIntInitParameter("upload-outbox-max-attempts",
+                    UploadOutbox.DEFAULT_MAX_ATTEMPTS),
+                getIntInitParameter("upload-outbox-backoff-ms",
+                    UploadOutbox.DEFAULT_BACKOFF_MS),
+                getIntInitParameter("upload-outbox-max-backoff-ms",
+                    UploadOutbox.DEFAULT_MAX_BACKOFF_MS));
+            try {
+                outbox.start();
+            } catch (IOException e) {
+                throw new ServletException(
+                    "Cannot use upload-outbox-dir " + outboxDir, e);
+            }
+            getServletContext().setAttribute(
+                UploadOutbox.class.getName(), outbox);
+        }
+
+        int jobCapacity = getIntInitParameter("job-capacity",
+            JobRegistry.DEFAULT_CAPACITY);
+        if (requestExecutor != null && jobCapacity > 0) {
+            jobs = new JobRegistry(jobCapacity,
+                getIntInitParameter("job-ttl-s", JobRegistry.DEFAULT_TTL),
+                attachmentMemoryThreshold, spillDir, hashAlgorithm);
+            jobEndpoint = new JobEndpoint(jobs, asyncTimeout);
+            getServletContext().setAttribute(
+                JobRegistry.class.getName(), jobs);
+        }
+    }
+
+    /**
+     * Stop the request executor, waiting for running requests.
+     */
+    @Override
+    public void destroy() {
+        ThreadPools.shutdown(requestExecutor, REQUEST_SHUTDOWN_TIMEOUT_MS);
+        requestExecutor = null;
+        super.destroy();
+    }
+
+    /**
+     * Read a numeric init parameter.
+     *
+     * @param name the name of the parameter.
+     * @param defaultValue the value to use if the parameter is not set
+     *                     or not a non-negative number.
+     * @return the configured value or the default.
+     */
+    protected int getIntInitParameter(String name, int defaultValue) {
         try {
-            return new JSONObject(new JSONTokener(request.getReader()));
+            return Integer.parseUnsignedInt(getInitParameter(name).trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parse the content of the request.
+     *
+     * @param request the request.
+     * @param reader the reader to parse with. Large embedded documents
+     *               are spilled to disk until it is closed.
+     * @return a {@link org.json.JSONObject} with a single request, a
+     * {@link org.json.JSONArray} with a batch of requests or null if the
+     * request could not be read.
+     */
+    protected Object parseRequest(HttpServletRequest request,
+                                  JsonRequestReader reader) {
+        try (StageMetrics.Sample sample =
+                metrics.start(StageMetrics.PARSE, null, null)) {
+            Object value = reader.readValue(request.getReader());
+            sample.success();
+            return value;
         } catch (IOException e) {
             log.log(WARNING, "Request did not contain valid json: " + e.getMessage());
         }
@@ -312,10 +761,6 @@ public class IRIXClient extends HttpServlet {
      */
     protected JSONObject parseHeader(HttpServletRequest request) {
         //FIXME make sure that this doesn't crash if properties are not set
-        if (keepRequestHeaders) {
-            this.keptRequest = request;
-        }
-
         JSONObject uidHeaders = new JSONObject();
         if (userHeaderString != null) {
             String uid = request.getHeader(userHeaderString);
@@ -433,8 +878,10 @@ public class IRIXClient extends HttpServlet {
      * @param report         The report to attach the data to.
      * @param printApp       The printApp to use
      * @param title          The title for the Annex
-     * @param commonBaseUrl  The baseurl to use as mapfish print endpoint for all specs.
-     *                       Print spec "baseurl" takes precedence if it exists.
+     * @param context        The request, its print base URL is used as
+     *                       mapfish print endpoint for all specs. Print
+     *                       spec "baseurl" takes precedence if it exists.
+     *                       Its store keeps the printed documents.
      * @throws IOException    if a requested document could not be printed
      *                        because of Connection problems.
      * @throws PrintException it the print service returned an error.
@@ -444,17 +891,19 @@ public class IRIXClient extends HttpServlet {
             ReportType report,
             String printApp,
             String title,
-            String commonBaseUrl
+            RequestContext context
     ) throws IOException, PrintException {
         int i = 1;
         String suffix = "";
+        AttachmentStore store = context.getStore();
         // baseurl precedence: print spec > common (report) url > default url
-        String printUrl = defaultBaseUrl + "/" + printApp + "/buildreport";
-        String printCapaUrl = defaultBaseUrl + "/" + printApp + "/capabilities.json";
-        if (commonBaseUrl != "") {
-            printUrl = commonBaseUrl + "/" + printApp + "/buildreport";
-            printCapaUrl = commonBaseUrl + "/" + printApp + "/capabilities.json";
-        }
+        String commonBaseUrl = context.getPrintBaseUrl();
+        String printUrl = commonBaseUrl + "/" + printApp + "/buildreport";
+        String printCapaUrl = commonBaseUrl + "/" + printApp + "/capabilities.json";
+        String app = printApp;
+        List<Attachment> attachments = new ArrayList<Attachment>();
+        List<ParallelFetcher.Fetch<Payload, PrintException>> fetches =
+            new ArrayList<ParallelFetcher.Fetch<Payload, PrintException>>();
         for (JSONObject spec : specs) {
             if (specs.size() > 1) {
                 suffix = " " + Integer.toString(i++);
@@ -463,11 +912,13 @@ public class IRIXClient extends HttpServlet {
                 String specBaseUrl = spec.get("baseurl").toString();
                 if (spec.has("printapp") && spec.get("printapp") != "") {
                     String specPrintApp = spec.get("printapp").toString();
+                    app = specPrintApp;
                     printUrl = specBaseUrl + "/" + specPrintApp
                             + "/buildreport";
                     printCapaUrl = specBaseUrl + "/" + specPrintApp
                             + "/capabilities.json";
                 } else {
+                    app = printApp;
                     printUrl = specBaseUrl + "/" + printApp + "/buildreport";
                     printCapaUrl = specBaseUrl + "/" + printApp
                             + "/capabilities.json";
@@ -500,22 +951,36 @@ public class IRIXClient extends HttpServlet {
 
             String baseLayout = spec.getString("layout");
 
-            JSONObject printLayouts = PrintClient.getLayouts(printCapaUrl, printTimeout);
-            List<String> printLayoutsList = new ArrayList<String>();
-            if (printLayouts.has("layouts")) {
-                JSONArray printLayoutsArray = printLayouts
-                        .getJSONArray("layouts");
-                for (int j = 0; j < printLayoutsArray.length(); j++) {
-                     printLayoutsList.add(printLayoutsArray.getJSONObject(j)
-                             .get("name").toString());
-                }
+            // the cache options are not passed on to mapfish-print
+            long cacheTtl = renderCacheTtl;
+            if (spec.has("cacheTtl")) {
+                cacheTtl = spec.getLong("cacheTtl");
+            }
+            if (!spec.optBoolean("cache", true)) {
+                cacheTtl = 0;
+            }
+            spec.remove("cache");
+            spec.remove("cacheTtl");
+
+            Set<String> printLayoutsList;
+            try (StageMetrics.Sample sample = metrics.start(
+                    StageMetrics.CAPABILITIES, app,
+                    StageMetrics.host(printCapaUrl))) {
+                printLayoutsList = capabilitiesCache.getLayouts(printCapaUrl);
+                sample.success();
             }
 
+            // the spec is changed below, so serialize it for each request
+            String reportUrl = printUrl;
+            String reportApp = app;
+            String reportCapaUrl = printCapaUrl;
+            long reportTtl = cacheTtl;
             if (printLayoutsList.contains(baseLayout)) {
-                byte[] content = PrintClient.getReport(printUrl + ".pdf",
-                        spec.toString(), printTimeout);
-                ReportUtils.attachFile(title + suffix, content, report,
-                        "application/pdf", title + suffix + ".pdf");
+                String json = spec.toString();
+                fetches.add(() -> print(store, reportUrl, "pdf", json,
+                        reportApp, reportCapaUrl, reportTtl));
+                attachments.add(new Attachment(title + suffix,
+                        "application/pdf", title + suffix + ".pdf"));
             } else {
                 log.log(INFO, "Layout " + spec.get("layout") + " not found at "
                         +  printCapaUrl);
@@ -525,11 +990,11 @@ public class IRIXClient extends HttpServlet {
             // try map without legend
             if (printLayoutsList.contains(baseLayout + mapSuffix)) {
                 spec.put("layout", baseLayout + mapSuffix);
-                byte[] content = PrintClient.getReport(printUrl + ".png",
-                        spec.toString(), printTimeout);
-                ReportUtils.attachFile(title + mapSuffix + suffix, content,
-                        report, "image/png", title + mapSuffix + suffix
-                                + ".png");
+                String json = spec.toString();
+                fetches.add(() -> print(store, reportUrl, "png", json,
+                        reportApp, reportCapaUrl, reportTtl));
+                attachments.add(new Attachment(title + mapSuffix + suffix,
+                        "image/png", title + mapSuffix + suffix + ".png"));
             } else {
                 log.log(INFO, "Layout " + spec.get("layout") + " not found at "
                         +  printCapaUrl);
@@ -538,17 +1003,24 @@ public class IRIXClient extends HttpServlet {
             // legend without map
             if (printLayoutsList.contains(baseLayout + legendSuffix)) {
                 spec.put("layout", baseLayout + legendSuffix);
-                byte[] content = PrintClient.getReport(printUrl + ".png",
-                        spec.toString(), printTimeout);
-                ReportUtils.attachFile(title + legendSuffix + suffix, content,
-                        report, "image/png",
-                        title + legendSuffix + suffix + ".png"
-                );
+                String json = spec.toString();
+                fetches.add(() -> print(store, reportUrl, "png", json,
+                        reportApp, reportCapaUrl, reportTtl));
+                attachments.add(new Attachment(title + legendSuffix + suffix,
+                        "image/png", title + legendSuffix + suffix + ".png"));
             } else {
                 log.log(INFO, "Layout " + spec.get("layout") + " not found at "
                         +  printCapaUrl);
             }
         }
+
+        List<Payload> contents = fetcher.fetchAll(fetches,
+                PrintException.class);
+        for (int j = 0; j < attachments.size(); j++) {
+            Attachment attachment = attachments.get(j);
+            ReportUtils.attachFile(attachment.title, contents.get(j), report,
+                    attachment.mimeType, attachment.fileName);
+        }
     }
 
     /**
@@ -557,15 +1029,22 @@ public class IRIXClient extends HttpServlet {
      * @param specs  A list of the json print specs.
      * @param report The report to attach the data to.
      * @param title  The title for the Annex
+     * @param context The request, its store keeps the decoded or fetched
+     *                documents.
      * @throws IOException    if a requested document could not be printed
      *                        because of Connection problems.
      * @throws ImageException it the print service returned an error.
      */
     protected void handleImageSpecs(List<JSONObject> specs,
-                                    ReportType report, String title)
+                                    ReportType report, String title,
+                                    RequestContext context)
             throws IOException, ImageException {
+        AttachmentStore store = context.getStore();
         int i = 1;
         String suffix = "";
+        List<Attachment> attachments = new ArrayList<Attachment>();
+        List<ParallelFetcher.Fetch<Payload, ImageException>> fetches =
+            new ArrayList<ParallelFetcher.Fetch<Payload, ImageException>>();
         for (JSONObject spec : specs) {
             if (specs.size() > 1) {
                 suffix = " " + Integer.toString(i++);
@@ -576,17 +1055,16 @@ public class IRIXClient extends HttpServlet {
             if (spec.has("outputSuffix")) {
                 suffix += spec.getString("outputSuffix");
             }
-            byte[] content = null;
-            if (spec.has("value")
-                    && spec.get("value").toString().length() > 0) {
+            if (spec.has("value") && !isEmptyValue(spec.get("value"))) {
                 // content is embedded as base64 string (incl. data:... part)
-                String base64value = spec.getString("value");
-                // removing everything before including an eventually
-                // existing comma to separate base64 content
-                String base64content = base64value.
-                        split(",")[base64value.split(",").length - 1];
-                content = Base64.getDecoder().decode(base64content);
-                //content = decoder.decode(base64content);
+                Object value = spec.get("value");
+                if (value instanceof SpilledValue) {
+                    SpilledValue spilled = (SpilledValue) value;
+                    fetches.add(() -> store.storeBase64(spilled));
+                } else {
+                    String base64value = spec.getString("value");
+                    fetches.add(() -> store.storeBase64(base64value));
+                }
             } else if (spec.has("url")) {
                 // content has to be fetched from external URL
                 String imageUrl = spec.get("url").toString();
@@ -601,7 +1079,10 @@ public class IRIXClient extends HttpServlet {
                 } catch (URISyntaxException e) {
                     throw new ImageException("URL encoding failed.");
                 }
-                content = ImageClient.getImage(imageUrl);
+                String encodedUrl = imageUrl;
+                fetches.add(() -> fetchImage(store, encodedUrl));
+            } else {
+                fetches.add(() -> null);
             }
             String attachLinkname = "";
             if (spec.has("linkName")) {
@@ -611,41 +1092,113 @@ public class IRIXClient extends HttpServlet {
                     attachLinkname = attachLinkname.substring(0, index);
                 }
             }
-            if (content.getClass().equals(byte[].class)) {
-                if (attachLinkname.length() > 0) {
-                    ReportUtils.attachFile(attachLinkname, content, report,
-                            mimeType, attachLinkname + "." + outputFormat);
-                } else {
-                    ReportUtils.attachFile(title + suffix, content, report,
-                            mimeType, title + suffix + "." + outputFormat);
-                }
+            if (attachLinkname.length() > 0) {
+                attachments.add(new Attachment(attachLinkname, mimeType,
+                        attachLinkname + "." + outputFormat));
+            } else {
+                attachments.add(new Attachment(title + suffix, mimeType,
+                        title + suffix + "." + outputFormat));
             }
         }
-    }
 
-    private void fetchWSDL() throws ServletException {
-        HttpClient client = java.net.http.HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-            .header("Authorization", "Basic " + irixServiceAuthCred)
-            .GET()
-            .uri(URI.create(irixServiceUrl.toString() + "?wsdl"))
-            .timeout(Duration.ofMillis(CONNECTION_TIMEOUT))
-            .build();
+        List<Payload> contents = fetcher.fetchAll(fetches,
+                ImageException.class);
+        for (int j = 0; j < attachments.size(); j++) {
+            Payload content = contents.get(j);
+            if (content != null) {
+                Attachment attachment = attachments.get(j);
+                ReportUtils.attachFile(attachment.title, content, report,
+                        attachment.mimeType, attachment.fileName);
+            }
+        }
+    }
 
-        int statusCode = 0;
-        try {
-            HttpResponse<Path> response = client.send(request,
-                HttpResponse.BodyHandlers.ofFile(Path.of(irixServiceWsdlTmp)));
-            statusCode = response.statusCode();
-        } catch (InterruptedException | IOException e) {
-            throw new ServletException("WSDL could be downloaded.");
+    /**
+     * Render a print spec with Mapfish Print or take it from the cache.
+     *
+     * @param store   the store for the document.
+     * @param url     the buildreport URL without format.
+     * @param format  the output format, e.g. "pdf".
+     * @param json    the print spec.
+     * @param app     the print app, used in the metrics.
+     * @param capaUrl the capabilities URL of the print app.
+     * @param ttl     seconds the document is cached, 0 for none.
+     * @return the document.
+     * @throws IOException    if the connection failed.
+     * @throws PrintException if the print service returned an error.
+     */
+    private Payload print(AttachmentStore store, String url, String format,
+            String json, String app, String capaUrl, long ttl)
+            throws IOException, PrintException {
+        String key = null;
+        if (renderCache != null && ttl > 0) {
+            key = RenderCache.key(json, format, url);
+            InputStream cached = renderCache.get(key);
+            if (cached != null) {
+                try (InputStream in = cached) {
+                    return store.store(out -> in.transferTo(out));
+                }
+            }
+        }
+        long generation = 0;
+        if (key != null) {
+            // capabilities changing during the rendering make it stale
+            generation = renderCache.generation();
         }
+        Payload content;
+        try (StageMetrics.Sample sample = metrics.start(
+                StageMetrics.PRINT + format, app, StageMetrics.host(url))) {
+            content = singleFlight.store(
+                SingleFlight.key("POST", url + "." + format, json), store,
+                out -> PrintClient.getReport(
+                    url + "." + format, json, printTimeout, out),
+                PrintException.class);
+            sample.success();
+        }
+        if (key != null) {
+            try {
+                renderCache.put(key, content, ttl, capaUrl, generation);
+            } catch (IOException e) {
+                log.log(WARNING, "Could not cache rendered document: "
+                    + e.getMessage());
+            }
+        }
+        return content;
+    }
 
-        if (statusCode < HttpURLConnection.HTTP_OK
-            || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
-            throw new ServletException("WSDL could be downloaded.");
+    /**
+     * Download an external image.
+     *
+     * @param store the store for the image.
+     * @param url   the encoded URL of the image.
+     * @return the image.
+     * @throws IOException    if the connection failed.
+     * @throws ImageException if the server returned an error.
+     */
+    private Payload fetchImage(AttachmentStore store, String url)
+            throws IOException, ImageException {
+        try (StageMetrics.Sample sample = metrics.start(StageMetrics.IMAGE,
+                null, StageMetrics.host(url))) {
+            Payload content = singleFlight.store(
+                SingleFlight.key("GET", url, null), store, out -> {
+                    if (imageCache == null) {
+                        ImageClient.getImage(url,
+                            ImageClient.CONNECTION_TIMEOUT, out);
+                    } else {
+                        imageCache.getImage(url,
+                            ImageClient.CONNECTION_TIMEOUT, out);
+                    }
+                }, ImageException.class);
+            sample.success();
+            return content;
         }
+    }
 
+    private static boolean isEmptyValue(Object value) {
+        if (value instanceof SpilledValue) {
+            return ((SpilledValue) value).length() == 0;
+        }
+        return value.toString().isEmpty();
     }
 
     /**
@@ -658,34 +1211,10 @@ public class IRIXClient extends HttpServlet {
             throws ServletException {
         //FIXME how pass on authentication headers from original request??
 
-        fetchWSDL();
-        URL wsdlUrl = null;
-        try {
-            wsdlUrl = new URL("file://" + irixServiceWsdlTmp);
-        } catch (MalformedURLException e) {
-        }
-
-        UploadReportService service = new UploadReportService(wsdlUrl);
-        UploadReportInterface irixservice = service.getUploadReportPort();
-
         // TODO Add further HTTP headers to the web service request?
-
-        switch (irixServiceAuthType) {
-            case AUTH_TYPE_BASIC:
-                Map<String, Object> reqCon = ((BindingProvider) irixservice).getRequestContext();
-                //TODO: This line seems to override the endpoint (e.g. host, port) found in the wsdl file.
-                //This is usually good, because bad proxy configurations cannot break the
-                //communication, but it also obstructs intentional changes to urls via wsdl file.
-                reqCon.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, irixServiceUrl.toString());
-                reqCon.put(MessageContext.HTTP_REQUEST_HEADERS, Map.of("Authorization",
-                    List.of("Basic " + irixServiceAuthCred)));
-            default:
-                break;
-        }
-
         log.log(DEBUG, "Sending report.");
         try {
-            irixservice.uploadReport(report);
+            upload(report);
         } catch (UploadReportException_Exception e) {
             //getFaultInfo is UploadReportException
             //this class does not inherit from Exception and is not Throwable
@@ -696,10 +1225,123 @@ public class IRIXClient extends HttpServlet {
         }
         log.log(DEBUG, "Report successfully sent.");
     }
+
+    /**
+     * Upload a report with a pooled proxy, guarded by the bulkhead and
+     * circuit breaker of the webservice host.
+     *
+     * The proxy is released after an answer of the service, including a
+     * fault, and discarded after a transport error.
+     *
+     * @param report The report to send.
+     * @throws UploadReportException_Exception if the service rejected the
+     *                                         report.
+     * @throws ServletException if the service is not available.
+     */
+    private void upload(ReportType report)
+            throws UploadReportException_Exception, ServletException {
+        UploadServiceClient.PooledPort port = uploadService.acquire();
+        boolean sent = false;
+        boolean answered = false;
+        try {
+            // the JAX-WS runtime has its own connections, but shares the
+            // bulkhead and circuit breaker of the host
+            BackendGuard guard = OutboundHttp.guard(
+                URI.create(irixServiceUrl.toString()));
+            boolean probe;
+            try {
+                probe = guard.acquire();
+            } catch (BackendUnavailableException e) {
+                throw new ServletException("IRIX service unavailable: "
+                    + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(
+                    "Interrupted while waiting for the IRIX service.", e);
+            }
+            try (StageMetrics.Sample sample = metrics.start(
+                    StageMetrics.UPLOAD, null,
+                    StageMetrics.host(irixServiceUrl.toString()))) {
+                sent = true;
+                port.getPort().uploadReport(report);
+                answered = true;
+                sample.success();
+            } catch (UploadReportException_Exception e) {
+                // the service answered, so this does not count against it
+                answered = true;
+                throw e;
+            } finally {
+                guard.release(probe, answered);
+            }
+        } finally {
+            if (sent && !answered) {
+                // a transport error may leave the proxy in any state
+                uploadService.discard(port);
+            } else {
+                uploadService.release(port);
+            }
+        }
+    }
+
+    /**
+     * Upload a report, either directly or by queueing it in the outbox.
+     *
+     * @param report The report to send.
+     * @throws ServletException if uploading or queueing failed.
+     */
+    protected void uploadReport(ReportType report) throws ServletException {
+        if (outbox == null) {
+            sendReportToService(report);
+            return;
+        }
+        try {
+            outbox.enqueue(out -> {
+                try {
+                    ReportUtils.marshallReport(report, out, null);
+                } catch (SAXException e) {
+                    // only thrown when validating against a schema
+                    throw new IOException(e);
+                }
+            });
+        } catch (IOException | JAXBException e) {
+            throw new ServletException("Failed to queue report for upload.",
+                e);
+        }
+        log.log(DEBUG, "Report queued for upload.");
+    }
+
+    /**
+     * Upload a report queued in the outbox.
+     *
+     * @param file the marshalled report.
+     * @throws UploadOutbox.RejectedException if the report cannot be read
+     *                                        or the webservice rejected it.
+     * @throws ServletException if the webservice is not available.
+     */
+    protected void uploadQueued(Path file)
+            throws UploadOutbox.RejectedException, ServletException {
+        ReportType report;
+        try {
+            report = ReportUtils.unmarshallReport(file.toFile(), null);
+        } catch (JAXBException | SAXException e) {
+            throw new UploadOutbox.RejectedException(
+                "Unreadable queued report.", e);
+        }
+        try {
+            upload(report);
+        } catch (UploadReportException_Exception e) {
+            throw new UploadOutbox.RejectedException(
+                "IRIX service rejected report: "
+                + e.getFaultInfo().getMessage(), e);
+        }
+    }
     /**
      * Handle GET request.
      * <p>
-     * So far return only Version information
+     * Without a path only return the status code, {@code /metrics}
+     * serves the {@link StageMetrics} in the Prometheus text format, below
+     * {@code /jobs/} serve the status and result of background jobs
+     * (see {@link JobEndpoint}).
      *
      * @param request  object that contains the request the client has made
      *                 of the servlet
@@ -712,16 +1354,39 @@ public class IRIXClient extends HttpServlet {
     public void doGet(HttpServletRequest request,
                        HttpServletResponse response)
             throws ServletException, IOException {
-        response.setStatus(HttpServletResponse.SC_OK);
-        //getServletConfig().getServletName();
-        return;
+        String path = request.getPathInfo();
+        if (path == null || path.equals("/")) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            //getServletConfig().getServletName();
+            return;
+        }
+        if (metricsEndpoint && path.equals(METRICS_PATH)) {
+            response.setContentType(METRICS_CONTENT_TYPE);
+            response.setCharacterEncoding("UTF-8");
+            metrics.writePrometheus(response.getWriter());
+            return;
+        }
+        if (jobEndpoint == null || !path.startsWith(JobEndpoint.PREFIX)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (checkRoles(request, response)) {
+            jobEndpoint.handle(request, response);
+        }
     }
 
 
     /**
      * Handle POST request.
      * <p>
-     * Parse request and generate according IRIX report for response.
+     * The request is processed on a thread of the request executor, so
+     * the container thread is free while the report is printed and
+     * uploaded. If asynchronous processing is disabled or not supported,
+     * it is processed directly.
+     * <p>
+     * With the header {@code Prefer: respond-async} or the query
+     * parameter {@code async=true} the request is processed as a
+     * background job and answered at once with 202 Accepted.
      *
      * @param request  object that contains the request the client has made
      *                 of the servlet
@@ -734,30 +1399,333 @@ public class IRIXClient extends HttpServlet {
     public void doPost(HttpServletRequest request,
                        HttpServletResponse response)
             throws ServletException, IOException {
+        if (jobs != null && isJobRequested(request)) {
+            submitJob(request, response);
+            return;
+        }
+        if (requestExecutor == null || !request.isAsyncSupported()) {
+            processRequest(request, response);
+            return;
+        }
+        AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(asyncTimeout);
+        AsyncRequest asyncRequest =
+            new AsyncRequest(context, this::processRequest);
+        context.addListener(asyncRequest);
+        try {
+            requestExecutor.execute(asyncRequest);
+        } catch (RejectedExecutionException e) {
+            log.log(WARNING, "Request executor busy, rejecting request.");
+            asyncRequest.reject();
+        }
+    }
 
-        if (rolesPermission != null) {
-            if (request.getHeader(rolesHeaderString) != null) {
-                List<String> roles = Arrays.asList(request
-                        .getHeader(rolesHeaderString).split("[\\s,;]+"));
-                List<String> validRolesList = rolesPermission.stream()
-                        .filter(roles::contains)
-                        .collect(Collectors.toList());
-                if (validRolesList.isEmpty()) {
-                    log.log(DEBUG, "No valid roles found for user");
-                    response.setStatus(HttpServletResponse.SC_FORBIDDEN);
-                    return;
-                }
+    /**
+     * Process a POST request.
+     * <p>
+     * Parse request and generate according IRIX report for response.
+     *
+     * @param request  object that contains the request the client has made
+     *                 of the servlet
+     * @param response object that contains the response the servlet sends
+     *                 to the client
+     * @throws ServletException in case of errors with schema.
+     * @throws IOException      if the request is invalid.
+     */
+    protected void processRequest(HttpServletRequest request,
+                                  HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!checkRoles(request, response)) {
+            return;
+        }
+
+        try (JsonRequestReader reader =
+                new JsonRequestReader(spillThreshold, spillDir);
+             AttachmentStore store =
+                new AttachmentStore(attachmentMemoryThreshold, spillDir,
+                    hashAlgorithm)) {
+            Object body = parseRequest(request, reader);
+            HttpServletResponse out = CompressingResponse.wrap(request,
+                response, compressionThreshold);
+            processBody(newContext(request, store), out, body);
+            if (out instanceof CompressingResponse) {
+                ((CompressingResponse) out).finish();
+            }
+        }
+    }
+
+    /**
+     * Create the context of a request.
+     *
+     * @param request the request, used for its headers.
+     * @param store   the store for the attachments, may be null.
+     * @return the context.
+     * @throws ServletException if user headers are present but could not
+     *                          be parsed.
+     */
+    protected RequestContext newContext(HttpServletRequest request,
+                                        AttachmentStore store)
+            throws ServletException {
+        return RequestContext.of(request, parseUserHeader(request),
+            defaultBaseUrl, store);
+    }
+
+    /**
+     * Process a single parsed request or a batch of requests.
+     *
+     * @param context  the request, its store keeps the attachments of a
+     *                 single request until the report has been sent.
+     * @param response the response.
+     * @param body     the parsed content of the request.
+     * @throws ServletException if the content is neither a JSON object nor
+     *                          an array or the report failed.
+     * @throws IOException      if writing the response failed.
+     */
+    protected void processBody(RequestContext context,
+                               HttpServletResponse response,
+                               Object body)
+            throws ServletException, IOException {
+        try (StageMetrics.Sample sample =
+                metrics.start(StageMetrics.REQUEST, null, null)) {
+            if (body instanceof JSONArray) {
+                processBatch(context, response, (JSONArray) body);
+            } else if (body instanceof JSONObject) {
+                processReport(context, response, (JSONObject) body);
             } else {
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                return;
+                throw new ServletException(
+                        "Could not read jsonObject from request.");
             }
+            sample.success();
+        } finally {
+            log.log(DEBUG, "Request " + context.getId() + " processed in "
+                + context.getElapsedMs() + " ms.");
         }
+    }
 
-        JSONObject jsonObject = parseRequest(request);
-        if (jsonObject == null) {
-            throw new ServletException(
-                    "Could not read jsonObject from request.");
+    /**
+     * Process a batch of requests.
+     * <p>
+     * The items are processed concurrently (see batch-parallelism),
+     * sharing the parsed user headers and the outbound connections. The
+     * response is a status array or, if an item asked for its report, a
+     * multipart message (see {@link BatchResponse}). A failing item does
+     * not affect the others.
+     *
+     * @param context  the request.
+     * @param response the response.
+     * @param batch    the request objects.
+     * @throws ServletException if the user headers are invalid.
+     * @throws IOException      if writing the response failed or the
+     *                          processing was interrupted.
+     */
+    protected void processBatch(RequestContext context,
+                                HttpServletResponse response,
+                                JSONArray batch)
+            throws ServletException, IOException {
+        if (batch.length() > batchMaxItems) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                "A batch may contain at most " + batchMaxItems + " items.");
+            return;
+        }
+        List<AttachmentStore> stores =
+            Collections.synchronizedList(new ArrayList<AttachmentStore>());
+        try {
+            List<ParallelFetcher.Fetch<BatchResponse.Item, RuntimeException>>
+                items = new ArrayList<>();
+            for (int i = 0; i < batch.length(); i++) {
+                int index = i;
+                Object item = batch.get(i);
+                items.add(() -> processBatchItem(context, response, index,
+                    item, stores));
+            }
+            BatchResponse result = new BatchResponse(
+                batchFetcher.fetchAll(items, RuntimeException.class));
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(result.getContentType());
+            result.writeTo(response.getOutputStream());
+        } finally {
+            synchronized (stores) {
+                for (AttachmentStore store : stores) {
+                    store.close();
+                }
+            }
+        }
+    }
+
+    private BatchResponse.Item processBatchItem(RequestContext context,
+                                                HttpServletResponse response,
+                                                int index,
+                                                Object item,
+                                                List<AttachmentStore> stores)
+            throws IOException {
+        AttachmentStore store = new AttachmentStore(
+            attachmentMemoryThreshold, spillDir, hashAlgorithm);
+        stores.add(store);
+        boolean respond = false;
+        try {
+            if (!(item instanceof JSONObject)) {
+                throw new ServletException(
+                    "Batch item is not a JSON object.");
+            }
+            JSONObject jsonObject = (JSONObject) item;
+            String requestType =
+                jsonObject.optString("request-type").toLowerCase();
+            respond = requestType.equals(REQUEST_TYPE_RESPOND)
+                || requestType.equals(REQUEST_TYPE_UPLOAD_RESPOND);
+            CapturedResponse captured =
+                new CapturedResponse(response, store.newSink());
+            processReport(context.withStore(store), captured, jsonObject);
+            return new BatchResponse.Item(index, respond,
+                captured.getStatus(), captured.getContentType(),
+                captured.toPayload(), null);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (ServletException | IOException | RuntimeException e) {
+            log.log(WARNING, "Batch item " + index + " failed: "
+                + e.getMessage());
+            return new BatchResponse.Item(index, respond,
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null, null,
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Check the roles of the user against the permitted roles.
+     *
+     * @param request  the request carrying the roles header.
+     * @param response the response, set to 401 or 403 if the check fails.
+     * @return true if the request may be processed.
+     */
+    protected boolean checkRoles(HttpServletRequest request,
+                                 HttpServletResponse response) {
+        if (rolesPermission == null) {
+            return true;
+        }
+        if (request.getHeader(rolesHeaderString) == null) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return false;
+        }
+        List<String> roles = Arrays.asList(request
+                .getHeader(rolesHeaderString).split("[\\s,;]+"));
+        List<String> validRolesList = rolesPermission.stream()
+                .filter(roles::contains)
+                .collect(Collectors.toList());
+        if (validRolesList.isEmpty()) {
+            log.log(DEBUG, "No valid roles found for user");
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether the client asked for processing as a background job.
+     *
+     * @param request the request.
+     * @return true for {@code Prefer: respond-async} or {@code async=true}.
+     */
+    protected boolean isJobRequested(HttpServletRequest request) {
+        Enumeration<String> prefer = request.getHeaders("Prefer");
+        while (prefer != null && prefer.hasMoreElements()) {
+            for (String pref : prefer.nextElement().split(",")) {
+                if (pref.trim().equalsIgnoreCase("respond-async")) {
+                    return true;
+                }
+            }
         }
+        return Boolean.parseBoolean(request.getParameter("async"));
+    }
+
+    /**
+     * Parse a request and process it as a background job.
+     * <p>
+     * The client gets 202 Accepted with the job status and its URL in
+     * the Location header, or 503 if too many jobs are pending. The
+     * report, or the error the request would have produced, is kept in
+     * the job until it expires.
+     *
+     * @param request  the request.
+     * @param response the response.
+     * @throws ServletException if the request contains no JSON object.
+     * @throws IOException      if reading the request failed.
+     */
+    protected void submitJob(HttpServletRequest request,
+                             HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!checkRoles(request, response)) {
+            return;
+        }
+        JsonRequestReader reader =
+            new JsonRequestReader(spillThreshold, spillDir);
+        Job job = null;
+        try {
+            Object body = parseRequest(request, reader);
+            if (!(body instanceof JSONObject || body instanceof JSONArray)) {
+                throw new ServletException(
+                        "Could not read jsonObject from request.");
+            }
+            RequestContext context = newContext(request, null);
+            job = jobs.create();
+            Job queued = job;
+            CapturedResponse captured = new CapturedResponse(response,
+                job.getStore().newSink());
+            requestExecutor.execute(() -> runJob(queued,
+                context.withStore(queued.getStore()), captured, body,
+                reader));
+        } catch (RejectedExecutionException e) {
+            reader.close();
+            if (job != null) {
+                // never queued, it would not finish and never expire
+                jobs.remove(job.getId());
+            }
+            log.log(WARNING, "Too many jobs, rejecting request.");
+            response.setHeader("Retry-After", JOB_RETRY_AFTER);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                "Too many pending jobs, try again later.");
+            return;
+        } catch (ServletException | RuntimeException e) {
+            reader.close();
+            if (job != null) {
+                jobs.remove(job.getId());
+            }
+            throw e;
+        }
+        String href = JobEndpoint.href(request, job);
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader("Location", href);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(job.toJSON(href).toString());
+    }
+
+    private void runJob(Job job, RequestContext context,
+                        CapturedResponse response, Object body,
+                        JsonRequestReader reader) {
+        job.start();
+        try {
+            processBody(context, response, body);
+            job.finish(response.getStatus(), response.getContentType(),
+                response.toPayload());
+        } catch (ServletException | IOException | RuntimeException e) {
+            log.log(WARNING, "Job " + job.getId() + " failed: "
+                + e.getMessage());
+            job.fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parse the user headers of a request.
+     *
+     * @param request the request.
+     * @return the user information as from {@link #parseHeader}.
+     * @throws ServletException if user headers are present but could not
+     *                          be parsed.
+     */
+    protected JSONObject parseUserHeader(HttpServletRequest request)
+            throws ServletException {
         // FIXME may be this test has obsolete conditions?
         JSONObject userJsonObject = parseHeader(request);
         if (userJsonObject.length() == 0
@@ -767,7 +1735,25 @@ public class IRIXClient extends HttpServlet {
             throw new ServletException(
                     "Could not parse Header from request. Empty JSON returned");
         }
+        return userJsonObject;
+    }
 
+    /**
+     * Generate the IRIX report for a parsed request.
+     *
+     * @param context    the request, its store keeps the attachments
+     *                   until the report has been sent.
+     * @param response   object that contains the response the servlet
+     *                   sends to the client
+     * @param jsonObject the parsed content of the request.
+     * @throws ServletException in case of errors with schema.
+     * @throws IOException      if the request is invalid.
+     */
+    protected void processReport(RequestContext context,
+                                 HttpServletResponse response,
+                                 JSONObject jsonObject)
+            throws ServletException, IOException {
+        JSONObject userJsonObject = context.getUser();
         List<JSONObject> printSpecs = getPrintSpecs(jsonObject);
         // FIXME allow empty printSpecs (IRIX without attachements)
         if (printSpecs.isEmpty()) {
@@ -791,16 +1777,25 @@ public class IRIXClient extends HttpServlet {
         }
 
         ReportType report = null;
-        String reportBaseUrl = "";
-        if (jsonObject.has("baseurl")) {
-            reportBaseUrl = jsonObject.getString("baseurl");
+        String reportBaseUrl = jsonObject.optString("baseurl");
+        if (!reportBaseUrl.isEmpty()) {
+            context = context.withPrintBaseUrl(reportBaseUrl);
         }
         try {
             // FIXME do we have to send userJsonObject as well?
             // better to use a Java Object?
-            report = ReportUtils.prepareReport(jsonObject, userJsonObject);
-            DokpoolUtils.addAnnotation(jsonObject, report, dokpoolSchemaFile,
-                    userJsonObject);
+            try (StageMetrics.Sample sample =
+                    metrics.start(StageMetrics.PREPARE, null, null)) {
+                report = ReportUtils.prepareReport(jsonObject,
+                        userJsonObject);
+                sample.success();
+            }
+            try (StageMetrics.Sample sample =
+                    metrics.start(StageMetrics.ANNOTATE, null, null)) {
+                DokpoolUtils.addAnnotation(jsonObject, report,
+                        dokpoolSchemaFile, userJsonObject);
+                sample.success();
+            }
             if (!printSpecs.isEmpty()) {
                 if (printSpecs.get(0).has("jobKey")
                         && printSpecs.get(0).get("jobKey")
@@ -811,19 +1806,19 @@ public class IRIXClient extends HttpServlet {
                         .hashCode() == IMAGE_JOB_LIST_KEY.hashCode()) {
                     handleImageSpecs(printSpecs, report,
                             jsonObject.getJSONObject("irix")
-                                    .getString("Title"));
+                                    .getString("Title"), context);
                 } else if (printSpecs.get(0).has("jobKey")
                         && printSpecs.get(0).get("jobKey")
                         .hashCode() == DOC_JOB_LIST_KEY.hashCode()) {
                     handleImageSpecs(printSpecs, report,
                             jsonObject.getJSONObject("irix")
-                                    .getString("Title"));
+                                    .getString("Title"), context);
                 } else {
                     handlePrintSpecs(printSpecs, report,
                             jsonObject.getString("printapp"),
                             jsonObject.getJSONObject("irix")
                                     .getString("Title"),
-                            reportBaseUrl);
+                            context);
                 }
             }
         } catch (JSONException e) {
@@ -842,7 +1837,7 @@ public class IRIXClient extends HttpServlet {
 
         if (requestType.equals(REQUEST_TYPE_UPLOAD)) {
             try {
-                sendReportToService(report);
+                uploadReport(report);
                 response.setContentType("text/html");
                 response.setStatus(HttpServletResponse.SC_OK);
             } catch (ServletException se) {
@@ -859,7 +1854,7 @@ public class IRIXClient extends HttpServlet {
 
         if (requestType.equals(REQUEST_TYPE_UPLOAD_RESPOND)) {
             try {
-                sendReportToService(report);
+                uploadReport(report);
             } catch (ServletException se) {
                 response.setContentType("text/plain");
                 response.setStatus(
@@ -874,18 +1869,33 @@ public class IRIXClient extends HttpServlet {
 
         if (requestType.equals(REQUEST_TYPE_RESPOND)
                 || requestType.equals(REQUEST_TYPE_UPLOAD_RESPOND)) {
-            try {
+            // set before the body, a large report commits the response
+            response.setContentType("application/xml");
+            try (StageMetrics.Sample sample =
+                    metrics.start(StageMetrics.MARSHAL, null, null)) {
                 ReportUtils.marshallReport(report, response.getOutputStream(),
-                        irixSchemaFile);
+                        irixSchemaFile, !compactXml);
+                sample.success();
             } catch (JAXBException e) {
                 throw new ServletException("Invalid request.", e);
             } catch (SAXException e) {
                 throw new ServletException("Failed to parse schema.", e);
             }
-            response.setContentType("application/xml");
             response.getOutputStream().flush();
         }
     }
 
 
+    /** Title, mime type and file name of an attachment to be fetched. */
+    private static final class Attachment {
+        private final String title;
+        private final String mimeType;
+        private final String fileName;
+
+        Attachment(String annexTitle, String mime, String name) {
+            this.title = annexTitle;
+            this.mimeType = mime;
+            this.fileName = name;
+        }
+    }
 }
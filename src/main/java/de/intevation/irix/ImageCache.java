@@ -0,0 +1,406 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+/**
+ * Cache for external images in front of {@link ImageClient}.
+ *
+ * The cache follows the HTTP caching rules of a shared cache: responses
+ * marked {@code no-store} or {@code private} are not kept, the freshness
+ * is taken from {@code s-maxage}, {@code max-age} or {@code Expires}
+ * and, lacking those, estimated from {@code Last-Modified}. A stale
+ * entry with an {@code ETag} or {@code Last-Modified} is revalidated
+ * with a conditional GET and served again if the server answers
+ * {@code 304 Not Modified}. The least recently used images are evicted
+ * when the entries exceed the size limit.
+ */
+public class ImageCache {
+    private static System.Logger log = System.getLogger(ImageCache.class.getName());
+
+    /** Default number of bytes kept. */
+    public static final int DEFAULT_MAX_BYTES = 33554432;
+
+    /** Images larger than this fraction of the limit are not kept. */
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    /** Fraction of the age since the last modification used as
+     * freshness if the server sends no explicit one. */
+    private static final int HEURISTIC_FRACTION = 10;
+
+    /** Upper limit of the estimated freshness in milliseconds. */
+    private static final long MAX_HEURISTIC_MILLIS =
+        TimeUnit.DAYS.toMillis(1);
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    /** Entries in access order. */
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a cache.
+     *
+     * @param limit number of bytes kept.
+     */
+    public ImageCache(long limit) {
+        this.maxBytes = limit;
+        this.maxEntryBytes = limit / MAX_ENTRY_FRACTION;
+    }
+
+    /**
+     * Obtains an image from the cache or from the external URL.
+     *
+     * @param imageUrl The url of the image.
+     * @param timeout the timeout for the httpconnection.
+     * @param out the stream to write the image to.
+     *
+     * @throws IOException if communication with the server failed.
+     * @throws ImageException if the server returned an error.
+     */
+    public void getImage(String imageUrl, int timeout, OutputStream out)
+            throws IOException, ImageException {
+        long now = System.currentTimeMillis();
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(imageUrl);
+        }
+        if (cached != null && cached.expires > now) {
+            hits.incrementAndGet();
+            out.write(cached.data);
+            return;
+        }
+
+        Map<String, String> conditions = new HashMap<String, String>();
+        if (cached != null) {
+            if (cached.etag != null) {
+                conditions.put("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                conditions.put("If-Modified-Since", cached.lastModified);
+            }
+        }
+        HttpResponse<InputStream> response = ImageClient.send(imageUrl,
+            timeout, conditions);
+        try (InputStream body = response.body()) {
+            HttpHeaders headers = response.headers();
+            if (cached != null && response.statusCode()
+                    == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                revalidations.incrementAndGet();
+                Entry refreshed = cached.refresh(headers, now);
+                if (refreshed == null) {
+                    remove(imageUrl);
+                } else {
+                    put(refreshed);
+                }
+                out.write(cached.data);
+                return;
+            }
+            ImageClient.checkStatus(response.statusCode(), body);
+            misses.incrementAndGet();
+
+            Entry policy = Entry.of(imageUrl, null, headers, now);
+            if (policy == null) {
+                remove(imageUrl);
+                body.transferTo(out);
+                return;
+            }
+            byte[] data = copy(body, out);
+            if (data == null) {
+                remove(imageUrl);
+                log.log(DEBUG, "Image too large to cache: " + imageUrl);
+                return;
+            }
+            put(policy.withData(data));
+        }
+    }
+
+    /**
+     * Copy the body to the output and keep a copy unless it exceeds the
+     * size of an entry.
+     *
+     * @return the body, null if it was too large.
+     */
+    private byte[] copy(InputStream body, OutputStream out)
+            throws IOException {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = body.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            if (copy != null) {
+                if (copy.size() + read > maxEntryBytes) {
+                    copy = null;
+                } else {
+                    copy.write(buffer, 0, read);
+                }
+            }
+        }
+        if (copy == null) {
+            return null;
+        }
+        return copy.toByteArray();
+    }
+
+    private synchronized void put(Entry entry) {
+        remove(entry.url);
+        entries.put(entry.url, entry);
+        bytes += entry.data.length;
+        Iterator<Entry> lru = entries.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            Entry evicted = lru.next();
+            lru.remove();
+            bytes -= evicted.data.length;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(String url) {
+        Entry entry = entries.remove(url);
+        if (entry != null) {
+            bytes -= entry.data.length;
+        }
+    }
+
+    /**
+     * Drop all entries.
+     */
+    public synchronized void shutdown() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Number of images served from the cache without asking the server.
+     *
+     * @return the hit count.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of images served from the cache after the server answered
+     * a conditional request with {@code 304 Not Modified}.
+     *
+     * @return the revalidation count.
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * Number of images downloaded in full.
+     *
+     * @return the miss count.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of images evicted to stay within the limit.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Fraction of the images served from the cache, including
+     * revalidated ones.
+     *
+     * @return the hit ratio, 0 if no image was requested.
+     */
+    public double getHitRatio() {
+        long served = hits.get() + revalidations.get();
+        long total = served + misses.get();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) served / total;
+    }
+
+    /**
+     * Size of the images held.
+     *
+     * @return the number of bytes.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /** A cached image and its validators. */
+    private static final class Entry {
+        private final String url;
+        private final byte[] data;
+        private final long expires;
+        private final String etag;
+        private final String lastModified;
+
+        Entry(String imageUrl, byte[] content, long expiresAt,
+                String entityTag, String modified) {
+            this.url = imageUrl;
+            this.data = content;
+            this.expires = expiresAt;
+            this.etag = entityTag;
+            this.lastModified = modified;
+        }
+
+        Entry withData(byte[] content) {
+            return new Entry(url, content, expires, etag, lastModified);
+        }
+
+        /**
+         * Apply the headers of a {@code 304} response.
+         *
+         * @return the updated entry, null if it must not be kept.
+         */
+        Entry refresh(HttpHeaders headers, long now) {
+            return of(url, data, merge(headers), now);
+        }
+
+        /** The headers of a 304 response, validators missing there kept. */
+        private HttpHeaders merge(HttpHeaders headers) {
+            Map<String, List<String>> merged =
+                new HashMap<String, List<String>>(headers.map());
+            if (etag != null && headers.firstValue("ETag").isEmpty()) {
+                merged.put("ETag", List.of(etag));
+            }
+            if (lastModified != null
+                    && headers.firstValue("Last-Modified").isEmpty()) {
+                merged.put("Last-Modified", List.of(lastModified));
+            }
+            return HttpHeaders.of(merged, (name, value) -> true);
+        }
+
+        /**
+         * Determine whether and how long a response may be kept.
+         *
+         * @return the entry, null if it must not be stored.
+         */
+        static Entry of(String imageUrl, byte[] content, HttpHeaders headers,
+                long now) {
+            Long sharedMaxAge = null;
+            Long maxAge = null;
+            boolean noCache = false;
+            for (String value : headers.allValues("Cache-Control")) {
+                for (String directive : value.split(",")) {
+                    String[] parts = directive.trim().split("=", 2);
+                    String name = parts[0].trim().toLowerCase(Locale.ROOT);
+                    if (name.equals("no-store") || name.equals("private")) {
+                        return null;
+                    }
+                    if (name.equals("no-cache")) {
+                        noCache = true;
+                    } else if (name.equals("s-maxage") && parts.length > 1) {
+                        sharedMaxAge = seconds(parts[1]);
+                    } else if (name.equals("max-age") && parts.length > 1) {
+                        maxAge = seconds(parts[1]);
+                    }
+                }
+            }
+            if (headers.allValues("Vary").stream()
+                    .anyMatch(v -> v.trim().equals("*"))) {
+                return null;
+            }
+
+            String entityTag = headers.firstValue("ETag").orElse(null);
+            String modified = headers.firstValue("Last-Modified")
+                .orElse(null);
+            long age = 0;
+            Long ageHeader = seconds(headers.firstValue("Age").orElse(""));
+            if (ageHeader != null) {
+                age = TimeUnit.SECONDS.toMillis(ageHeader);
+            }
+
+            long freshness = 0;
+            if (noCache) {
+                // stored, but revalidated before every use
+                freshness = 0;
+            } else if (sharedMaxAge != null) {
+                freshness = TimeUnit.SECONDS.toMillis(sharedMaxAge) - age;
+            } else if (maxAge != null) {
+                freshness = TimeUnit.SECONDS.toMillis(maxAge) - age;
+            } else if (headers.firstValue("Expires").isPresent()) {
+                Long expiresAt = date(headers.firstValue("Expires").get());
+                Long date = date(headers.firstValue("Date").orElse(""));
+                if (expiresAt != null) {
+                    if (date == null) {
+                        date = now;
+                    }
+                    freshness = expiresAt - date - age;
+                }
+            } else if (modified != null) {
+                Long modifiedAt = date(modified);
+                if (modifiedAt != null) {
+                    freshness = Math.min(MAX_HEURISTIC_MILLIS,
+                        (now - modifiedAt) / HEURISTIC_FRACTION);
+                }
+            }
+
+            if (freshness <= 0 && entityTag == null && modified == null) {
+                // can neither be served nor revalidated
+                return null;
+            }
+            return new Entry(imageUrl, content, now + Math.max(0, freshness),
+                entityTag, modified);
+        }
+
+        private static Long seconds(String value) {
+            try {
+                return Long.parseLong(value.trim().replace("\"", ""));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static Long date(String value) {
+            try {
+                return ZonedDateTime.parse(value.trim(),
+                    DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -8,14 +8,16 @@
 
 package de.intevation.irix;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.http.HttpClient;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.time.Duration;
+import java.util.Map;
 
 /**
  * Utility class to handle interaction for external images.
@@ -24,7 +26,8 @@ import java.time.Duration;
 public class ImageClient {
     private static System.Logger log = System.getLogger(ImageClient.class.getName());
 
-    private static final int CONNECTION_TIMEOUT = 5000;
+    /** Default timeout for image downloads in milliseconds. */
+    protected static final int CONNECTION_TIMEOUT = 5000;
 
     private static final int BYTE_ARRAY_SIZE = 4096;
 
@@ -59,36 +62,82 @@ public class ImageClient {
      */
     public static byte[] getImage(String imageUrl, int timeout)
         throws IOException, ImageException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        getImage(imageUrl, timeout, out);
+        return out.toByteArray();
+    }
+
+    /** Obtains an image from an external URL.
+     *
+     * The image is written to the given stream while it is received.
+     *
+     * @param imageUrl The url to send the request to.
+     * @param timeout the timeout for the httpconnection.
+     * @param out the stream to write the image to.
+     *
+     * @throws IOException if communication with print service failed.
+     * @throws ImageException if the print job failed.
+     */
+    public static void getImage(String imageUrl, int timeout,
+        OutputStream out) throws IOException, ImageException {
+        HttpResponse<InputStream> response = send(imageUrl, timeout,
+            Map.of());
+        try (InputStream body = response.body()) {
+            checkStatus(response.statusCode(), body);
+            body.transferTo(out);
+        }
+    }
 
-        HttpClient client = java.net.http.HttpClient.newHttpClient();
+    /** Sends a GET request for an image.
+     *
+     * The body of the response is not read.
+     *
+     * @param imageUrl The url to send the request to.
+     * @param timeout the timeout for the httpconnection.
+     * @param headers additional request headers, e.g. for a
+     *                conditional request.
+     *
+     * @return the response.
+     *
+     * @throws IOException if communication with the server failed.
+     * @throws ImageException if the request was interrupted or rejected
+     *                        because the server keeps failing.
+     */
+    static HttpResponse<InputStream> send(String imageUrl, int timeout,
+        Map<String, String> headers) throws IOException, ImageException {
 
-        HttpRequest request = HttpRequest.newBuilder()
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
             .GET()//for clarity, actually GET is the default
             .uri(URI.create(imageUrl))
-            .timeout(Duration.ofMillis(timeout))
-            .build();
+            .timeout(Duration.ofMillis(timeout));
+        headers.forEach(builder::header);
 
-        int statusCode = 0;
-        byte[] retval = null;
         try {
-            HttpResponse<byte[]> response = client.send(request, BodyHandlers.ofByteArray());
-            statusCode = response.statusCode();
-            retval = response.body();
+            return OutboundHttp.sendStreaming(
+                OutboundHttp.getClient(), builder.build());
+        } catch (BackendUnavailableException e) {
+            throw new ImageException("Image server of '" + imageUrl
+                + "' unavailable: " + e.getMessage());
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new ImageException("Communication with print service '"
                                      + imageUrl + "' was interrupted.");
         }
+    }
 
+    /** Fails unless the status code signals success.
+     *
+     * @param statusCode the status code of the response.
+     * @param body the body of the response, used as error message.
+     *
+     * @throws IOException if the body cannot be read.
+     * @throws ImageException if the status code is not 2xx.
+     */
+    static void checkStatus(int statusCode, InputStream body)
+        throws IOException, ImageException {
         if (statusCode < HttpURLConnection.HTTP_OK
             || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
-            if (retval != null) {
-                throw new ImageException(new String(retval));
-            } else {
-                throw new ImageException("Communication with print service '"
-                                         + imageUrl + "' failed."
-                                         + "\nNo response from print service.");
-            }
+            throw new ImageException(new String(body.readAllBytes()));
         }
-        return retval;
     }
 }
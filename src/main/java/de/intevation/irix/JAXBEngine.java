@@ -0,0 +1,202 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.PropertyException;
+import jakarta.xml.bind.Unmarshaller;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+import org.iaea._2012.irix.format.ReportType;
+
+import de.bfs.irix.extensions.dokpool.DokpoolMeta;
+
+/**
+ * Shared JAXB runtime for the IRIX report and the DokpoolMeta extension.
+ *
+ * Creating a JAXBContext is expensive, so every bound class gets exactly
+ * one context for the lifetime of the application. Marshaller and
+ * Unmarshaller instances are not thread-safe; they are handed out from
+ * a small pool and have to be given back after use. Instances that were
+ * involved in a failed (un)marshalling should simply not be released.
+ */
+public final class JAXBEngine {
+    private static System.Logger log = System.getLogger(JAXBEngine.class.getName());
+
+    /** Maximum number of idle (un)marshallers kept per bound class. */
+    private static final int MAX_IDLE = 32;
+
+    private static final Map<Class<?>, Pool> POOLS =
+        new ConcurrentHashMap<Class<?>, Pool>();
+
+    private JAXBEngine() {
+        // hidden constructor to avoid instantiation.
+    }
+
+    /**
+     * Create the contexts for all classes handled by the IRIXClient.
+     *
+     * Calling this is optional, contexts are otherwise created on first
+     * use. It allows to fail early and to keep the cost out of the first
+     * request.
+     *
+     * @throws JAXBException if a context could not be created.
+     */
+    public static void init() throws JAXBException {
+        pool(ReportType.class);
+        pool(DokpoolMeta.class);
+    }
+
+    /**
+     * Get the shared JAXBContext for a bound class.
+     *
+     * @param type the bound class.
+     * @return the context.
+     * @throws JAXBException if the context could not be created.
+     */
+    public static JAXBContext getContext(Class<?> type) throws JAXBException {
+        return pool(type).context;
+    }
+
+    /**
+     * Obtain a marshaller for a bound class.
+     *
+     * The marshaller is configured for formatted UTF-8 output and
+     * has no schema set. Both may be changed by the caller, they are
+     * reset on release.
+     *
+     * @param type the bound class.
+     * @return a marshaller that is exclusively owned by the caller until
+     * it is released.
+     * @throws JAXBException if the marshaller could not be created.
+     */
+    public static Marshaller acquireMarshaller(Class<?> type)
+            throws JAXBException {
+        Pool pool = pool(type);
+        Marshaller marshaller = pool.marshallers.poll();
+        if (marshaller != null) {
+            pool.idleMarshallers.decrementAndGet();
+            return marshaller;
+        }
+        marshaller = pool.context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        return marshaller;
+    }
+
+    /**
+     * Give a marshaller back to the pool.
+     *
+     * @param type the bound class the marshaller was acquired for.
+     * @param marshaller the marshaller.
+     */
+    public static void releaseMarshaller(Class<?> type,
+            Marshaller marshaller) {
+        Pool pool = POOLS.get(type);
+        if (pool == null || marshaller == null) {
+            return;
+        }
+        marshaller.setSchema(null);
+        marshaller.setListener(null);
+        try {
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        } catch (PropertyException e) {
+            return;
+        }
+        if (pool.idleMarshallers.incrementAndGet() > MAX_IDLE) {
+            pool.idleMarshallers.decrementAndGet();
+            return;
+        }
+        pool.marshallers.offer(marshaller);
+    }
+
+    /**
+     * Obtain an unmarshaller for a bound class.
+     *
+     * @param type the bound class.
+     * @return an unmarshaller that is exclusively owned by the caller
+     * until it is released.
+     * @throws JAXBException if the unmarshaller could not be created.
+     */
+    public static Unmarshaller acquireUnmarshaller(Class<?> type)
+            throws JAXBException {
+        Pool pool = pool(type);
+        Unmarshaller unmarshaller = pool.unmarshallers.poll();
+        if (unmarshaller != null) {
+            pool.idleUnmarshallers.decrementAndGet();
+            return unmarshaller;
+        }
+        return pool.context.createUnmarshaller();
+    }
+
+    /**
+     * Give an unmarshaller back to the pool.
+     *
+     * @param type the bound class the unmarshaller was acquired for.
+     * @param unmarshaller the unmarshaller.
+     */
+    public static void releaseUnmarshaller(Class<?> type,
+            Unmarshaller unmarshaller) {
+        Pool pool = POOLS.get(type);
+        if (pool == null || unmarshaller == null) {
+            return;
+        }
+        unmarshaller.setSchema(null);
+        unmarshaller.setListener(null);
+        if (pool.idleUnmarshallers.incrementAndGet() > MAX_IDLE) {
+            pool.idleUnmarshallers.decrementAndGet();
+            return;
+        }
+        pool.unmarshallers.offer(unmarshaller);
+    }
+
+    private static Pool pool(Class<?> type) throws JAXBException {
+        Pool pool = POOLS.get(type);
+        if (pool != null) {
+            return pool;
+        }
+        synchronized (POOLS) {
+            pool = POOLS.get(type);
+            if (pool == null) {
+                long start = System.nanoTime();
+                pool = new Pool(JAXBContext.newInstance(type));
+                POOLS.put(type, pool);
+                log.log(DEBUG, "Created JAXBContext for " + type.getName()
+                    + " in " + TimeUnit.NANOSECONDS.toMillis(
+                        System.nanoTime() - start) + " ms");
+            }
+        }
+        return pool;
+    }
+
+    /** Context and idle (un)marshallers of one bound class. */
+    private static final class Pool {
+        private final JAXBContext context;
+        private final Queue<Marshaller> marshallers =
+            new ConcurrentLinkedQueue<Marshaller>();
+        private final Queue<Unmarshaller> unmarshallers =
+            new ConcurrentLinkedQueue<Unmarshaller>();
+        private final AtomicInteger idleMarshallers = new AtomicInteger();
+        private final AtomicInteger idleUnmarshallers = new AtomicInteger();
+
+        Pool(JAXBContext ctx) {
+            this.context = ctx;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+/**
+ * A report request processed in the background.
+ *
+ * The job captures the response the request would have produced
+ * synchronously: status code, content type and body. The body is kept
+ * in the job's own {@link AttachmentStore} until the job is evicted from
+ * the {@link JobRegistry}.
+ */
+public class Job {
+
+    /** Processing state of a job. */
+    public enum State {
+        /** Waiting for a worker. */
+        QUEUED,
+        /** Being processed. */
+        RUNNING,
+        /** Finished with a successful status code. */
+        DONE,
+        /** Finished with an error status code or an exception. */
+        FAILED;
+
+        /**
+         * The name used in the JSON representation.
+         *
+         * @return the lower case name.
+         */
+        public String jsonName() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** First HTTP status code considered an error. */
+    private static final int FIRST_ERROR_STATUS = 400;
+
+    private final String id;
+    private final Instant created = Instant.now();
+    private final AttachmentStore store;
+    private final List<Consumer<Job>> listeners =
+        new ArrayList<Consumer<Job>>();
+
+    private State state = State.QUEUED;
+    private Instant finished;
+    private int httpStatus;
+    private String contentType;
+    private Payload result;
+    private String message;
+
+    /**
+     * Create a queued job.
+     *
+     * @param jobId the unique id.
+     * @param resultStore the store keeping the result.
+     */
+    Job(String jobId, AttachmentStore resultStore) {
+        this.id = jobId;
+        this.store = resultStore;
+    }
+
+    /**
+     * The id of the job.
+     *
+     * @return the id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * The store for the result of the job.
+     *
+     * @return the store, closed when the job is evicted.
+     */
+    public AttachmentStore getStore() {
+        return store;
+    }
+
+    /**
+     * The current state.
+     *
+     * @return the state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Whether the job has finished.
+     *
+     * @return true if the state is DONE or FAILED.
+     */
+    public synchronized boolean isFinished() {
+        return state == State.DONE || state == State.FAILED;
+    }
+
+    /**
+     * The time the job finished.
+     *
+     * @return the time or null if the job is not finished.
+     */
+    public synchronized Instant getFinished() {
+        return finished;
+    }
+
+    /**
+     * The status code of the captured response.
+     *
+     * @return the status code, 0 if not finished.
+     */
+    public synchronized int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * The content type of the captured response.
+     *
+     * @return the content type, may be null.
+     */
+    public synchronized String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * The body of the captured response.
+     *
+     * @return the body, null if not finished or failed with an exception.
+     */
+    public synchronized Payload getResult() {
+        return result;
+    }
+
+    /**
+     * The error message of a failed job.
+     *
+     * @return the message, may be null.
+     */
+    public synchronized String getMessage() {
+        return message;
+    }
+
+    /**
+     * Register a listener called on every state change.
+     *
+     * Listeners are called on the thread changing the state and should
+     * not block.
+     *
+     * @param listener the listener.
+     */
+    public synchronized void addListener(Consumer<Job> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener the listener.
+     */
+    public synchronized void removeListener(Consumer<Job> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Mark the job as running.
+     */
+    public void start() {
+        synchronized (this) {
+            state = State.RUNNING;
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Finish the job with a captured response.
+     *
+     * @param status the status code.
+     * @param type the content type.
+     * @param body the body.
+     */
+    public void finish(int status, String type, Payload body) {
+        synchronized (this) {
+            httpStatus = status;
+            contentType = type;
+            result = body;
+            if (status >= FIRST_ERROR_STATUS) {
+                complete(State.FAILED);
+            } else {
+                complete(State.DONE);
+            }
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Finish the job after an exception.
+     *
+     * @param status the status code to report.
+     * @param error the error message.
+     */
+    public void fail(int status, String error) {
+        synchronized (this) {
+            httpStatus = status;
+            message = error;
+            complete(State.FAILED);
+        }
+        notifyListeners();
+    }
+
+    /**
+     * The JSON representation of the job status.
+     *
+     * @param href the URL of the job resource.
+     * @return the status.
+     */
+    public synchronized JSONObject toJSON(String href) {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("status", state.jsonName());
+        json.put("created", created.toString());
+        json.put("href", href);
+        if (isFinished()) {
+            json.put("finished", finished.toString());
+            json.put("httpStatus", httpStatus);
+            if (result != null) {
+                json.put("report", href + "/report");
+            }
+        }
+        if (message != null) {
+            json.put("message", message);
+        }
+        return json;
+    }
+
+    private void complete(State newState) {
+        state = newState;
+        finished = Instant.now();
+    }
+
+    private void notifyListeners() {
+        List<Consumer<Job>> current;
+        synchronized (this) {
+            current = new ArrayList<Consumer<Job>>(listeners);
+        }
+        for (Consumer<Job> listener : current) {
+            listener.accept(this);
+        }
+    }
+}
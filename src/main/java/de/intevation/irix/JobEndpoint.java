@@ -0,0 +1,284 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+/**
+ * GET resources of background jobs below the servlet path.
+ *
+ * <ul>
+ * <li>{@code /jobs/<id>} returns the status as JSON. With
+ * {@code ?wait=<seconds>} the request is held until the job finishes or
+ * the time is up (long-polling).</li>
+ * <li>{@code /jobs/<id>/events} streams status changes as Server-Sent
+ * Events until the job finishes.</li>
+ * <li>{@code /jobs/<id>/report} returns the captured response of a
+ * finished job, e.g. the marshalled IRIX report.</li>
+ * </ul>
+ * Waiting requests are asynchronous and do not block container threads.
+ * Their answers are written on threads of the container, never on the
+ * thread running the job, so a slow client cannot stall the job.
+ */
+public class JobEndpoint {
+    private static System.Logger log = System.getLogger(JobEndpoint.class.getName());
+
+    /** Path prefix of the job resources. */
+    public static final String PREFIX = "/jobs/";
+
+    /** Maximum time a status request waits for a job in seconds. */
+    public static final int MAX_WAIT = 300;
+
+    private final JobRegistry registry;
+    private final long eventsTimeout;
+
+    /**
+     * Create the endpoint.
+     *
+     * @param jobs the registry of jobs.
+     * @param eventsTimeoutMs maximum duration of an event stream.
+     */
+    public JobEndpoint(JobRegistry jobs, long eventsTimeoutMs) {
+        this.registry = jobs;
+        this.eventsTimeout = eventsTimeoutMs;
+    }
+
+    /**
+     * The URL of a job resource.
+     *
+     * @param request a request to the servlet.
+     * @param job the job.
+     * @return the absolute path of the job resource.
+     */
+    public static String href(HttpServletRequest request, Job job) {
+        return request.getContextPath() + request.getServletPath()
+            + PREFIX + job.getId();
+    }
+
+    /**
+     * Handle a GET request of a job resource.
+     *
+     * @param request the request, its path info starting with
+     *                {@link #PREFIX}.
+     * @param response the response.
+     * @throws IOException if writing the response failed.
+     */
+    public void handle(HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String[] path = request.getPathInfo().substring(PREFIX.length())
+            .split("/");
+        Job job = registry.get(path[0]);
+        if (job == null || path.length > 2) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND,
+                "Unknown job.");
+            return;
+        }
+        String href = href(request, job);
+        if (path.length == 1) {
+            sendStatus(request, response, job, href);
+        } else if (path[1].equals("events")) {
+            sendEvents(request, response, job, href);
+        } else if (path[1].equals("report")) {
+            sendReport(response, job, href);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND,
+                "Unknown job resource.");
+        }
+    }
+
+    private void sendStatus(HttpServletRequest request,
+            HttpServletResponse response, Job job, String href)
+            throws IOException {
+        int wait = 0;
+        String waitParam = request.getParameter("wait");
+        if (waitParam != null) {
+            try {
+                wait = Math.min(Integer.parseUnsignedInt(waitParam),
+                    MAX_WAIT);
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Invalid wait parameter.");
+                return;
+            }
+        }
+        if (wait == 0 || job.isFinished() || !request.isAsyncSupported()) {
+            writeStatus(response, job, href);
+            return;
+        }
+        AsyncContext context = request.startAsync();
+        context.setTimeout(TimeUnit.SECONDS.toMillis(wait));
+        AtomicBoolean answered = new AtomicBoolean();
+        Consumer<Job> listener = new Consumer<Job>() {
+            @Override
+            public void accept(Job changed) {
+                if (changed.isFinished()) {
+                    Consumer<Job> self = this;
+                    context.start(() ->
+                        answer(context, answered, changed, href, self));
+                }
+            }
+        };
+        context.addListener(new CompletionListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                answer(context, answered, job, href, listener);
+            }
+        });
+        job.addListener(listener);
+        if (job.isFinished()) {
+            answer(context, answered, job, href, listener);
+        }
+    }
+
+    private static void answer(AsyncContext context, AtomicBoolean answered,
+            Job job, String href, Consumer<Job> listener) {
+        if (!answered.compareAndSet(false, true)) {
+            return;
+        }
+        job.removeListener(listener);
+        try {
+            writeStatus((HttpServletResponse) context.getResponse(), job,
+                href);
+        } catch (IOException e) {
+            log.log(DEBUG, "Could not send job status: " + e.getMessage());
+        } finally {
+            context.complete();
+        }
+    }
+
+    private void sendEvents(HttpServletRequest request,
+            HttpServletResponse response, Job job, String href)
+            throws IOException {
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        if (job.isFinished() || !request.isAsyncSupported()) {
+            writeEvent(response.getOutputStream(), job, href);
+            return;
+        }
+        AsyncContext context = request.startAsync();
+        context.setTimeout(eventsTimeout);
+        ServletOutputStream out = response.getOutputStream();
+        AtomicBoolean closed = new AtomicBoolean();
+        Consumer<Job> listener = new Consumer<Job>() {
+            @Override
+            public void accept(Job changed) {
+                Consumer<Job> self = this;
+                context.start(() -> send(changed, self));
+            }
+
+            private void send(Job changed, Consumer<Job> self) {
+                boolean last;
+                synchronized (out) {
+                    if (closed.get()) {
+                        return;
+                    }
+                    // the event shows the state when it is written
+                    last = changed.isFinished();
+                    try {
+                        writeEvent(out, changed, href);
+                    } catch (IOException e) {
+                        log.log(DEBUG, "Event stream closed: "
+                            + e.getMessage());
+                        last = true;
+                    }
+                    closed.set(last);
+                }
+                if (last) {
+                    changed.removeListener(self);
+                    context.complete();
+                }
+            }
+        };
+        context.addListener(new CompletionListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                job.removeListener(listener);
+                if (!closed.getAndSet(true)) {
+                    context.complete();
+                }
+            }
+        });
+        job.addListener(listener);
+        // the initial state, also covers a change before the registration
+        listener.accept(job);
+    }
+
+    private static void writeEvent(ServletOutputStream out, Job job,
+            String href) throws IOException {
+        String event = "event: status\ndata: " + job.toJSON(href)
+            + "\n\n";
+        out.write(event.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void writeStatus(HttpServletResponse response, Job job,
+            String href) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getOutputStream().write(
+            job.toJSON(href).toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendReport(HttpServletResponse response, Job job,
+            String href) throws IOException {
+        if (!job.isFinished()) {
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            writeStatus(response, job, href);
+            return;
+        }
+        Payload result = job.getResult();
+        if (result == null) {
+            // failed with an exception, there is no captured response
+            response.sendError(job.getHttpStatus(), job.getMessage());
+            return;
+        }
+        response.setStatus(job.getHttpStatus());
+        if (job.getContentType() != null) {
+            response.setContentType(job.getContentType());
+        }
+        response.setContentLengthLong(result.size());
+        try (InputStream in = result.openStream()) {
+            in.transferTo(response.getOutputStream());
+        }
+    }
+
+    /** Async listener only interested in timeouts. */
+    private abstract static class CompletionListener
+            implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // nothing to clean up
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            log.log(DEBUG, "Job request failed: " + event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+    }
+}
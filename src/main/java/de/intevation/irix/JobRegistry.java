@@ -0,0 +1,191 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+/**
+ * Bounded in-memory registry of background jobs.
+ *
+ * Finished jobs are kept for a time to live so clients can fetch their
+ * result. When the registry is full, the least recently accessed
+ * finished job is evicted; if all jobs are still unfinished, new jobs
+ * are rejected. Evicting a job deletes its result.
+ */
+public class JobRegistry {
+    private static System.Logger log = System.getLogger(JobRegistry.class.getName());
+
+    /** Default maximum number of jobs. */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /** Default time to live of finished jobs in seconds. */
+    public static final int DEFAULT_TTL = 3600;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int capacity;
+    private final long ttlMs;
+    private final int memoryThreshold;
+    private final Path dir;
+    private final String algorithm;
+
+    /** Jobs in access order, guarded by this. */
+    private final LinkedHashMap<String, Job> jobs =
+        new LinkedHashMap<String, Job>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    private boolean closed;
+
+    /**
+     * Create a registry.
+     *
+     * @param maxJobs maximum number of jobs kept.
+     * @param ttlSeconds time to live of finished jobs in seconds.
+     * @param threshold number of bytes of a result kept in memory.
+     * @param tempDir directory for results kept on disk.
+     * @param hashAlgorithm hash algorithm of the result stores.
+     */
+    public JobRegistry(int maxJobs, long ttlSeconds, int threshold,
+            Path tempDir, String hashAlgorithm) {
+        this.capacity = maxJobs;
+        this.ttlMs = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.memoryThreshold = threshold;
+        this.dir = tempDir;
+        this.algorithm = hashAlgorithm;
+    }
+
+    /**
+     * Register a new queued job.
+     *
+     * @return the job.
+     * @throws RejectedExecutionException if the registry is full of
+     *                                    unfinished jobs or closed.
+     */
+    public Job create() {
+        List<Job> evicted = new ArrayList<Job>();
+        Job job;
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("Registry closed.");
+            }
+            expire(evicted);
+            if (jobs.size() >= capacity && !evictFinished(evicted)) {
+                close(evicted);
+                throw new RejectedExecutionException(
+                    "Too many unfinished jobs.");
+            }
+            String id = UUID.randomUUID().toString();
+            job = new Job(id, new AttachmentStore(memoryThreshold, dir,
+                algorithm));
+            jobs.put(id, job);
+        }
+        close(evicted);
+        return job;
+    }
+
+    /**
+     * Look up a job.
+     *
+     * @param id the id of the job.
+     * @return the job or null if it is unknown or evicted.
+     */
+    public Job get(String id) {
+        List<Job> evicted = new ArrayList<Job>();
+        Job job;
+        synchronized (this) {
+            expire(evicted);
+            job = jobs.get(id);
+        }
+        close(evicted);
+        return job;
+    }
+
+    /**
+     * Remove a job and delete its result, e.g. a job that could not be
+     * queued.
+     *
+     * @param id the id of the job.
+     */
+    public void remove(String id) {
+        Job job;
+        synchronized (this) {
+            job = jobs.remove(id);
+        }
+        if (job != null) {
+            close(List.of(job));
+        }
+    }
+
+    /**
+     * The number of registered jobs.
+     *
+     * @return the number of jobs.
+     */
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Reject new jobs and delete the results of all jobs.
+     */
+    public void shutdown() {
+        List<Job> evicted;
+        synchronized (this) {
+            closed = true;
+            evicted = new ArrayList<Job>(jobs.values());
+            jobs.clear();
+        }
+        close(evicted);
+    }
+
+    /** Remove finished jobs older than the time to live. */
+    private void expire(List<Job> evicted) {
+        Instant limit = Instant.now().minusMillis(ttlMs);
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            Instant finished = job.getFinished();
+            if (finished != null && finished.isBefore(limit)) {
+                it.remove();
+                evicted.add(job);
+            }
+        }
+    }
+
+    /** Remove the least recently accessed finished job. */
+    private boolean evictFinished(List<Job> evicted) {
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (job.isFinished()) {
+                it.remove();
+                evicted.add(job);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void close(List<Job> evicted) {
+        for (Job job : evicted) {
+            log.log(DEBUG, "Evicting job " + job.getId());
+            job.getStore().close();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Streaming reader for JSON requests.
+ *
+ * The request is read incrementally and parsed into
+ * {@link org.json.JSONObject} and {@link org.json.JSONArray} objects as
+ * with {@link org.json.JSONTokener}, accepting the same relaxed syntax
+ * (trailing commas, single quotes, unquoted keys), except for large
+ * embedded documents:
+ * string values of a {@link #SPILL_KEYS} key exceeding the spill
+ * threshold are written to a temporary file while reading and represented
+ * by a {@link SpilledValue}. The temporary files are deleted when the
+ * reader is closed, i.e. at the end of the request.
+ */
+public class JsonRequestReader implements Closeable {
+    private static System.Logger log = System.getLogger(JsonRequestReader.class.getName());
+
+    /** Default size in characters above which values are spilled. */
+    public static final int DEFAULT_SPILL_THRESHOLD = 262144;
+
+    /** Keys whose values may be spilled to disk. */
+    public static final Set<String> SPILL_KEYS = Set.of("value");
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Number of hex digits of a unicode escape. */
+    private static final int UNICODE_DIGITS = 4;
+    private static final int HEX_RADIX = 16;
+
+    private final int spillThreshold;
+    private final Path spillDir;
+    private final List<Path> spilled = new ArrayList<Path>();
+
+    private Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long offset;
+
+    /**
+     * Create a reader.
+     *
+     * @param threshold number of characters above which values are
+     *                  spilled to disk, 0 keeps all values in memory.
+     * @param dir directory for the temporary files.
+     */
+    public JsonRequestReader(int threshold, Path dir) {
+        this.spillThreshold = threshold;
+        this.spillDir = dir;
+    }
+
+    /**
+     * Read a JSON object.
+     *
+     * @param reader the source, e.g. the reader of a servlet request.
+     * @return the object.
+     * @throws IOException if reading or spilling failed.
+     * @throws JSONException if the source is not a valid JSON object.
+     */
+    public JSONObject readObject(Reader reader) throws IOException {
+        Object value = readValue(reader);
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("A JSONObject text must begin with '{'");
+        }
+        return (JSONObject) value;
+    }
+
+    /**
+     * Read a JSON value.
+     *
+     * @param reader the source, e.g. the reader of a servlet request.
+     * @return a JSONObject, JSONArray, String, SpilledValue, Number,
+     * Boolean or JSONObject.NULL.
+     * @throws IOException if reading or spilling failed.
+     * @throws JSONException if the source is not valid JSON.
+     */
+    public Object readValue(Reader reader) throws IOException {
+        this.in = reader;
+        this.pos = 0;
+        this.limit = 0;
+        this.offset = 0;
+        Object value = parseValue(null);
+        if (skipWhitespace() >= 0) {
+            throw syntaxError("Unexpected content after JSON value");
+        }
+        return value;
+    }
+
+    /**
+     * Delete all temporary files of spilled values.
+     */
+    @Override
+    public void close() {
+        for (Path file : spilled) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.log(WARNING, "Could not delete " + file + ": "
+                    + e.getMessage());
+            }
+        }
+        spilled.clear();
+    }
+
+    private Object parseValue(String key) throws IOException {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                pos++;
+                return parseObject();
+            case '[':
+                pos++;
+                return parseArray();
+            case '"':
+            case '\'':
+                pos++;
+                return parseString((char) c,
+                    key != null && SPILL_KEYS.contains(key));
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                return parseLiteral();
+        }
+    }
+
+    private JSONObject parseObject() throws IOException {
+        JSONObject object = new JSONObject();
+        if (skipWhitespace() == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            String key = parseKey();
+            if (skipWhitespace() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            pos++;
+            if (object.has(key)) {
+                throw syntaxError("Duplicate key \"" + key + "\"");
+            }
+            object.put(key, parseValue(key));
+            int c = skipWhitespace();
+            pos++;
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+            if (skipWhitespace() == '}') {
+                pos++;
+                return object;
+            }
+        }
+    }
+
+    private String parseKey() throws IOException {
+        int c = skipWhitespace();
+        if (c == '"' || c == '\'') {
+            pos++;
+            return (String) parseString((char) c, false);
+        }
+        if (c < 0 || c == '}' || c == '{' || c == '[') {
+            throw syntaxError("A JSONObject text must contain a key");
+        }
+        return parseToken();
+    }
+
+    private JSONArray parseArray() throws IOException {
+        JSONArray array = new JSONArray();
+        if (skipWhitespace() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.put(parseValue(null));
+            int c = skipWhitespace();
+            pos++;
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+            if (skipWhitespace() == ']') {
+                pos++;
+                return array;
+            }
+        }
+    }
+
+    private Object parseString(char quote, boolean spillable)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Writer spill = null;
+        Path file = null;
+        long length = 0;
+        int flushAt = spillThreshold;
+        try {
+            while (true) {
+                int c = read();
+                if (c == quote) {
+                    break;
+                }
+                if (c < 0) {
+                    throw syntaxError("Unterminated string");
+                }
+                if (c == '\\') {
+                    c = parseEscape();
+                }
+                sb.append((char) c);
+                length++;
+                if (spillable && spillThreshold > 0
+                        && sb.length() >= flushAt) {
+                    if (spill == null) {
+                        file = Files.createTempFile(spillDir, "irix-value",
+                            ".json");
+                        spilled.add(file);
+                        spill = Files.newBufferedWriter(file,
+                            StandardCharsets.UTF_8);
+                        log.log(DEBUG, "Spilling large value to " + file);
+                        // from now on only buffer a chunk
+                        flushAt = BUFFER_SIZE;
+                    }
+                    spill.append(sb);
+                    sb.setLength(0);
+                }
+            }
+            if (spill == null) {
+                return sb.toString();
+            }
+            spill.append(sb);
+        } finally {
+            if (spill != null) {
+                spill.close();
+            }
+        }
+        return new SpilledValue(file, length);
+    }
+
+    private int parseEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                StringBuilder hex = new StringBuilder(UNICODE_DIGITS);
+                for (int i = 0; i < UNICODE_DIGITS; i++) {
+                    int h = read();
+                    if (Character.digit(h, HEX_RADIX) < 0) {
+                        throw syntaxError("Illegal escape");
+                    }
+                    hex.append((char) h);
+                }
+                return Integer.parseInt(hex.toString(), HEX_RADIX);
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    private Object parseLiteral() throws IOException {
+        String literal = parseToken();
+        if (literal.isEmpty()) {
+            throw syntaxError("Missing value");
+        }
+        return JSONObject.stringToValue(literal);
+    }
+
+    private String parseToken() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c = peek();
+        while (c >= 0 && ",:]}/\\\"[{;=#".indexOf(c) < 0
+                && !Character.isWhitespace(c)) {
+            sb.append((char) c);
+            pos++;
+            c = peek();
+        }
+        return sb.toString().trim();
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = peek();
+        while (c >= 0 && Character.isWhitespace(c)) {
+            pos++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos >= limit) {
+            offset += limit;
+            pos = 0;
+            limit = Math.max(0, in.read(buffer));
+            if (limit == 0) {
+                return -1;
+            }
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            pos++;
+        }
+        return c;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at " + (offset + pos));
+    }
+}
@@ -0,0 +1,394 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * Shared outbound HTTP clients of the IRIXClient.
+ *
+ * A java.net.http.HttpClient keeps its connections alive and reuses
+ * them, together with TLS sessions and its selector thread, as long as
+ * the client itself is reused. All outbound requests to mapfish-print,
+ * external image hosts and the IRIX webservice therefore go through the
+ * clients held here, which share one bounded executor. Every host has a
+ * {@link BackendGuard} limiting the number of concurrent requests and
+ * rejecting requests at once while the host keeps failing.
+ *
+ * The clients are configured once by {@link #configure} during servlet
+ * initialization. If that did not happen, defaults are used.
+ */
+public final class OutboundHttp {
+    private static System.Logger log = System.getLogger(OutboundHttp.class.getName());
+
+    /** Default number of threads used by the http clients. */
+    public static final int DEFAULT_THREADS = 16;
+
+    /** Default maximum number of concurrent requests per host. */
+    public static final int DEFAULT_MAX_PER_HOST = 8;
+
+    /** Default time to wait for a free slot of a host in milliseconds. */
+    public static final int DEFAULT_QUEUE_TIMEOUT_MS = 10000;
+
+    /** Default number of consecutive failures opening a circuit. */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** Default time a circuit stays open in seconds. */
+    public static final int DEFAULT_OPEN_S = 30;
+
+    /** Time to wait for running requests on shutdown. */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    /** JDK property for the idle timeout of pooled connections. */
+    private static final String KEEPALIVE_PROPERTY =
+        "jdk.httpclient.keepalive.timeout";
+
+    private static int threads = DEFAULT_THREADS;
+    private static int maxPerHost = DEFAULT_MAX_PER_HOST;
+    private static boolean printHttp2;
+    private static volatile long queueTimeoutMs = DEFAULT_QUEUE_TIMEOUT_MS;
+    private static volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private static volatile long openMs =
+        TimeUnit.SECONDS.toMillis(DEFAULT_OPEN_S);
+
+    private static ExecutorService executor;
+    private static HttpClient client;
+    private static HttpClient printClient;
+
+    private static final Map<String, BackendGuard> GUARDS =
+        new ConcurrentHashMap<String, BackendGuard>();
+
+    private OutboundHttp() {
+        // hidden constructor to avoid instantiation.
+    }
+
+    /**
+     * Configure the outbound clients.
+     *
+     * Clients created with a previous configuration are discarded.
+     *
+     * @param clientThreads number of threads shared by the clients.
+     * @param connectionsPerHost maximum number of concurrent requests
+     * to a single host.
+     * @param http2ForPrint use HTTP/2 (multiplexing all requests over
+     * one connection) for mapfish-print instead of HTTP/1.1.
+     * @param keepAliveSeconds idle timeout of pooled connections, or
+     * a value &lt;= 0 to use the JDK default. As the JDK reads this
+     * only once, it has to be configured before the first request.
+     */
+    public static synchronized void configure(int clientThreads,
+            int connectionsPerHost, boolean http2ForPrint,
+            long keepAliveSeconds) {
+        if (keepAliveSeconds > 0
+                && System.getProperty(KEEPALIVE_PROPERTY) == null) {
+            System.setProperty(KEEPALIVE_PROPERTY,
+                Long.toString(keepAliveSeconds));
+        }
+        shutdown();
+        threads = clientThreads;
+        maxPerHost = connectionsPerHost;
+        printHttp2 = http2ForPrint;
+        log.log(INFO, "Outbound http: " + threads + " threads, "
+            + maxPerHost + " requests per host, HTTP/2 for print: "
+            + printHttp2);
+    }
+
+    /**
+     * Configure the bulkheads and circuit breakers of the hosts.
+     *
+     * Guards created with a previous configuration are discarded.
+     *
+     * @param queueTimeout milliseconds a request waits for a free slot
+     * of its host, a negative value waits without limit.
+     * @param threshold consecutive failures of a host opening its
+     * circuit, 0 disables the circuit breakers.
+     * @param openSeconds time a circuit stays open before a probe
+     * request is let through.
+     */
+    public static synchronized void configureGuards(long queueTimeout,
+            int threshold, long openSeconds) {
+        GUARDS.clear();
+        queueTimeoutMs = queueTimeout;
+        failureThreshold = threshold;
+        openMs = TimeUnit.SECONDS.toMillis(openSeconds);
+        log.log(INFO, "Outbound guards: " + queueTimeoutMs
+            + " ms queue timeout, circuit opens after " + failureThreshold
+            + " failures for " + openSeconds + " s");
+    }
+
+    /**
+     * The client for external images and the IRIX webservice.
+     *
+     * @return the shared client.
+     */
+    public static synchronized HttpClient getClient() {
+        if (client == null) {
+            client = HttpClient.newBuilder()
+                .executor(getExecutor())
+                .build();
+        }
+        return client;
+    }
+
+    /**
+     * The client for mapfish-print.
+     *
+     * @return the shared client.
+     */
+    public static synchronized HttpClient getPrintClient() {
+        if (printClient == null) {
+            HttpClient.Version version = HttpClient.Version.HTTP_1_1;
+            if (printHttp2) {
+                version = HttpClient.Version.HTTP_2;
+            }
+            printClient = HttpClient.newBuilder()
+                .version(version)
+                .executor(getExecutor())
+                .build();
+        }
+        return printClient;
+    }
+
+    /**
+     * Send a request through the guard of its host.
+     *
+     * The permit for the host is held until the response body has been
+     * handled, so body handlers returning a stream should not be used.
+     * Failed connections and 5xx responses count as failures of the
+     * host.
+     *
+     * @param <T> the response body type.
+     * @param httpClient the client to use.
+     * @param request the request.
+     * @param handler the response body handler.
+     * @return the response.
+     * @throws IOException if sending or receiving failed.
+     * @throws BackendUnavailableException if the guard of the host
+     * rejected the request.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static <T> HttpResponse<T> send(HttpClient httpClient,
+            HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        BackendGuard guard = guard(request.uri());
+        boolean probe = guard.acquire();
+        boolean success = false;
+        try {
+            HttpResponse<T> response = httpClient.send(request, handler);
+            success = isHealthy(response.statusCode());
+            return response;
+        } finally {
+            guard.release(probe, success);
+        }
+    }
+
+    /**
+     * Send a request and stream the response body.
+     *
+     * The permit for the host is held until the returned body stream is
+     * closed, so the caller has to close it. A 5xx response or an error
+     * while reading the body counts as failure of the host.
+     *
+     * @param httpClient the client to use.
+     * @param request the request.
+     * @return the response with the body as stream.
+     * @throws IOException if sending or receiving failed.
+     * @throws BackendUnavailableException if the guard of the host
+     * rejected the request.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static HttpResponse<InputStream> sendStreaming(
+            HttpClient httpClient, HttpRequest request)
+            throws IOException, InterruptedException {
+        BackendGuard guard = guard(request.uri());
+        boolean probe = guard.acquire();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request,
+                HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            guard.release(probe, false);
+            throw e;
+        }
+        boolean healthy = isHealthy(response.statusCode());
+        InputStream body = new FilterInputStream(response.body()) {
+            private boolean released;
+            private boolean failed = !healthy;
+
+            @Override
+            public int read() throws IOException {
+                try {
+                    return super.read();
+                } catch (IOException e) {
+                    failed = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    return super.read(b, off, len);
+                } catch (IOException e) {
+                    failed = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        guard.release(probe, !failed);
+                    }
+                }
+            }
+        };
+        return new StreamingResponse(response, body);
+    }
+
+    /**
+     * Release the shared clients and their threads.
+     */
+    public static synchronized void shutdown() {
+        client = null;
+        printClient = null;
+        GUARDS.clear();
+        ThreadPools.shutdown(executor, SHUTDOWN_TIMEOUT_MS);
+        executor = null;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = ThreadPools.newBoundedPool(
+                "irix-http", threads, Integer.MAX_VALUE);
+        }
+        return executor;
+    }
+
+    /**
+     * The guard of the host of a URI, for requests not sent through the
+     * clients held here, e.g. those of the JAX-WS runtime.
+     *
+     * @param uri the URI of the request.
+     * @return the guard of the host.
+     */
+    public static BackendGuard guard(URI uri) {
+        String key = uri.getScheme() + "://" + uri.getHost() + ":"
+            + uri.getPort();
+        return GUARDS.computeIfAbsent(key, k -> new BackendGuard(k,
+            maxPerHost, queueTimeoutMs, failureThreshold, openMs));
+    }
+
+    /**
+     * Number of requests rejected by the guards of all hosts.
+     *
+     * @return the rejection count.
+     */
+    public static long getRejections() {
+        long sum = 0;
+        for (BackendGuard guard : GUARDS.values()) {
+            sum += guard.getRejections();
+        }
+        return sum;
+    }
+
+    /**
+     * Number of hosts whose circuit is not closed.
+     *
+     * @return the count of open and half-open circuits.
+     */
+    public static int getOpenCircuits() {
+        int open = 0;
+        for (BackendGuard guard : GUARDS.values()) {
+            if (guard.getState() != BackendGuard.State.CLOSED) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /** Whether a status code shows a working host. */
+    private static boolean isHealthy(int statusCode) {
+        return statusCode < HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /** A response with its body replaced by a permit releasing stream. */
+    private static final class StreamingResponse
+            implements HttpResponse<InputStream> {
+        private final HttpResponse<InputStream> response;
+        private final InputStream body;
+
+        StreamingResponse(HttpResponse<InputStream> original,
+                InputStream stream) {
+            this.response = original;
+            this.body = stream;
+        }
+
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return response.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return response.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return response.headers();
+        }
+
+        @Override
+        public InputStream body() {
+            return body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return response.sslSession();
+        }
+
+        @Override
+        public URI uri() {
+            return response.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return response.version();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs the outbound requests of one report concurrently.
+ *
+ * All requests share one bounded thread pool. Each call of
+ * {@link #fetchAll} runs at most a configurable number of its fetches at
+ * the same time and returns the results in the order of the fetches, so
+ * attachments end up in the report in a deterministic order. If one fetch
+ * fails, the others of the same call are cancelled and the failure is
+ * passed on. If the pool is exhausted, fetches run in the calling thread.
+ */
+public class ParallelFetcher {
+
+    /** Default number of threads shared by all requests. */
+    public static final int DEFAULT_THREADS = 16;
+
+    /** Default number of concurrent fetches per request. */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /** Maximum number of fetches waiting for a thread. */
+    private static final int QUEUE_SIZE = 256;
+
+    /** Time to wait for running fetches on shutdown. */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    /**
+     * A single outbound request.
+     *
+     * @param <T> the result type.
+     * @param <E> the checked exception type besides IOException.
+     */
+    public interface Fetch<T, E extends Exception> {
+        /**
+         * Run the request.
+         *
+         * @return the result.
+         * @throws IOException if communication failed.
+         * @throws E if the remote service returned an error.
+         */
+        T fetch() throws IOException, E;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int parallelism;
+
+    /**
+     * Create a fetcher.
+     *
+     * @param threads number of threads shared by all requests.
+     * @param perRequest maximum number of concurrent fetches of a single
+     *                   request, 1 runs all fetches one after another.
+     */
+    public ParallelFetcher(int threads, int perRequest) {
+        this("irix-fetch", threads, perRequest);
+    }
+
+    /**
+     * Create a fetcher with named threads.
+     *
+     * @param name prefix for the thread names.
+     * @param threads number of threads shared by all requests.
+     * @param perRequest maximum number of concurrent fetches of a single
+     *                   request, 1 runs all fetches one after another.
+     */
+    public ParallelFetcher(String name, int threads, int perRequest) {
+        this.executor = ThreadPools.newBoundedPool(
+            name, Math.max(1, threads), QUEUE_SIZE);
+        this.parallelism = Math.max(1, perRequest);
+    }
+
+    /**
+     * Run fetches and collect their results.
+     *
+     * @param <T> the result type.
+     * @param <E> the checked exception type besides IOException.
+     * @param fetches the fetches to run.
+     * @param failure class of the checked exception of the fetches.
+     * @return the results in the order of the fetches.
+     * @throws IOException if a fetch failed with an IOException or the
+     *                     calling thread was interrupted.
+     * @throws E if a fetch failed with this exception.
+     */
+    public <T, E extends Exception> List<T> fetchAll(
+            List<? extends Fetch<T, E>> fetches, Class<E> failure)
+            throws IOException, E {
+        int count = fetches.size();
+        List<T> results = new ArrayList<T>(count);
+        if (count < 2 || parallelism < 2) {
+            for (Fetch<T, E> fetch : fetches) {
+                results.add(fetch.fetch());
+            }
+            return results;
+        }
+
+        BlockingQueue<Task<T, E>> done = new LinkedBlockingQueue<Task<T, E>>();
+        List<Task<T, E>> tasks = new ArrayList<Task<T, E>>(count);
+        for (Fetch<T, E> fetch : fetches) {
+            tasks.add(new Task<T, E>(fetch, done));
+        }
+        int started = 0;
+        int finished = 0;
+        try {
+            while (finished < count) {
+                while (started < count && started - finished < parallelism) {
+                    start(tasks.get(started++));
+                }
+                done.take().get();
+                finished++;
+            }
+        } catch (ExecutionException e) {
+            cancel(tasks);
+            throw rethrow(e.getCause(), failure);
+        } catch (InterruptedException e) {
+            cancel(tasks);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching.");
+        }
+        for (Task<T, E> task : tasks) {
+            try {
+                results.add(task.get());
+            } catch (ExecutionException | InterruptedException e) {
+                // all tasks are done at this point
+                throw new IllegalStateException(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stop the shared threads.
+     */
+    public void shutdown() {
+        ThreadPools.shutdown(executor, SHUTDOWN_TIMEOUT_MS);
+    }
+
+    private void start(Task<?, ?> task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private static void cancel(List<? extends FutureTask<?>> tasks) {
+        for (FutureTask<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Throw the cause of a failed fetch with its original type.
+     *
+     * @param <E> the checked exception type besides IOException.
+     * @param cause the failure.
+     * @param failure class of the checked exception.
+     * @return the cause as IOException, to be thrown by the caller.
+     * @throws E if the cause is of this type.
+     */
+    static <E extends Exception> IOException rethrow(
+            Throwable cause, Class<E> failure) throws E {
+        if (failure.isInstance(cause)) {
+            throw failure.cast(cause);
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * A fetch which reports its completion to the calling request.
+     *
+     * @param <T> the result type.
+     * @param <E> the checked exception type of the fetch.
+     */
+    private static final class Task<T, E extends Exception>
+            extends FutureTask<T> {
+        private final BlockingQueue<Task<T, E>> done;
+
+        Task(Fetch<T, E> fetch, BlockingQueue<Task<T, E>> queue) {
+            super(fetch::fetch);
+            this.done = queue;
+        }
+
+        @Override
+        protected void done() {
+            done.add(this);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+
+/**
+ * Binary content of an attachment.
+ *
+ * Small payloads are held in memory, large ones in a temporary file of
+ * an {@link AttachmentStore} which is memory-mapped when read. The hash
+ * sum is computed while the payload is written, see {@link PayloadSink}.
+ */
+public final class Payload {
+
+    private final byte[] data;
+    private final Path file;
+    private final long size;
+    private final String algorithm;
+    private final byte[] digest;
+
+    /**
+     * Create a payload.
+     *
+     * @param bytes the content if held in memory, otherwise null.
+     * @param path the file holding the content if not in memory.
+     * @param length the size of the content in bytes.
+     * @param hashAlgorithm the algorithm of the hash sum.
+     * @param hash the hash sum of the content.
+     */
+    Payload(byte[] bytes, Path path, long length, String hashAlgorithm,
+            byte[] hash) {
+        this.data = bytes;
+        this.file = path;
+        this.size = length;
+        this.algorithm = hashAlgorithm;
+        this.digest = hash;
+    }
+
+    /**
+     * Create a payload held in memory, hashed with
+     * {@link Digests#DEFAULT_ALGORITHM}.
+     *
+     * @param bytes the content.
+     * @return the payload.
+     */
+    public static Payload of(byte[] bytes) {
+        return of(bytes, Digests.DEFAULT_ALGORITHM);
+    }
+
+    /**
+     * Create a payload held in memory.
+     *
+     * @param bytes the content.
+     * @param hashAlgorithm one of {@link Digests#ALGORITHMS}.
+     * @return the payload.
+     */
+    public static Payload of(byte[] bytes, String hashAlgorithm) {
+        return new Payload(bytes, null, bytes.length, hashAlgorithm,
+            Digests.digest(hashAlgorithm, bytes));
+    }
+
+    /**
+     * The size of the content.
+     *
+     * @return the number of bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * The algorithm of the hash sum.
+     *
+     * @return the name of the algorithm, e.g. "SHA-256".
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * The hash sum of the content.
+     *
+     * @return the hash sum computed with {@link #getAlgorithm()}.
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * Whether the content is held in memory.
+     *
+     * @return false if the content is kept in a temporary file.
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Read the content.
+     *
+     * @return a stream of the content.
+     * @throws IOException if the temporary file cannot be read.
+     */
+    public InputStream openStream() throws IOException {
+        if (data != null) {
+            return new ByteArrayInputStream(data);
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Files.newInputStream(file);
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            return new BufferInputStream(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Load the content into memory.
+     *
+     * @return the content.
+     * @throws IOException if the temporary file cannot be read.
+     */
+    public byte[] toByteArray() throws IOException {
+        if (data != null) {
+            return data.clone();
+        }
+        try (InputStream in = openStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Wrap the payload for JAXB and JAX-WS, which read it only while
+     * marshalling.
+     *
+     * @param mimeType the content type.
+     * @return a data handler reading the payload.
+     */
+    public DataHandler toDataHandler(String mimeType) {
+        return new DataHandler(new PayloadDataSource(this, mimeType));
+    }
+
+    /** Data source reading a payload. */
+    private static final class PayloadDataSource implements DataSource {
+        private final Payload payload;
+        private final String contentType;
+
+        PayloadDataSource(Payload content, String mimeType) {
+            this.payload = content;
+            this.contentType = mimeType;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return payload.openStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Payloads are read only.");
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getName() {
+            return "payload";
+        }
+    }
+
+    /** Input stream reading a (mapped) buffer. */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer source) {
+            this.buffer = source;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return Byte.toUnsignedInt(buffer.get());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Output stream collecting a {@link Payload}.
+ *
+ * The content is hashed while it is written. It is kept in memory until
+ * it exceeds the memory threshold of the {@link AttachmentStore} that
+ * created the sink, then it is moved to a temporary file of the store.
+ */
+public class PayloadSink extends OutputStream {
+
+    /** Scheme of data URIs, compared ignoring case. */
+    private static final String DATA_URI_PREFIX = "data:";
+
+    /**
+     * Maximum length of the part before the payload, i.e. the media type
+     * and its parameters. A comma further on is not searched for.
+     */
+    private static final int MAX_PREFIX_LENGTH = 1024;
+
+    /** Size of the chunks copied at once. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Highest character passed on unchanged to the base64 decoder. */
+    private static final char MAX_ASCII = 127;
+
+    private final AttachmentStore store;
+    private final int memoryThreshold;
+    private final MessageDigest digest;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private OutputStream out = memory;
+    private Path file;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Create a sink.
+     *
+     * @param attachments the store owning temporary files.
+     * @param threshold number of bytes kept in memory.
+     * @param hashAlgorithm the algorithm of the hash sum.
+     */
+    PayloadSink(AttachmentStore attachments, int threshold,
+            String hashAlgorithm) {
+        this.store = attachments;
+        this.memoryThreshold = threshold;
+        this.digest = Digests.acquire(hashAlgorithm);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Sink already closed.");
+        }
+        if (file == null && size + len > memoryThreshold) {
+            spill();
+        }
+        digest.update(b, off, len);
+        out.write(b, off, len);
+        size += len;
+    }
+
+    /**
+     * Copy a stream into the sink.
+     *
+     * @param in the stream, read until its end.
+     * @throws IOException if reading or writing failed.
+     */
+    public void writeFrom(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = in.read(buffer);
+        while (read >= 0) {
+            write(buffer, 0, read);
+            read = in.read(buffer);
+        }
+    }
+
+    /**
+     * Decode a base64 encoded value, optionally given as data URI, into
+     * the sink.
+     *
+     * The value is decoded chunk by chunk, without copying or splitting
+     * the encoded string.
+     *
+     * @param value the base64 encoded content, e.g.
+     *              "data:image/png;base64,iVBORw0...". It is closed when
+     *              done, also if decoding failed.
+     * @throws IOException if reading failed or the value is not valid
+     *                     base64.
+     */
+    public void writeBase64(Reader value) throws IOException {
+        try (Reader encoded = value;
+                InputStream in = Base64.getDecoder().wrap(
+                    new AsciiInputStream(skipDataUriPrefix(encoded)))) {
+            writeFrom(in);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Close the sink and get the collected payload.
+     *
+     * @return the payload.
+     * @throws IOException if the temporary file could not be written.
+     */
+    public Payload toPayload() throws IOException {
+        close();
+        String algorithm = digest.getAlgorithm();
+        byte[] hash = digest.digest();
+        Digests.release(digest);
+        if (file == null) {
+            return new Payload(memory.toByteArray(), null, size, algorithm,
+                hash);
+        }
+        return new Payload(null, file, size, algorithm, hash);
+    }
+
+    private void spill() throws IOException {
+        file = store.createTempFile();
+        out = new BufferedOutputStream(Files.newOutputStream(file),
+            BUFFER_SIZE);
+        memory.writeTo(out);
+        memory = null;
+    }
+
+    /**
+     * Skip the part of a data URI before the base64 payload.
+     *
+     * Base64 contains no comma, so everything up to the first comma is
+     * skipped, with or without "data:" scheme (e.g. "image/png;base64,").
+     * Only the first {@link #MAX_PREFIX_LENGTH} characters are searched;
+     * they are handed on unchanged if there is no comma among them.
+     *
+     * @param value the base64 value, optionally given as data URI.
+     * @return a reader positioned at the start of the payload.
+     * @throws IOException if reading failed or a data URI has no payload.
+     */
+    private static Reader skipDataUriPrefix(Reader value) throws IOException {
+        PushbackReader reader = new PushbackReader(value, MAX_PREFIX_LENGTH);
+        char[] prefix = new char[MAX_PREFIX_LENGTH];
+        int count = 0;
+        int c = reader.read();
+        while (c >= 0 && c != ',' && count < MAX_PREFIX_LENGTH - 1) {
+            prefix[count++] = (char) c;
+            c = reader.read();
+        }
+        if (c == ',') {
+            return reader;
+        }
+        if (c >= 0) {
+            prefix[count++] = (char) c;
+        }
+        if (new String(prefix, 0, count).regionMatches(true, 0,
+                DATA_URI_PREFIX, 0, DATA_URI_PREFIX.length())) {
+            throw new IOException("Data URI without payload");
+        }
+        reader.unread(prefix, 0, count);
+        return reader;
+    }
+
+    /** Reads the characters of a base64 value as ASCII bytes. */
+    private static final class AsciiInputStream extends InputStream {
+        private final Reader reader;
+        private char[] chars = new char[0];
+
+        AsciiInputStream(Reader in) {
+            this.reader = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = reader.read();
+            if (c < 0) {
+                return -1;
+            }
+            return toByte((char) c);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (chars.length < len) {
+                chars = new char[len];
+            }
+            int count = reader.read(chars, 0, len);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = toByte(chars[i]);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        /** Map non-ASCII characters to a character invalid in base64. */
+        private static byte toByte(char c) {
+            if (c > MAX_ASCII) {
+                return '*';
+            }
+            return (byte) c;
+        }
+    }
+}
@@ -7,20 +7,29 @@
  */
 
 package de.intevation.irix;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import static java.lang.System.Logger.Level.ERROR;
 
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.net.http.HttpResponse.BodyHandlers;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import java.time.Duration;
 
 /**
@@ -83,8 +92,25 @@ public class PrintClient {
      */
     public static byte[] getReport(String printUrl, String json, int timeout)
         throws IOException, PrintException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        getReport(printUrl, json, timeout, out);
+        return out.toByteArray();
+    }
 
-        HttpClient client = java.net.http.HttpClient.newHttpClient();
+    /** Obtains a Report from mapfish-print service.
+     *
+     * The report is written to the given stream while it is received.
+     *
+     * @param printUrl The url to send the request to.
+     * @param json The json spec for the print request.
+     * @param timeout the timeout for the httpconnection.
+     * @param out the stream to write the report to.
+     *
+     * @throws IOException if communication with print service failed.
+     * @throws PrintException if the print job failed.
+     */
+    public static void getReport(String printUrl, String json, int timeout,
+        OutputStream out) throws IOException, PrintException {
 
         HttpRequest request = HttpRequest.newBuilder()
             .header("Content-Type", "application/json; charset=UTF-8")
@@ -93,28 +119,27 @@ public class PrintClient {
             .timeout(Duration.ofMillis(timeout))
             .build();
 
-        int statusCode = 0;
-        byte[] retval = null;
+        HttpResponse<InputStream> response;
         try {
-            HttpResponse<byte[]> response = client.send(request, BodyHandlers.ofByteArray());
-            statusCode = response.statusCode();
-            retval = response.body();
+            response = OutboundHttp.sendStreaming(
+                OutboundHttp.getPrintClient(), request);
+        } catch (BackendUnavailableException e) {
+            throw new PrintException("Print service '" + printUrl
+                + "' unavailable: " + e.getMessage());
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new PrintException("Communication with print service '"
                                     + printUrl + "' was interrupted.");
         }
 
-        if (statusCode < HttpURLConnection.HTTP_OK
-            || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
-            if (retval != null) {
-                throw new PrintException(new String(retval));
-            } else {
-                throw new PrintException("Communication with print service '"
-                                        + printUrl + "' failed."
-                                        + "\nNo response from print service.");
+        try (InputStream body = response.body()) {
+            int statusCode = response.statusCode();
+            if (statusCode < HttpURLConnection.HTTP_OK
+                || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                throw new PrintException(new String(body.readAllBytes()));
             }
+            body.transferTo(out);
         }
-        return retval;
     }
 
     /** Obtains printLayouts from mapfish-print service.
@@ -130,8 +155,6 @@ public class PrintClient {
     public static JSONObject getLayouts(String printUrl, int timeout)
             throws IOException, PrintException {
 
-        HttpClient client = java.net.http.HttpClient.newHttpClient();
-
         HttpRequest request = HttpRequest.newBuilder()
             .GET()//for clarity, actually GET is the default
             .uri(URI.create(printUrl))
@@ -142,10 +165,15 @@ public class PrintClient {
         JSONObject retval = null;
         PrintException throwLater = null;
         try {
-            HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+            HttpResponse<String> response = OutboundHttp.send(
+                OutboundHttp.getPrintClient(), request, BodyHandlers.ofString());
             statusCode = response.statusCode();
             retval = new JSONObject(response.body());
+        } catch (BackendUnavailableException e) {
+            throw new PrintException("Print service '" + printUrl
+                + "' unavailable: " + e.getMessage());
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new PrintException("Communication with print service '"
                                      + printUrl + "' was interrupted.");
         } catch (IOException | org.json.JSONException e) {
@@ -173,4 +201,75 @@ public class PrintClient {
         }
         return retval;
     }
+
+    /** Obtains the names of the print apps from mapfish-print service.
+     *
+     * @param appsUrl The url of the apps.json of the print service.
+     * @param timeout the timeout for the httpconnection.
+     *
+     * @return List with the names of the print apps.
+     *
+     * @throws IOException if communication with print service failed.
+     * @throws PrintException if the print service returned an error.
+     */
+    public static List<String> getApps(String appsUrl, int timeout)
+            throws IOException, PrintException {
+        HttpRequest request = HttpRequest.newBuilder()
+            .GET()
+            .uri(URI.create(appsUrl))
+            .timeout(Duration.ofMillis(timeout))
+            .build();
+
+        HttpResponse<String> response;
+        try {
+            response = OutboundHttp.send(
+                OutboundHttp.getPrintClient(), request, BodyHandlers.ofString());
+        } catch (BackendUnavailableException e) {
+            throw new PrintException("Print service '" + appsUrl
+                + "' unavailable: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrintException("Communication with print service '"
+                                     + appsUrl + "' was interrupted.");
+        }
+        int statusCode = response.statusCode();
+        if (statusCode < HttpURLConnection.HTTP_OK
+            || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+            throw new PrintException("Communication with print service '"
+                    + appsUrl + "' failed with status " + statusCode);
+        }
+        List<String> apps = new ArrayList<String>();
+        try {
+            JSONArray appsArray = new JSONArray(response.body());
+            for (int i = 0; i < appsArray.length(); i++) {
+                apps.add(appsArray.getString(i));
+            }
+        } catch (org.json.JSONException e) {
+            throw new PrintException("Response from print service could not "
+                + "be parsed as list of apps: " + e.getMessage());
+        }
+        return apps;
+    }
+
+    /**
+     * Encode special characters (e.g. spaces in print app names) in an URL.
+     *
+     * @param rawUrl the URL as configured or requested.
+     * @return the encoded URL.
+     * @throws PrintException if the URL is malformed.
+     */
+    public static String encodeUrl(String rawUrl) throws PrintException {
+        try {
+            URL url = new URL(rawUrl);
+            URI uri = new URI(
+                    url.getProtocol(), url.getUserInfo(),
+                    url.getHost(), url.getPort(), url.getPath(),
+                    url.getQuery(), url.getRef()
+            );
+            return uri.toString();
+        } catch (MalformedURLException | URISyntaxException e) {
+            throw new PrintException("URL encoding for " + rawUrl
+                + " failed.");
+        }
+    }
 }
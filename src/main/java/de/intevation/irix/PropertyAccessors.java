@@ -0,0 +1,172 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed property accessors of a JAXB generated class.
+ *
+ * The public setters and list getters of the class are looked up once
+ * and kept as method handles by property name, so populating a bean from
+ * JSON is a hash lookup plus a direct call instead of a reflective method
+ * search per field and request.
+ *
+ * @param <T> the bean class.
+ */
+public final class PropertyAccessors<T> {
+
+    private static final MethodType SETTER_TYPE =
+        MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType GETTER_TYPE =
+        MethodType.methodType(Object.class, Object.class);
+
+    private final Class<T> beanClass;
+    private final Map<String, Setter> setters = new HashMap<String, Setter>();
+    private final Map<String, MethodHandle> listGetters =
+        new HashMap<String, MethodHandle>();
+
+    private PropertyAccessors(Class<T> type) {
+        this.beanClass = type;
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            String name = method.getName();
+            try {
+                if (name.startsWith("set")
+                        && method.getParameterCount() == 1) {
+                    Class<?> valueType = MethodType.methodType(
+                        method.getParameterTypes()[0]).wrap().returnType();
+                    setters.put(name.substring("set".length()),
+                        new Setter(valueType,
+                            lookup.unreflect(method).asType(SETTER_TYPE)));
+                } else if (name.startsWith("get")
+                        && method.getParameterCount() == 0
+                        && List.class.isAssignableFrom(
+                            method.getReturnType())) {
+                    listGetters.put(name.substring("get".length()),
+                        lookup.unreflect(method).asType(GETTER_TYPE));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access " + name
+                    + " of " + type.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Build the accessors of a class.
+     *
+     * @param <T> the bean class.
+     * @param type the bean class.
+     * @return the accessors.
+     */
+    public static <T> PropertyAccessors<T> of(Class<T> type) {
+        return new PropertyAccessors<T>(type);
+    }
+
+    /**
+     * Whether the class has a setter for a property.
+     *
+     * @param property the property name, e.g. "Purpose".
+     * @return true if there is a setter.
+     */
+    public boolean hasSetter(String property) {
+        return setters.containsKey(property);
+    }
+
+    /**
+     * Whether the class has a getter returning a live list for a property.
+     *
+     * @param property the property name, e.g. "Subject".
+     * @return true if there is a list getter.
+     */
+    public boolean hasList(String property) {
+        return listGetters.containsKey(property);
+    }
+
+    /**
+     * Set a property.
+     *
+     * @param bean the object to modify.
+     * @param property the property name.
+     * @param value the value, an instance of the setter's parameter type.
+     * @throws IllegalArgumentException if there is no setter for the
+     *                                  property accepting the value.
+     */
+    public void set(T bean, String property, Object value) {
+        Setter setter = setters.get(property);
+        if (setter == null || !setter.valueType.isInstance(value)) {
+            throw new IllegalArgumentException("No setter set" + property
+                + " for " + typeName(value) + " on " + beanClass.getName());
+        }
+        try {
+            setter.handle.invokeExact((Object) bean, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Get the live list of a property.
+     *
+     * @param bean the object.
+     * @param property the property name.
+     * @return the list backing the property, changes are reflected in
+     * the bean.
+     * @throws IllegalArgumentException if there is no list getter for the
+     *                                  property.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> getList(T bean, String property) {
+        MethodHandle getter = listGetters.get(property);
+        if (getter == null) {
+            throw new IllegalArgumentException("No list getter get"
+                + property + " on " + beanClass.getName());
+        }
+        Object list;
+        try {
+            list = getter.invokeExact((Object) bean);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return (List<Object>) list;
+    }
+
+    private static String typeName(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        return value.getClass().getName();
+    }
+
+    /** Setter handle and the (boxed) type it accepts. */
+    private static final class Setter {
+        private final Class<?> valueType;
+        private final MethodHandle handle;
+
+        Setter(Class<?> type, MethodHandle setterHandle) {
+            this.valueType = type;
+            this.handle = setterHandle;
+        }
+    }
+}
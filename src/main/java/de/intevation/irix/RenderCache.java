@@ -0,0 +1,527 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Cache for the documents rendered by mapfish-print.
+ *
+ * Documents are keyed by a SHA-256 hash of the canonical print spec, the
+ * output format and the print URL, so the same map printed for several
+ * reports is rendered once. The least recently used documents are
+ * evicted when the entries exceed the memory limit. If a directory is
+ * configured, evicted documents and documents larger than the memory
+ * limit are kept there up to a second limit. Every entry expires after
+ * its time to live and all entries of a print app are dropped when its
+ * capabilities change, see {@link #invalidate(String)}.
+ */
+public class RenderCache {
+    private static System.Logger log = System.getLogger(RenderCache.class.getName());
+
+    /** Default number of bytes kept in memory. */
+    public static final int DEFAULT_MAX_BYTES = 67108864;
+
+    /** Default number of bytes kept on disk. */
+    public static final int DEFAULT_MAX_DISK_BYTES = 1073741824;
+
+    /** Default time to live of an entry in seconds. */
+    public static final int DEFAULT_TTL = 300;
+
+    /** Suffix of the files of the disk tier. */
+    private static final String FILE_SUFFIX = ".render";
+
+    private static final String KEY_ALGORITHM = "SHA-256";
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final long maxBytes;
+    private final Path dir;
+    private final long maxDiskBytes;
+
+    /** Entries in memory and on disk, in access order. */
+    private final LinkedHashMap<String, Entry> memory =
+        new LinkedHashMap<String, Entry>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private final LinkedHashMap<String, Entry> disk =
+        new LinkedHashMap<String, Entry>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    /**
+     * Number of invalidations so far. Entries written to disk outside the
+     * lock are only added if no invalidation happened meanwhile.
+     */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Create a cache.
+     *
+     * Without a directory, documents larger than the memory limit are
+     * not cached. Files left in the directory by an earlier instance are
+     * deleted.
+     *
+     * @param memoryLimit number of bytes kept in memory.
+     * @param diskDir directory of the disk tier, null for none.
+     * @param diskLimit number of bytes kept in the directory.
+     * @throws IOException if the directory cannot be created.
+     */
+    public RenderCache(long memoryLimit, Path diskDir, long diskLimit)
+            throws IOException {
+        this.maxBytes = memoryLimit;
+        this.dir = diskDir;
+        this.maxDiskBytes = diskLimit;
+        if (dir != null) {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> stale =
+                    Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+                for (Path file : stale) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the key of a rendered document.
+     *
+     * Print specs that differ only in the order of their attributes or
+     * in white space have the same key.
+     *
+     * @param json the print spec.
+     * @param format the output format, e.g. "pdf".
+     * @param printUrl the buildreport URL without format.
+     * @return the hex encoded SHA-256 hash.
+     */
+    public static String key(String json, String format, String printUrl) {
+        StringBuilder canonical = new StringBuilder();
+        canonicalize(new JSONObject(json), canonical);
+        canonical.append('\n').append(format).append('\n').append(printUrl);
+        return Digests.hex(Digests.digest(KEY_ALGORITHM,
+            canonical.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Compute a hash of a JSON object independent of the order of its
+     * attributes.
+     *
+     * @param json the object.
+     * @return the hex encoded SHA-256 hash.
+     */
+    public static String fingerprint(JSONObject json) {
+        StringBuilder canonical = new StringBuilder();
+        canonicalize(json, canonical);
+        return Digests.hex(Digests.digest(KEY_ALGORITHM,
+            canonical.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void canonicalize(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            out.append('{');
+            String separator = "";
+            for (String name : new TreeSet<String>(object.keySet())) {
+                out.append(separator).append(JSONObject.quote(name))
+                    .append(':');
+                canonicalize(object.get(name), out);
+                separator = ",";
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                canonicalize(array.get(i), out);
+            }
+            out.append(']');
+        } else if (value instanceof Number) {
+            out.append(JSONObject.numberToString((Number) value));
+        } else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Look up a rendered document.
+     *
+     * @param key the key, see {@link #key(String, String, String)}.
+     * @return the document, null if it is not cached or expired.
+     * @throws IOException if the file of the disk tier cannot be read.
+     */
+    public InputStream get(String key) throws IOException {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = memory.get(key);
+            if (entry == null) {
+                entry = disk.get(key);
+            }
+            if (entry != null && entry.expires <= now) {
+                remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.data != null) {
+            hits.incrementAndGet();
+            return new ByteArrayInputStream(entry.data);
+        }
+        try {
+            InputStream in = Files.newInputStream(entry.file);
+            hits.incrementAndGet();
+            return in;
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * The current generation of the cache, i.e. the number of
+     * invalidations so far.
+     *
+     * Read it before rendering a document and pass it to
+     * {@link #put(String, Payload, long, String, long)}, so a document
+     * rendered while the capabilities changed is not cached.
+     *
+     * @return the generation.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Add a rendered document.
+     *
+     * @param key the key, see {@link #key(String, String, String)}.
+     * @param content the document.
+     * @param ttlSeconds time to live of the entry in seconds.
+     * @param capabilitiesUrl URL of the capabilities.json of the print
+     *                        app, used to invalidate the entry.
+     * @param rendered the {@link #generation()} read before the document
+     *                 was rendered. The document is dropped if the cache
+     *                 was invalidated since.
+     * @throws IOException if the document cannot be read or written to
+     *                     the disk tier.
+     */
+    public void put(String key, Payload content, long ttlSeconds,
+            String capabilitiesUrl, long rendered) throws IOException {
+        if (ttlSeconds <= 0) {
+            return;
+        }
+        long expires = System.currentTimeMillis()
+            + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        synchronized (this) {
+            if (generation != rendered) {
+                // invalidated while the document was rendered
+                return;
+            }
+        }
+        Entry entry;
+        if (content.size() <= maxBytes) {
+            entry = new Entry(key, content.toByteArray(), null,
+                content.size(), expires, capabilitiesUrl);
+        } else if (dir != null && content.size() <= maxDiskBytes) {
+            Path file = write(key, content.openStream());
+            entry = new Entry(key, null, file, content.size(), expires,
+                capabilitiesUrl);
+        } else {
+            return;
+        }
+        List<Entry> demoted;
+        long evicted;
+        synchronized (this) {
+            if (generation != rendered) {
+                // invalidated while the document was rendered or written
+                if (entry.file != null) {
+                    delete(entry.file);
+                }
+                return;
+            }
+            remove(key);
+            if (entry.data != null) {
+                memory.put(key, entry);
+                memoryBytes += entry.size;
+            } else {
+                disk.put(key, entry);
+                diskBytes += entry.size;
+            }
+            demoted = evictMemory();
+            evictDisk();
+            evicted = generation;
+        }
+        demote(demoted, evicted);
+    }
+
+    /**
+     * Drop all documents rendered by a print app.
+     *
+     * @param capabilitiesUrl URL of the capabilities.json of the print app.
+     */
+    public void invalidate(String capabilitiesUrl) {
+        int dropped = 0;
+        synchronized (this) {
+            generation++;
+            List<String> keys = new ArrayList<String>();
+            for (Entry entry : memory.values()) {
+                if (entry.capabilitiesUrl.equals(capabilitiesUrl)) {
+                    keys.add(entry.key);
+                }
+            }
+            for (Entry entry : disk.values()) {
+                if (entry.capabilitiesUrl.equals(capabilitiesUrl)) {
+                    keys.add(entry.key);
+                }
+            }
+            for (String key : keys) {
+                remove(key);
+            }
+            dropped = keys.size();
+        }
+        invalidations.addAndGet(dropped);
+        log.log(DEBUG, "Dropped " + dropped + " documents of "
+            + capabilitiesUrl);
+    }
+
+    /**
+     * Drop all entries and delete the files of the disk tier.
+     */
+    public synchronized void shutdown() {
+        for (String key : new ArrayList<String>(disk.keySet())) {
+            remove(key);
+        }
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * Number of documents served from the cache.
+     *
+     * @return the hit count.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups of documents that were not cached.
+     *
+     * @return the miss count.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of documents evicted to stay within the limits.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Number of documents dropped because the capabilities changed.
+     *
+     * @return the invalidation count.
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Size of the documents held in memory.
+     *
+     * @return the number of bytes.
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Size of the documents held on disk.
+     *
+     * @return the number of bytes.
+     */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /** Remove an entry, the caller holds the lock. */
+    private void remove(String key) {
+        Entry entry = memory.remove(key);
+        if (entry != null) {
+            memoryBytes -= entry.size;
+        }
+        entry = disk.remove(key);
+        if (entry != null) {
+            diskBytes -= entry.size;
+            delete(entry.file);
+        }
+    }
+
+    /**
+     * Evict the least recently used entries from memory, the caller holds
+     * the lock.
+     *
+     * @return the evicted entries that go to the disk tier.
+     */
+    private List<Entry> evictMemory() {
+        List<Entry> demoted = new ArrayList<Entry>();
+        Iterator<Entry> lru = memory.values().iterator();
+        while (memoryBytes > maxBytes && lru.hasNext()) {
+            Entry entry = lru.next();
+            lru.remove();
+            memoryBytes -= entry.size;
+            if (dir != null && entry.size <= maxDiskBytes) {
+                demoted.add(entry);
+            } else {
+                evictions.incrementAndGet();
+            }
+        }
+        return demoted;
+    }
+
+    /** Evict the least recently used files, the caller holds the lock. */
+    private void evictDisk() {
+        Iterator<Entry> lru = disk.values().iterator();
+        while (diskBytes > maxDiskBytes && lru.hasNext()) {
+            Entry entry = lru.next();
+            lru.remove();
+            diskBytes -= entry.size;
+            delete(entry.file);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Move entries evicted from memory to the disk tier.
+     *
+     * @param entries the evicted entries.
+     * @param evicted the generation when they were evicted.
+     */
+    private void demote(List<Entry> entries, long evicted) {
+        for (Entry entry : entries) {
+            Entry onDisk;
+            try {
+                onDisk = new Entry(entry.key, null, write(entry.key,
+                    new ByteArrayInputStream(entry.data)), entry.size,
+                    entry.expires, entry.capabilitiesUrl);
+            } catch (IOException e) {
+                log.log(WARNING, "Cannot write rendered document to "
+                    + dir + ": " + e.getMessage());
+                evictions.incrementAndGet();
+                continue;
+            }
+            synchronized (this) {
+                if (generation != evicted) {
+                    // possibly stale after an invalidation meanwhile
+                    delete(onDisk.file);
+                    invalidations.incrementAndGet();
+                    continue;
+                }
+                if (memory.containsKey(entry.key)
+                        || disk.containsKey(entry.key)) {
+                    // added again meanwhile
+                    delete(onDisk.file);
+                    continue;
+                }
+                disk.put(entry.key, onDisk);
+                diskBytes += onDisk.size;
+                evictDisk();
+            }
+        }
+    }
+
+    /**
+     * Write a document to a new file of the disk tier.
+     *
+     * Every version of an entry gets its own file, so replacing or
+     * removing an entry does not affect readers of the old version. Called
+     * without holding the lock of the cache.
+     *
+     * @param key the key of the entry.
+     * @param content the document, closed afterwards.
+     * @return the file.
+     * @throws IOException if the file cannot be written.
+     */
+    protected Path write(String key, InputStream content) throws IOException {
+        Path file = Files.createTempFile(dir, key, FILE_SUFFIX);
+        try (InputStream in = content) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            delete(file);
+            throw e;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.log(WARNING, "Cannot delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    /** A rendered document in memory or on disk. */
+    private static final class Entry {
+        private final String key;
+        private final byte[] data;
+        private final Path file;
+        private final long size;
+        private final long expires;
+        private final String capabilitiesUrl;
+
+        Entry(String cacheKey, byte[] content, Path path, long length,
+                long expiresAt, String capaUrl) {
+            this.key = cacheKey;
+            this.data = content;
+            this.file = path;
+            this.size = length;
+            this.expires = expiresAt;
+            this.capabilitiesUrl = capaUrl;
+        }
+    }
+}
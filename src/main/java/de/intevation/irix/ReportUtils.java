@@ -11,8 +11,6 @@ package de.intevation.irix;
 import java.io.File;
 import java.io.OutputStream;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import java.util.GregorianCalendar;
 import java.util.Calendar;
@@ -25,7 +23,6 @@ import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.XMLGregorianCalendar;
 
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.Marshaller;
@@ -34,9 +31,6 @@ import jakarta.xml.bind.DatatypeConverter;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.stream.StreamSource;
 
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.XMLConstants;
 
 import org.json.JSONArray;
 import org.xml.sax.SAXException;
@@ -350,25 +344,41 @@ public final class ReportUtils {
         String mimeType,
         String fileName
     ) {
-        // Hashsum, algo should probably be configurable.
+        attachFile(title, Payload.of(data), report, mimeType, fileName);
+    }
+
+    /**
+     * Attach a file as Annex on a ReportType object.
+     *
+     * The content is read from the payload only when the report is
+     * marshalled, so the payload has to be available until then.
+     *
+     * @param title The title of the FileEnclosure.
+     * @param content Binary content of the file and its hash sum.
+     * @param report Report to attach the file to.
+     * @param mimeType The mime type of that file.
+     * @param fileName The filename to set.
+     */
+    public static void attachFile(
+        String title,
+        Payload content,
+        ReportType report,
+        String mimeType,
+        String fileName
+    ) {
+        // Hashsum, computed with the configured algorithm while storing.
         FileHashType hash = new FileHashType();
-        try {
-            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-            byte[] sha1sum = sha1.digest(data);
-            hash.setValue(sha1sum);
-            hash.setAlgorithm("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-1 unavailable. Can't happen.");
-        }
+        hash.setValue(content.getDigest());
+        hash.setAlgorithm(content.getAlgorithm());
 
         // Add the actual file
         FileEnclosureType file = new FileEnclosureType();
         file.setTitle(title);
         file.setMimeType(mimeType);
-        file.setFileSize(data.length);
+        file.setFileSize((int) content.size());
         file.setFileHash(hash);
         file.setFileName(fileName);
-        file.setEnclosedObject(data);
+        file.setEnclosedObject(content.toDataHandler(mimeType));
         report.getAnnexes().getFileEnclosure().add(file);
     }
 
@@ -379,27 +389,45 @@ public final class ReportUtils {
      * @param out The output stream.
      * @param irixSchema The schema to validate against. Or null.
      * @throws jakarta.xml.bind.JAXBException if an error was
-     * encountered while creating the JAXBContext
+     * encountered while creating the JAXBContext or (un)marshalling
      * @throws org.xml.sax.SAXException in case of errors during
      * parsing of the schema.
      */
     public static void marshallReport(ReportType report, OutputStream out,
         File irixSchema)
         throws JAXBException, SAXException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(
+        marshallReport(report, out, irixSchema, true);
+    }
+
+    /**
+     * Validate and Marshall a report object for an output stream.
+     *
+     * @param report The report to marshall.
+     * @param out The output stream.
+     * @param irixSchema The schema to validate against. Or null.
+     * @param formatted Whether the XML is indented. Compact output
+     * considerably reduces the size of reports with many elements.
+     * @throws jakarta.xml.bind.JAXBException if an error was
+     * encountered while creating the JAXBContext or (un)marshalling
+     * @throws org.xml.sax.SAXException in case of errors during
+     * parsing of the schema.
+     */
+    public static void marshallReport(ReportType report, OutputStream out,
+        File irixSchema, boolean formatted)
+        throws JAXBException, SAXException {
+        Marshaller jaxbMarshaller = JAXBEngine.acquireMarshaller(
                 ReportType.class);
-        Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        jaxbMarshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        if (!formatted) {
+            jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT,
+                false);
+        }
 
         if (irixSchema != null) {
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(
-                    XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(irixSchema);
-            jaxbMarshaller.setSchema(schema);
+            jaxbMarshaller.setSchema(SchemaRegistry.getSchema(irixSchema));
         }
 
         jaxbMarshaller.marshal(new ObjectFactory().createReport(report), out);
+        JAXBEngine.releaseMarshaller(ReportType.class, jaxbMarshaller);
     }
 
     /**
@@ -409,7 +437,7 @@ public final class ReportUtils {
      * @param irixSchema The schema to validate against. Or null.
      * @return report object returned
      * @throws jakarta.xml.bind.JAXBException if an error was
-     * encountered while creating the JAXBContext
+     * encountered while creating the JAXBContext or (un)marshalling
      * @throws org.xml.sax.SAXException in case of errors during
      * parsing of the schema.
      */
@@ -417,21 +445,18 @@ public final class ReportUtils {
             XMLStreamReader in,
             File irixSchema
     ) throws JAXBException, SAXException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(
+        Unmarshaller jaxbUnmarshaller = JAXBEngine.acquireUnmarshaller(
                 ReportType.class);
-        Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
 
         if (irixSchema != null) {
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(
-                    XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(irixSchema);
-            jaxbUnmarshaller.setSchema(schema);
+            jaxbUnmarshaller.setSchema(SchemaRegistry.getSchema(irixSchema));
         }
 
         JAXBElement<ReportType> report = jaxbUnmarshaller.unmarshal(
                 in,
                 ReportType.class
         );
+        JAXBEngine.releaseUnmarshaller(ReportType.class, jaxbUnmarshaller);
         return report.getValue();
 
     }
@@ -443,27 +468,24 @@ public final class ReportUtils {
      * @param irixSchema The schema to validate against. Or null.
      * @return report object returned
      * @throws jakarta.xml.bind.JAXBException if an error was
-     * encountered while creating the JAXBContext
+     * encountered while creating the JAXBContext or (un)marshalling
      * @throws org.xml.sax.SAXException in case of errors during
      * parsing of the schema.
      */
     public static ReportType unmarshallReport(File file, File irixSchema)
             throws JAXBException, SAXException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(
+        Unmarshaller jaxbUnmarshaller = JAXBEngine.acquireUnmarshaller(
                 ReportType.class);
-        Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
 
         if (irixSchema != null) {
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(
-                    XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(irixSchema);
-            jaxbUnmarshaller.setSchema(schema);
+            jaxbUnmarshaller.setSchema(SchemaRegistry.getSchema(irixSchema));
         }
 
         JAXBElement<ReportType> report = jaxbUnmarshaller.unmarshal(
                 new StreamSource(file),
                 ReportType.class
         );
+        JAXBEngine.releaseUnmarshaller(ReportType.class, jaxbUnmarshaller);
         return report.getValue();
     }
 };
@@ -0,0 +1,196 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.json.JSONObject;
+
+/**
+ * Immutable state of a single report request.
+ *
+ * The context is created on the container thread from the incoming
+ * request and passed through the whole processing pipeline instead of the
+ * request itself, so nothing request specific is kept in fields of the
+ * shared servlet instance. It stays valid after the container recycled the
+ * request, e.g. for background jobs and the items of a batch, which may be
+ * processed on other threads.
+ */
+public final class RequestContext {
+
+    private final String id;
+    private final Instant started;
+    private final long startNanos;
+    private final Map<String, List<String>> headers;
+    private final Map<String, Object> user;
+    private final String printBaseUrl;
+    private final AttachmentStore store;
+
+    private RequestContext(String requestId, Instant startTime,
+            long startTimeNanos, Map<String, List<String>> requestHeaders,
+            Map<String, Object> userInfo, String baseUrl,
+            AttachmentStore attachmentStore) {
+        this.id = requestId;
+        this.started = startTime;
+        this.startNanos = startTimeNanos;
+        this.headers = requestHeaders;
+        this.user = userInfo;
+        this.printBaseUrl = baseUrl;
+        this.store = attachmentStore;
+    }
+
+    /**
+     * Create the context of a request.
+     *
+     * @param request the request to copy the headers from.
+     * @param userJsonObject the user information parsed from the headers.
+     * @param defaultPrintUrl the base URL of Mapfish Print used if the
+     *                        request does not name one.
+     * @param attachmentStore the store for the attachments, may be null
+     *                        if it is set later.
+     * @return the context.
+     */
+    public static RequestContext of(HttpServletRequest request,
+            JSONObject userJsonObject, String defaultPrintUrl,
+            AttachmentStore attachmentStore) {
+        Map<String, List<String>> copy =
+            new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        Enumeration<String> names = request.getHeaderNames();
+        while (names != null && names.hasMoreElements()) {
+            String name = names.nextElement();
+            copy.put(name, List.copyOf(
+                Collections.list(request.getHeaders(name))));
+        }
+        return new RequestContext(UUID.randomUUID().toString(),
+            Instant.now(), System.nanoTime(),
+            Collections.unmodifiableMap(copy),
+            Collections.unmodifiableMap(userJsonObject.toMap()),
+            defaultPrintUrl, attachmentStore);
+    }
+
+    /**
+     * A copy of this context with another attachment store.
+     *
+     * @param attachmentStore the store.
+     * @return the new context.
+     */
+    public RequestContext withStore(AttachmentStore attachmentStore) {
+        return new RequestContext(id, started, startNanos, headers, user,
+            printBaseUrl, attachmentStore);
+    }
+
+    /**
+     * A copy of this context with another base URL of Mapfish Print.
+     *
+     * @param baseUrl the base URL, e.g. from the request.
+     * @return the new context.
+     */
+    public RequestContext withPrintBaseUrl(String baseUrl) {
+        return new RequestContext(id, started, startNanos, headers, user,
+            baseUrl, store);
+    }
+
+    /**
+     * The id of the request, used in log messages.
+     *
+     * @return a random unique id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * The time the request was received.
+     *
+     * @return the time.
+     */
+    public Instant getStarted() {
+        return started;
+    }
+
+    /**
+     * The time since the request was received.
+     *
+     * @return the elapsed time in milliseconds.
+     */
+    public long getElapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * The first value of a request header.
+     *
+     * @param name the case-insensitive header name.
+     * @return the value or null if the header was not sent.
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+
+    /**
+     * All values of a request header.
+     *
+     * @param name the case-insensitive header name.
+     * @return the values, empty if the header was not sent.
+     */
+    public List<String> getHeaders(String name) {
+        return headers.getOrDefault(name, List.of());
+    }
+
+    /**
+     * The names of the request headers.
+     *
+     * @return the header names.
+     */
+    public Set<String> getHeaderNames() {
+        return headers.keySet();
+    }
+
+    /**
+     * The user information parsed from the request headers.
+     *
+     * @return a new copy of the user information, see
+     * {@link IRIXClient#parseHeader}.
+     */
+    public JSONObject getUser() {
+        return new JSONObject(user);
+    }
+
+    /**
+     * The base URL of Mapfish Print for the request.
+     *
+     * @return the base URL.
+     */
+    public String getPrintBaseUrl() {
+        return printBaseUrl;
+    }
+
+    /**
+     * The store for the attachments of the request.
+     *
+     * @return the store.
+     */
+    public AttachmentStore getStore() {
+        return store;
+    }
+}
@@ -0,0 +1,158 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * Cache of compiled XSD schemas.
+ *
+ * Compiling IRIX.xsd or Dokpool-3.xsd (including all imported schemas)
+ * is expensive, while a compiled {@link javax.xml.validation.Schema}
+ * is immutable and thread-safe. Each schema file is therefore compiled
+ * once and only recompiled if one of the *.xsd files in its directory
+ * changed on disk, as the schemas import each other by relative path.
+ */
+public final class SchemaRegistry {
+    private static System.Logger log = System.getLogger(SchemaRegistry.class.getName());
+
+    /** Minimum time between two checks of the schema files on disk. */
+    private static final long CHECK_INTERVAL_MS = 1000;
+
+    private static final Map<File, Entry> SCHEMAS =
+        new ConcurrentHashMap<File, Entry>();
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong COMPILES = new AtomicLong();
+    private static final AtomicLong COMPILE_NANOS = new AtomicLong();
+
+    private SchemaRegistry() {
+        // hidden constructor to avoid instantiation.
+    }
+
+    /**
+     * Get the compiled schema for a schema file.
+     *
+     * @param schemaFile the XSD file.
+     * @return the compiled schema.
+     * @throws SAXException in case of errors during parsing of the schema.
+     */
+    public static Schema getSchema(File schemaFile) throws SAXException {
+        File key = schemaFile.getAbsoluteFile();
+        Entry entry = SCHEMAS.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null) {
+            if (now - entry.checked < CHECK_INTERVAL_MS) {
+                HITS.incrementAndGet();
+                return entry.schema;
+            }
+            if (entry.stamp == stamp(key)) {
+                entry.checked = now;
+                HITS.incrementAndGet();
+                return entry.schema;
+            }
+        }
+        synchronized (SCHEMAS) {
+            entry = SCHEMAS.get(key);
+            long stamp = stamp(key);
+            if (entry != null && entry.stamp == stamp) {
+                entry.checked = now;
+                HITS.incrementAndGet();
+                return entry.schema;
+            }
+            long start = System.nanoTime();
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(
+                XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            Schema schema = schemaFactory.newSchema(key);
+            long duration = System.nanoTime() - start;
+            COMPILES.incrementAndGet();
+            COMPILE_NANOS.addAndGet(duration);
+            if (entry != null) {
+                log.log(INFO, "Schema " + key + " changed on disk, recompiled in "
+                    + TimeUnit.NANOSECONDS.toMillis(duration) + " ms");
+            }
+            SCHEMAS.put(key, new Entry(schema, stamp, now));
+            return schema;
+        }
+    }
+
+    /**
+     * Drop all compiled schemas.
+     */
+    public static void clear() {
+        SCHEMAS.clear();
+    }
+
+    /**
+     * Number of requests served from the cache.
+     *
+     * @return the hit count.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Number of schema compilations.
+     *
+     * @return the compile count.
+     */
+    public static long getCompiles() {
+        return COMPILES.get();
+    }
+
+    /**
+     * Total time spent compiling schemas.
+     *
+     * @return the compile time in milliseconds.
+     */
+    public static long getCompileTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(COMPILE_NANOS.get());
+    }
+
+    /**
+     * Newest modification time of the schema file and its siblings.
+     */
+    private static long stamp(File schemaFile) {
+        long stamp = schemaFile.lastModified();
+        File[] siblings = schemaFile.getParentFile().listFiles(
+            (dir, name) -> name.endsWith(".xsd"));
+        if (siblings != null) {
+            for (File f : siblings) {
+                stamp = Math.max(stamp, f.lastModified());
+            }
+        }
+        return stamp;
+    }
+
+    /** A compiled schema and the state of the files it was compiled from. */
+    private static final class Entry {
+        private final Schema schema;
+        private final long stamp;
+        private volatile long checked;
+
+        Entry(Schema compiled, long fileStamp, long checkTime) {
+            this.schema = compiled;
+            this.stamp = fileStamp;
+            this.checked = checkTime;
+        }
+    }
+}
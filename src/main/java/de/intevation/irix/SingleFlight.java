@@ -0,0 +1,277 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical outbound requests that are in flight at the same
+ * time.
+ *
+ * The first caller of a key runs the request, callers arriving before it
+ * has finished wait for its result instead of sending the same request
+ * again. A failure is thrown to all of them, except one caused by
+ * interrupting the first caller: that belongs to its own request being
+ * cancelled, so a waiting caller sends the request again instead. Once
+ * the request has finished, the next caller of the key sends a new one,
+ * so results are never served after the fact; caching is left to the
+ * caches.
+ */
+public class SingleFlight {
+
+    /** Algorithm of the hash of request bodies in keys. */
+    private static final String BODY_ALGORITHM = "SHA-256";
+
+    /** Result of a flight whose first caller was interrupted. */
+    private static final Object ABANDONED = new Object();
+
+    private final ConcurrentHashMap<String, Flight> flights =
+        new ConcurrentHashMap<String, Flight>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Compute the key of a request.
+     *
+     * @param method the HTTP method.
+     * @param url the URL.
+     * @param body the request body, null for none.
+     * @return the key.
+     */
+    public static String key(String method, String url, String body) {
+        if (body == null) {
+            return method + " " + url;
+        }
+        return method + " " + url + " " + Digests.hex(Digests.digest(
+            BODY_ALGORITHM, body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Run a request unless the same one is in flight, then wait for its
+     * result.
+     *
+     * The result is handed to all waiting callers and must not be
+     * modified by them.
+     *
+     * @param <T> the result type.
+     * @param <E> the checked exception type besides IOException.
+     * @param key the key, see {@link #key(String, String, String)}.
+     * @param fetch the request.
+     * @param failure class of the checked exception of the request.
+     * @return the result.
+     * @throws IOException if the request failed with an IOException or
+     *                     the calling thread was interrupted.
+     * @throws E if the request failed with this exception.
+     */
+    public <T, E extends Exception> T execute(String key,
+            ParallelFetcher.Fetch<T, E> fetch, Class<E> failure)
+            throws IOException, E {
+        while (true) {
+            Flight mine = new Flight();
+            Flight flight = join(key, mine);
+            if (flight != mine) {
+                Object result;
+                try {
+                    result = await(flight, failure);
+                } finally {
+                    flight.release();
+                }
+                if (result != ABANDONED) {
+                    @SuppressWarnings("unchecked")
+                    T typed = (T) result;
+                    return typed;
+                }
+                continue;
+            }
+            try {
+                T result = fetch.fetch();
+                finish(key, flight, result, null);
+                return result;
+            } catch (Throwable t) {
+                finish(key, flight, null, t);
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * Store the result of a request unless the same one is in flight,
+     * then copy its result.
+     *
+     * The payload of the first caller belongs to its store, which is
+     * closed at the end of its request. The callers waiting for it copy
+     * the payload to their own stores, and the first caller returns only
+     * after they are done.
+     *
+     * @param <E> the checked exception type besides IOException.
+     * @param key the key, see {@link #key(String, String, String)}.
+     * @param store the store of the calling request.
+     * @param writer writes the result of the request.
+     * @param failure class of the checked exception of the request.
+     * @return the result, stored in the given store.
+     * @throws IOException if the request failed with an IOException, the
+     *                     result could not be copied or the calling
+     *                     thread was interrupted.
+     * @throws E if the request failed with this exception.
+     */
+    public <E extends Exception> Payload store(String key,
+            AttachmentStore store, AttachmentStore.Writer<E> writer,
+            Class<E> failure) throws IOException, E {
+        while (true) {
+            Flight mine = new Flight();
+            Flight flight = join(key, mine);
+            if (flight != mine) {
+                try {
+                    Object result = await(flight, failure);
+                    if (result != ABANDONED) {
+                        return store.store(out -> {
+                            try (InputStream in =
+                                    ((Payload) result).openStream()) {
+                                in.transferTo(out);
+                            }
+                        });
+                    }
+                } finally {
+                    flight.release();
+                }
+                continue;
+            }
+            Payload result;
+            try {
+                result = store.store(writer);
+            } catch (Throwable t) {
+                finish(key, flight, null, t);
+                throw t;
+            }
+            finish(key, flight, result, null);
+            flight.awaitReleased();
+            return result;
+        }
+    }
+
+    /**
+     * Number of requests sent.
+     *
+     * @return the count of callers that ran their request.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Number of callers that got the result of a request in flight.
+     *
+     * @return the count of requests saved.
+     */
+    public long getShared() {
+        return shared.get();
+    }
+
+    /**
+     * Number of requests currently in flight.
+     *
+     * @return the number of keys.
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * Join the flight of a key or start the given one.
+     *
+     * Joining happens under the lock of the map entry, so the leader
+     * knows all callers that joined before it removed the flight.
+     */
+    private Flight join(String key, Flight mine) {
+        Flight flight = flights.compute(key, (k, current) -> {
+            if (current == null) {
+                return mine;
+            }
+            current.join();
+            return current;
+        });
+        if (flight == mine) {
+            sent.incrementAndGet();
+        } else {
+            shared.incrementAndGet();
+        }
+        return flight;
+    }
+
+    /**
+     * Remove the flight and hand its outcome to the waiting callers.
+     *
+     * A failure of an interrupted caller is not handed on, the waiting
+     * callers retry and one of them sends the request again.
+     */
+    private void finish(String key, Flight flight, Object result,
+            Throwable failure) {
+        flights.remove(key, flight);
+        if (failure == null) {
+            flight.result.complete(result);
+        } else if (Thread.currentThread().isInterrupted()) {
+            flight.result.complete(ABANDONED);
+        } else {
+            flight.result.completeExceptionally(failure);
+        }
+    }
+
+    private static <E extends Exception> Object await(Flight flight,
+            Class<E> failure) throws IOException, E {
+        try {
+            return flight.result.get();
+        } catch (ExecutionException e) {
+            throw ParallelFetcher.rethrow(e.getCause(), failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while waiting for a request in flight.");
+        }
+    }
+
+    /** A request in flight and the callers waiting for it. */
+    private static final class Flight {
+        private final CompletableFuture<Object> result =
+            new CompletableFuture<Object>();
+        private int followers;
+
+        synchronized void join() {
+            followers++;
+        }
+
+        synchronized void release() {
+            followers--;
+            if (followers == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait until all followers have used the result. If interrupted,
+         * return early with the interrupt status set.
+         */
+        synchronized void awaitReleased() {
+            try {
+                while (followers > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
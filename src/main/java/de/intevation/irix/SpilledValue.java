@@ -0,0 +1,82 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * A JSON string value of a request kept in a temporary file.
+ *
+ * Large embedded documents are not held on the heap while the request
+ * is processed but read from the file when they are decoded. The file
+ * belongs to the {@link JsonRequestReader} that created it and is
+ * deleted when that is closed.
+ */
+public final class SpilledValue implements JSONString {
+    private final Path file;
+    private final long length;
+
+    /**
+     * Create a spilled value.
+     *
+     * @param path the file holding the value as UTF-8 text.
+     * @param chars the number of characters of the value.
+     */
+    SpilledValue(Path path, long chars) {
+        this.file = path;
+        this.length = chars;
+    }
+
+    /**
+     * The number of characters of the value.
+     *
+     * @return the length.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Read the value.
+     *
+     * @return a reader of the value, to be closed by the caller.
+     * @throws IOException if the file cannot be read.
+     */
+    public Reader openReader() throws IOException {
+        return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Load the complete value into memory.
+     *
+     * @return the value.
+     */
+    @Override
+    public String toString() {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toJSONString() {
+        return JSONObject.quote(toString());
+    }
+}
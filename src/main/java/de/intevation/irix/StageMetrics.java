@@ -0,0 +1,463 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Latency histograms and error counters of the processing stages.
+ *
+ * Every combination of stage, print app and backend host has its own
+ * histogram with fixed logarithmic buckets (1-2-5 steps from 100
+ * microseconds to 100 seconds). Recording only increments
+ * {@link LongAdder}s, so concurrent requests never wait for each other.
+ * Percentiles are estimated from the buckets.
+ *
+ * The histograms are exposed in the Prometheus text format (see
+ * {@link #writePrometheus}) and as the MXBean
+ * {@code de.intevation.irix:type=StageMetrics}. Values kept elsewhere,
+ * e.g. the hit counts of caches, can be added to the Prometheus output
+ * with {@link #addCounter} and {@link #addGauge}.
+ */
+public class StageMetrics implements StageMetricsMXBean {
+    private static System.Logger log = System.getLogger(StageMetrics.class.getName());
+
+    /** Parsing the JSON request. */
+    public static final String PARSE = "parse";
+    /** Creating the report from the request. */
+    public static final String PREPARE = "prepare";
+    /** Adding the Dokpool annotation. */
+    public static final String ANNOTATE = "annotate";
+    /** Looking up the layouts of a print app. */
+    public static final String CAPABILITIES = "capabilities";
+    /** Rendering with Mapfish Print, followed by the output format. */
+    public static final String PRINT = "print_";
+    /** Downloading an external image. */
+    public static final String IMAGE = "image";
+    /** Writing the report to the response. */
+    public static final String MARSHAL = "marshal";
+    /** Uploading the report to the irix-webservice. */
+    public static final String UPLOAD = "upload";
+    /** Processing a whole request. */
+    public static final String REQUEST = "request";
+
+    /** Maximum number of label combinations before they are merged. */
+    public static final int MAX_SERIES = 1000;
+
+    /** Label value of merged or unknown apps and hosts. */
+    public static final String OTHER = "other";
+
+    /** Upper bounds of the buckets in microseconds. */
+    private static final long[] BOUNDS_US = {
+        100, 200, 500,
+        1000, 2000, 5000,
+        10000, 20000, 50000,
+        100000, 200000, 500000,
+        1000000, 2000000, 5000000,
+        10000000, 20000000, 50000000,
+        100000000
+    };
+
+    private static final double MICROS_PER_SECOND = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double MICROS_PER_MILLI = 1e3;
+    private static final double P50 = 0.5;
+    private static final double P95 = 0.95;
+    private static final double P99 = 0.99;
+
+    private static final String NAME = "irix_stage_duration_seconds";
+    private static final String ERRORS = "irix_stage_errors_total";
+
+    private final Map<Key, Histogram> histograms =
+        new ConcurrentHashMap<Key, Histogram>();
+
+    /** Counters and gauges kept elsewhere, in the order added. */
+    private final List<Series> series = new CopyOnWriteArrayList<Series>();
+
+    private ObjectName objectName;
+
+    /** A running measurement, recorded when it is closed. */
+    public final class Sample implements AutoCloseable {
+        private final String stage;
+        private final String app;
+        private final String host;
+        private final long start = System.nanoTime();
+        private boolean succeeded;
+
+        private Sample(String stageName, String printApp, String backend) {
+            this.stage = stageName;
+            this.app = printApp;
+            this.host = backend;
+        }
+
+        /** Mark the stage as successful, otherwise it counts as error. */
+        public void success() {
+            succeeded = true;
+        }
+
+        /** Record the duration since the sample was started. */
+        @Override
+        public void close() {
+            record(stage, app, host, System.nanoTime() - start, !succeeded);
+        }
+    }
+
+    /**
+     * Start measuring a stage.
+     *
+     * Use in a try-with-resources statement and call
+     * {@link Sample#success()} at the end of the block.
+     *
+     * @param stage the stage.
+     * @param app the print app or null.
+     * @param host the backend host or null.
+     * @return the running sample.
+     */
+    public Sample start(String stage, String app, String host) {
+        return new Sample(stage, app, host);
+    }
+
+    /**
+     * Record the duration of a stage.
+     *
+     * @param stage the stage.
+     * @param app the print app or null.
+     * @param host the backend host or null.
+     * @param nanos the duration in nanoseconds.
+     * @param failed whether the stage failed.
+     */
+    public void record(String stage, String app, String host, long nanos,
+            boolean failed) {
+        Key key = new Key(stage, label(app), label(host));
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            if (histograms.size() >= MAX_SERIES) {
+                key = new Key(stage, OTHER, OTHER);
+            }
+            histogram = histograms.computeIfAbsent(key, k -> new Histogram());
+        }
+        histogram.record(nanos, failed);
+    }
+
+    /**
+     * The host and port of a URL as label of the backend.
+     *
+     * @param url the URL.
+     * @return the host, with the port if it is given.
+     */
+    public static String host(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() == null) {
+                return OTHER;
+            }
+            if (uri.getPort() < 0) {
+                return uri.getHost();
+            }
+            return uri.getHost() + ":" + uri.getPort();
+        } catch (IllegalArgumentException e) {
+            return OTHER;
+        }
+    }
+
+    private static String label(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value;
+    }
+
+    /**
+     * Write all histograms in the Prometheus text exposition format.
+     *
+     * @param out the writer.
+     * @throws IOException if writing failed.
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        Map<Key, Histogram> sorted = new TreeMap<Key, Histogram>(histograms);
+        out.write("# HELP " + NAME
+            + " Duration of the processing stages.\n");
+        out.write("# TYPE " + NAME + " histogram\n");
+        for (Map.Entry<Key, Histogram> entry : sorted.entrySet()) {
+            String labels = entry.getKey().labels();
+            Histogram histogram = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS_US.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                out.write(NAME + "_bucket{" + labels + ",le=\""
+                    + BOUNDS_US[i] / MICROS_PER_SECOND + "\"} " + cumulative
+                    + "\n");
+            }
+            // derived from the buckets to stay consistent while recording
+            long count = cumulative
+                + histogram.buckets[BOUNDS_US.length].sum();
+            out.write(NAME + "_bucket{" + labels + ",le=\"+Inf\"} " + count
+                + "\n");
+            out.write(NAME + "_sum{" + labels + "} "
+                + histogram.nanos.sum() / NANOS_PER_SECOND + "\n");
+            out.write(NAME + "_count{" + labels + "} " + count + "\n");
+        }
+        out.write("# HELP " + ERRORS + " Failed processing stages.\n");
+        out.write("# TYPE " + ERRORS + " counter\n");
+        for (Map.Entry<Key, Histogram> entry : sorted.entrySet()) {
+            out.write(ERRORS + "{" + entry.getKey().labels() + "} "
+                + entry.getValue().errors.sum() + "\n");
+        }
+        for (Series value : series) {
+            out.write("# HELP " + value.name + " " + value.help + "\n");
+            out.write("# TYPE " + value.name + " " + value.type + "\n");
+            out.write(value.name + " " + value.value.getAsDouble() + "\n");
+        }
+    }
+
+    /**
+     * Add a counter kept elsewhere to the Prometheus output.
+     *
+     * @param name the metric name, ending with {@code _total}.
+     * @param help the description.
+     * @param value supplies the current value.
+     */
+    public void addCounter(String name, String help, DoubleSupplier value) {
+        series.add(new Series(name, "counter", help, value));
+    }
+
+    /**
+     * Add a gauge kept elsewhere to the Prometheus output.
+     *
+     * @param name the metric name.
+     * @param help the description.
+     * @param value supplies the current value.
+     */
+    public void addGauge(String name, String help, DoubleSupplier value) {
+        series.add(new Series(name, "gauge", help, value));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<StageStatistics> getStatistics() {
+        List<StageStatistics> result = new ArrayList<StageStatistics>();
+        for (Map.Entry<Key, Histogram> entry
+                : new TreeMap<Key, Histogram>(histograms).entrySet()) {
+            Key key = entry.getKey();
+            Histogram histogram = entry.getValue();
+            long count = histogram.count.sum();
+            double mean = 0;
+            if (count > 0) {
+                mean = histogram.nanos.sum() / NANOS_PER_MILLI / count;
+            }
+            result.add(new StageStatistics(key.stage, key.app, key.host,
+                count, histogram.errors.sum(), new double[] {
+                    mean,
+                    histogram.percentile(P50),
+                    histogram.percentile(P95),
+                    histogram.percentile(P99),
+                    histogram.max.get() / NANOS_PER_MILLI
+                }));
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * Register the MXBean at the platform MBean server.
+     *
+     * @param name distinguishes several deployments in one JVM, e.g. the
+     *             context path.
+     */
+    public void register(String name) {
+        try {
+            ObjectName object = new ObjectName(
+                "de.intevation.irix:type=StageMetrics,name="
+                + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(object)) {
+                server.unregisterMBean(object);
+            }
+            server.registerMBean(this, object);
+            objectName = object;
+        } catch (JMException e) {
+            log.log(WARNING, "Could not register stage metrics MXBean: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * Unregister the MXBean.
+     */
+    public void shutdown() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.log(DEBUG, "Could not unregister stage metrics MXBean: "
+                + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    /** A counter or gauge kept elsewhere. */
+    private static final class Series {
+        private final String name;
+        private final String type;
+        private final String help;
+        private final DoubleSupplier value;
+
+        Series(String metric, String metricType, String description,
+                DoubleSupplier supplier) {
+            this.name = metric;
+            this.type = metricType;
+            this.help = description;
+            this.value = supplier;
+        }
+    }
+
+    /** Labels of a histogram. */
+    private static final class Key implements Comparable<Key> {
+        private final String stage;
+        private final String app;
+        private final String host;
+
+        Key(String stageName, String printApp, String backend) {
+            this.stage = stageName;
+            this.app = printApp;
+            this.host = backend;
+        }
+
+        String labels() {
+            return "stage=\"" + escape(stage) + "\",app=\"" + escape(app)
+                + "\",host=\"" + escape(host) + "\"";
+        }
+
+        private static String escape(String value) {
+            return value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int cmp = stage.compareTo(other.stage);
+            if (cmp == 0) {
+                cmp = app.compareTo(other.app);
+            }
+            if (cmp == 0) {
+                cmp = host.compareTo(other.host);
+            }
+            return cmp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return stage.equals(other.stage) && app.equals(other.app)
+                && host.equals(other.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stage, app, host);
+        }
+    }
+
+    /** Lock-free histogram of durations. */
+    private static final class Histogram {
+        private final LongAdder[] buckets =
+            new LongAdder[BOUNDS_US.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAccumulator max =
+            new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long duration, boolean failed) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(duration);
+            int i = 0;
+            while (i < BOUNDS_US.length && micros > BOUNDS_US[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            nanos.add(duration);
+            max.accumulate(duration);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        /** Estimate a percentile in milliseconds. */
+        double percentile(double quantile) {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            double rank = quantile * total;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0 && seen + counts[i] >= rank) {
+                    double lower = 0;
+                    if (i > 0) {
+                        lower = BOUNDS_US[i - 1];
+                    }
+                    if (i == BOUNDS_US.length) {
+                        return max.get() / NANOS_PER_MILLI;
+                    }
+                    // linear interpolation within the bucket
+                    double fraction = (rank - seen) / counts[i];
+                    double micros = lower + (BOUNDS_US[i] - lower) * fraction;
+                    return micros / MICROS_PER_MILLI;
+                }
+                seen += counts[i];
+            }
+            return max.get() / NANOS_PER_MILLI;
+        }
+    }
+}
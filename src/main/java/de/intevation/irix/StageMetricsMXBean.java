@@ -0,0 +1,29 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link StageMetrics}.
+ */
+public interface StageMetricsMXBean {
+
+    /**
+     * The statistics of all stages.
+     *
+     * @return one entry per stage, print app and backend host.
+     */
+    List<StageStatistics> getStatistics();
+
+    /**
+     * Drop all recorded durations.
+     */
+    void reset();
+}
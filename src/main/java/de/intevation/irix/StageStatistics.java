@@ -0,0 +1,104 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+/**
+ * Snapshot of the durations of one stage, print app and backend host.
+ *
+ * Durations are in milliseconds, percentiles are estimated from the
+ * histogram buckets.
+ */
+public class StageStatistics {
+    private final String stage;
+    private final String app;
+    private final String host;
+    private final long count;
+    private final long errors;
+    private final double meanMs;
+    private final double p50Ms;
+    private final double p95Ms;
+    private final double p99Ms;
+    private final double maxMs;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param stageName the stage.
+     * @param printApp the print app, empty if not applicable.
+     * @param backend the backend host, empty if not applicable.
+     * @param samples number of recorded durations.
+     * @param failures number of failed stages.
+     * @param durations mean, median, 95th and 99th percentile and maximum
+     *                  in milliseconds.
+     */
+    StageStatistics(String stageName, String printApp, String backend,
+            long samples, long failures, double[] durations) {
+        this.stage = stageName;
+        this.app = printApp;
+        this.host = backend;
+        this.count = samples;
+        this.errors = failures;
+        int i = 0;
+        this.meanMs = durations[i++];
+        this.p50Ms = durations[i++];
+        this.p95Ms = durations[i++];
+        this.p99Ms = durations[i++];
+        this.maxMs = durations[i];
+    }
+
+    /** @return the stage. */
+    public String getStage() {
+        return stage;
+    }
+
+    /** @return the print app, empty if not applicable. */
+    public String getApp() {
+        return app;
+    }
+
+    /** @return the backend host, empty if not applicable. */
+    public String getHost() {
+        return host;
+    }
+
+    /** @return the number of recorded durations. */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return the number of failed stages. */
+    public long getErrors() {
+        return errors;
+    }
+
+    /** @return the mean duration. */
+    public double getMeanMs() {
+        return meanMs;
+    }
+
+    /** @return the estimated median duration. */
+    public double getP50Ms() {
+        return p50Ms;
+    }
+
+    /** @return the estimated 95th percentile of the durations. */
+    public double getP95Ms() {
+        return p95Ms;
+    }
+
+    /** @return the estimated 99th percentile of the durations. */
+    public double getP99Ms() {
+        return p99Ms;
+    }
+
+    /** @return the maximum duration. */
+    public double getMaxMs() {
+        return maxMs;
+    }
+}
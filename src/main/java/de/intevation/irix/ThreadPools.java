@@ -0,0 +1,94 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Factory methods for the thread pools used by the IRIXClient.
+ *
+ * All threads are daemon threads with a descriptive name, so they
+ * show up recognizable in thread dumps and never keep the servlet
+ * container from shutting down.
+ */
+public final class ThreadPools {
+    private static System.Logger log = System.getLogger(ThreadPools.class.getName());
+
+    /** Time idle threads are kept alive. */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private ThreadPools() {
+        // hidden constructor to avoid instantiation.
+    }
+
+    /**
+     * Create a thread pool with a fixed maximum number of threads.
+     *
+     * @param name prefix for the thread names.
+     * @param threads maximum number of threads.
+     * @param queueSize maximum number of waiting tasks, tasks beyond
+     * this limit are rejected. Use Integer.MAX_VALUE for no limit.
+     * @return the executor.
+     */
+    public static ThreadPoolExecutor newBoundedPool(String name, int threads,
+            int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(queueSize),
+            newThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Create a factory for named daemon threads.
+     *
+     * @param name prefix for the thread names.
+     * @return the thread factory.
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable,
+                name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Shut down an executor and wait for running tasks to finish.
+     *
+     * @param executor the executor, may be null.
+     * @param timeoutMs maximum time to wait in milliseconds.
+     */
+    public static void shutdown(ExecutorService executor, long timeoutMs) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                log.log(WARNING, "Tasks still running after "
+                    + timeoutMs + " ms, interrupting them.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Durable queue of marshalled reports waiting for the upload to the
+ * irix-webservice.
+ *
+ * Every report is written once to its own file in {@code pending/}: first
+ * to a temporary file that is synced to disk, then atomically renamed, so
+ * a crash leaves either a complete entry or none. Files are never
+ * modified afterwards. They are deleted after a successful upload or moved
+ * to {@code dead/} once the webservice rejected them or all attempts
+ * failed. File names start with the enqueue time, so pending reports are
+ * replayed in their original order after a restart.
+ *
+ * A fixed number of sender threads uploads the reports. Failed uploads
+ * are retried with exponential backoff and jitter.
+ */
+public class UploadOutbox {
+    private static System.Logger log = System.getLogger(UploadOutbox.class.getName());
+
+    /** Default number of concurrent uploads. */
+    public static final int DEFAULT_PARALLELISM = 2;
+
+    /** Default number of attempts before a report is dead-lettered. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    /** Default delay before the first retry in milliseconds. */
+    public static final int DEFAULT_BACKOFF_MS = 5000;
+
+    /** Default maximum delay between retries in milliseconds. */
+    public static final int DEFAULT_MAX_BACKOFF_MS = 600000;
+
+    private static final String SUFFIX = ".xml";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Uploads a queued report. */
+    public interface Uploader {
+        /**
+         * Upload a report.
+         *
+         * @param report the file containing the marshalled report.
+         * @throws RejectedException if the report must not be retried.
+         * @throws Exception if the upload failed and may be retried.
+         */
+        void upload(Path report) throws Exception;
+    }
+
+    /** The webservice permanently rejected a report. */
+    public static class RejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Create the exception.
+         *
+         * @param message the reason.
+         * @param cause the original exception.
+         */
+        public RejectedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final Path pendingDir;
+    private final Path deadDir;
+    private final Uploader uploader;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final ScheduledThreadPoolExecutor sender;
+    private final Map<Path, Entry> entries =
+        new ConcurrentHashMap<Path, Entry>();
+
+    private volatile boolean closed;
+
+    /**
+     * Create an outbox. Call {@link #start()} to replay pending reports.
+     *
+     * @param directory the directory containing pending/ and dead/.
+     * @param reportUploader the upload of a single report.
+     * @param parallelism maximum number of concurrent uploads.
+     * @param attempts number of attempts before giving up on a report.
+     * @param initialBackoffMs delay before the first retry.
+     * @param maximumBackoffMs maximum delay between retries.
+     */
+    public UploadOutbox(Path directory, Uploader reportUploader,
+            int parallelism, int attempts, long initialBackoffMs,
+            long maximumBackoffMs) {
+        this.pendingDir = directory.resolve("pending");
+        this.deadDir = directory.resolve("dead");
+        this.uploader = reportUploader;
+        this.maxAttempts = attempts;
+        this.backoffMs = initialBackoffMs;
+        this.maxBackoffMs = maximumBackoffMs;
+        this.sender = new ScheduledThreadPoolExecutor(parallelism,
+            ThreadPools.newThreadFactory("irix-outbox"));
+        sender.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        sender.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Create the directories and schedule the reports left pending by a
+     * previous run.
+     *
+     * @return the number of replayed reports.
+     * @throws IOException if the directories are not accessible.
+     */
+    public int start() throws IOException {
+        Files.createDirectories(pendingDir);
+        Files.createDirectories(deadDir);
+        List<Path> pending = new ArrayList<Path>();
+        try (DirectoryStream<Path> files =
+                Files.newDirectoryStream(pendingDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    // interrupted while enqueueing, never acknowledged
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    pending.add(file);
+                }
+            }
+        }
+        Collections.sort(pending);
+        for (Path file : pending) {
+            schedule(new Entry(file), 0);
+        }
+        if (!pending.isEmpty()) {
+            log.log(INFO, "Replaying " + pending.size()
+                + " pending report uploads.");
+        }
+        return pending.size();
+    }
+
+    /**
+     * Durably queue a report for upload.
+     *
+     * When this method returns, the report is synced to disk and will be
+     * uploaded even if the application is restarted in between.
+     *
+     * @param <E> the checked exception of the writer.
+     * @param writer writes the marshalled report.
+     * @throws IOException if the report could not be written.
+     * @throws E if the writer failed.
+     */
+    public <E extends Exception> void enqueue(AttachmentStore.Writer<E> writer)
+            throws IOException, E {
+        String name = System.currentTimeMillis() + "-" + UUID.randomUUID();
+        Path tmp = pendingDir.resolve(name + TMP_SUFFIX);
+        Path file = pendingDir.resolve(name + SUFFIX);
+        boolean written = false;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            writer.writeTo(fos);
+            fos.flush();
+            fos.getChannel().force(true);
+            written = true;
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        if (closed) {
+            // kept on disk and replayed on the next start
+            log.log(WARNING, "Outbox closed, report " + name
+                + " will be uploaded after a restart.");
+            return;
+        }
+        schedule(new Entry(file), 0);
+    }
+
+    /**
+     * The number of reports waiting for upload.
+     *
+     * @return the number of pending reports.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stop the outbox, trying every pending report once more.
+     *
+     * Retries waiting for their backoff are started immediately. Reports
+     * that still cannot be uploaded within the timeout stay on disk and
+     * are replayed on the next start.
+     *
+     * @param timeoutMs maximum time to wait for the uploads.
+     */
+    public void shutdown(long timeoutMs) {
+        closed = true;
+        for (Entry entry : entries.values()) {
+            ScheduledFuture<?> future = entry.future;
+            if (future != null && future.getDelay(TimeUnit.MILLISECONDS) > 0
+                    && future.cancel(false)) {
+                entry.future = sender.schedule(() -> attempt(entry), 0,
+                    TimeUnit.MILLISECONDS);
+            }
+        }
+        ThreadPools.shutdown(sender, timeoutMs);
+        if (!entries.isEmpty()) {
+            log.log(WARNING, entries.size()
+                + " report uploads left pending in " + pendingDir);
+        }
+    }
+
+    private void schedule(Entry entry, long delayMs) {
+        entries.put(entry.file, entry);
+        entry.future = sender.schedule(() -> attempt(entry), delayMs,
+            TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(Entry entry) {
+        entry.attempts++;
+        try {
+            uploader.upload(entry.file);
+            Files.deleteIfExists(entry.file);
+            entries.remove(entry.file);
+            log.log(DEBUG, "Uploaded queued report " + entry.file);
+        } catch (RejectedException e) {
+            deadLetter(entry, e);
+        } catch (Exception e) {
+            if (entry.attempts >= maxAttempts) {
+                deadLetter(entry, e);
+            } else if (closed) {
+                log.log(WARNING, "Upload of " + entry.file + " failed: "
+                    + e.getMessage());
+            } else {
+                long delay = backoff(entry.attempts);
+                log.log(WARNING, "Upload of " + entry.file + " failed ("
+                    + e.getMessage() + "), retrying in " + delay + " ms.");
+                schedule(entry, delay);
+            }
+        }
+    }
+
+    /** Exponential backoff with equal jitter. */
+    private long backoff(int attempts) {
+        long delay = maxBackoffMs;
+        if (attempts - 1 < Long.SIZE - 1
+                && backoffMs <= maxBackoffMs >> (attempts - 1)) {
+            delay = backoffMs << (attempts - 1);
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private void deadLetter(Entry entry, Exception reason) {
+        entries.remove(entry.file);
+        Path target = deadDir.resolve(entry.file.getFileName());
+        log.log(ERROR, "Giving up upload of " + entry.file + " after "
+            + entry.attempts + " attempts, moving it to " + deadDir + ": "
+            + reason.getMessage());
+        try {
+            Files.move(entry.file, target,
+                StandardCopyOption.REPLACE_EXISTING);
+            try (OutputStream out = Files.newOutputStream(
+                    deadDir.resolve(entry.file.getFileName() + ".error"))) {
+                out.write(String.valueOf(reason)
+                    .getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            log.log(ERROR, "Could not move " + entry.file + " to "
+                + deadDir + ": " + e.getMessage());
+        }
+    }
+
+    /** A queued report and its upload state. */
+    private static final class Entry {
+        private final Path file;
+        private int attempts;
+        private volatile ScheduledFuture<?> future;
+
+        Entry(Path report) {
+            this.file = report;
+        }
+    }
+}
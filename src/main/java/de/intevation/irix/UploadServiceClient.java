@@ -0,0 +1,414 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.servlet.ServletException;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.soap.MTOMFeature;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+import de.intevation.irixservice.UploadReportInterface;
+import de.intevation.irixservice.UploadReportService;
+
+/**
+ * Client side of the IRIX webservice upload.
+ *
+ * The WSDL of the webservice is fetched once and then refreshed in the
+ * background after a configurable time to live. If it cannot be fetched,
+ * the WSDL bundled with the application is used. Configured
+ * UploadReportInterface proxies are kept in a bounded pool and reused
+ * across requests; a proxy is used by only one request at a time. The
+ * pool size also bounds the proxies in use, further requests wait for
+ * one to be given back.
+ *
+ * Reports are optionally sent with MTOM, so attachments are transferred
+ * as binary parts instead of base64 encoded text, and the request is
+ * streamed in chunks instead of being buffered completely.
+ */
+public class UploadServiceClient {
+    private static System.Logger log = System.getLogger(UploadServiceClient.class.getName());
+
+    /** Default time to live of the fetched WSDL in seconds. */
+    public static final int DEFAULT_WSDL_TTL = 3600;
+
+    /** Default number of proxies. */
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /** Default time to wait for a free proxy in milliseconds. */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 10000;
+
+    /** Default size above which attachments are sent as MTOM parts. */
+    public static final int DEFAULT_MTOM_THRESHOLD = 1024;
+
+    /** Default chunk size for streaming uploads with MTOM in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /** JAX-WS RI property enabling chunked streaming of requests. */
+    private static final String CHUNK_SIZE_PROPERTY =
+        "com.sun.xml.ws.transport.http.client.streaming.chunk.size";
+
+    /** Timeout for downloading the WSDL in milliseconds. */
+    private static final int WSDL_TIMEOUT = 5000;
+
+    /** Time to wait for a running refresh on shutdown. */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private final URL serviceUrl;
+    private final String authType;
+    private final String authCred;
+    private final Path wsdlFile;
+    private final URL bundledWsdl;
+    private final long wsdlTtl;
+    private final BlockingQueue<PooledPort> idlePorts;
+    private final Semaphore permits;
+
+    private boolean mtom;
+    private int mtomThreshold = DEFAULT_MTOM_THRESHOLD;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private long acquireTimeoutMs = DEFAULT_ACQUIRE_TIMEOUT_MS;
+
+    private ScheduledExecutorService refresher;
+
+    /** The current service, replaced if the WSDL changes. */
+    private volatile ServiceGeneration current;
+
+    /**
+     * Create a client for the IRIX webservice.
+     *
+     * @param url URL of the upload service, the WSDL is fetched from
+     *            this URL with "?wsdl" appended.
+     * @param type authentication type, see IRIXClient.AUTH_TYPE_*.
+     * @param cred authentication credentials, may be null for "none".
+     * @param wsdlCopy location of the local copy of the fetched WSDL.
+     * @param fallbackWsdl WSDL to use if fetching fails, may be null.
+     * @param ttlSeconds time after which the WSDL is fetched again,
+     *                   0 disables the refresh.
+     * @param poolSize maximum number of proxies, in use or idle.
+     */
+    public UploadServiceClient(URL url, String type, String cred,
+            Path wsdlCopy, URL fallbackWsdl, long ttlSeconds, int poolSize) {
+        this.serviceUrl = url;
+        this.authType = type;
+        this.authCred = cred;
+        this.wsdlFile = wsdlCopy;
+        this.bundledWsdl = fallbackWsdl;
+        this.wsdlTtl = ttlSeconds;
+        this.idlePorts = new ArrayBlockingQueue<PooledPort>(
+            Math.max(1, poolSize));
+        this.permits = new Semaphore(Math.max(1, poolSize));
+    }
+
+    /**
+     * Configure how reports are transferred to the webservice.
+     *
+     * Has to be called before {@link #start}.
+     *
+     * @param useMtom send attachments as binary MTOM/XOP parts instead
+     *                of inlining them base64 encoded. The webservice has
+     *                to support MTOM.
+     * @param threshold attachments smaller than this number of bytes are
+     *                  inlined even with MTOM.
+     * @param chunk size of the chunks the request is streamed in with
+     *              MTOM, or 0 to buffer the whole request before sending
+     *              it. Without MTOM requests are always buffered.
+     */
+    public void configureTransfer(boolean useMtom, int threshold, int chunk) {
+        this.mtom = useMtom;
+        this.mtomThreshold = threshold;
+        this.chunkSize = chunk;
+    }
+
+    /**
+     * Configure how long {@link #acquire} waits for a free proxy.
+     *
+     * @param millis milliseconds to wait, a negative value waits without
+     *               limit.
+     */
+    public void setAcquireTimeout(long millis) {
+        this.acquireTimeoutMs = millis;
+    }
+
+    /**
+     * Resolve the WSDL in the background and schedule its refresh.
+     */
+    public synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(
+            ThreadPools.newThreadFactory("irix-wsdl"));
+        refresher.execute(this::refreshQuietly);
+        if (wsdlTtl > 0) {
+            refresher.scheduleWithFixedDelay(this::refreshQuietly,
+                wsdlTtl, wsdlTtl, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop the background refresh and drop all pooled proxies.
+     */
+    public void shutdown() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = refresher;
+            refresher = null;
+        }
+        ThreadPools.shutdown(executor, SHUTDOWN_TIMEOUT_MS);
+        idlePorts.clear();
+    }
+
+    /**
+     * Borrow a configured proxy of the upload service.
+     *
+     * The proxy has to be given back with {@link #release} after use, or
+     * with {@link #discard} if it failed.
+     *
+     * @return a proxy exclusively owned by the caller.
+     * @throws ServletException if no WSDL is available, no proxy became
+     *                          free in time or the caller was interrupted.
+     */
+    public PooledPort acquire() throws ServletException {
+        boolean acquired;
+        try {
+            if (acquireTimeoutMs < 0) {
+                permits.acquire();
+                acquired = true;
+            } else {
+                acquired = permits.tryAcquire(acquireTimeoutMs,
+                    TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(
+                "Interrupted while waiting for a webservice proxy.", e);
+        }
+        if (!acquired) {
+            throw new ServletException("No webservice proxy free within "
+                + acquireTimeoutMs + " ms.");
+        }
+        try {
+            ServiceGeneration generation = getGeneration();
+            PooledPort port = idlePorts.poll();
+            while (port != null) {
+                if (port.generation == generation) {
+                    port.returned.set(false);
+                    return port;
+                }
+                port = idlePorts.poll();
+            }
+            return new PooledPort(generation, createPort(generation));
+        } catch (ServletException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give a proxy back after it was used.
+     *
+     * Proxies of an outdated WSDL are dropped.
+     *
+     * @param port the proxy, null is ignored.
+     */
+    public void release(PooledPort port) {
+        if (port == null || port.returned.getAndSet(true)) {
+            return;
+        }
+        if (port.generation == current) {
+            idlePorts.offer(port);
+        }
+        permits.release();
+    }
+
+    /**
+     * Give a proxy back that must not be reused, e.g. after a transport
+     * error left it in an unknown state.
+     *
+     * @param port the proxy, null is ignored.
+     */
+    public void discard(PooledPort port) {
+        if (port == null || port.returned.getAndSet(true)) {
+            return;
+        }
+        permits.release();
+    }
+
+    /**
+     * Fetch the WSDL again and replace the service if it changed.
+     *
+     * @throws ServletException if neither the fetched nor the bundled
+     * WSDL is available.
+     */
+    public synchronized void refresh() throws ServletException {
+        byte[] wsdl = null;
+        try {
+            wsdl = fetchWSDL();
+        } catch (IOException e) {
+            log.log(WARNING, "Could not fetch WSDL from " + serviceUrl
+                + ": " + e.getMessage());
+        }
+        ServiceGeneration old = current;
+        if (wsdl == null) {
+            if (old != null) {
+                // keep using what we have
+                return;
+            }
+            if (bundledWsdl == null) {
+                throw new ServletException("WSDL could not be downloaded.");
+            }
+            log.log(WARNING, "Using bundled WSDL " + bundledWsdl);
+            current = new ServiceGeneration(
+                new UploadReportService(bundledWsdl), null, true);
+            return;
+        }
+        if (old != null && Arrays.equals(old.wsdl, wsdl)) {
+            log.log(DEBUG, "WSDL unchanged.");
+            return;
+        }
+        try {
+            Path part = Files.createTempFile(
+                wsdlFile.toAbsolutePath().getParent(), "upload-report", ".part");
+            Files.write(part, wsdl);
+            Files.move(part, wsdlFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            current = new ServiceGeneration(
+                new UploadReportService(wsdlFile.toUri().toURL()), wsdl, false);
+        } catch (IOException e) {
+            throw new ServletException("WSDL could not be stored.", e);
+        }
+        idlePorts.clear();
+        log.log(INFO, "Loaded WSDL of " + serviceUrl);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (ServletException | RuntimeException e) {
+            log.log(WARNING, "WSDL refresh failed: " + e.getMessage());
+        }
+    }
+
+    private ServiceGeneration getGeneration() throws ServletException {
+        ServiceGeneration generation = current;
+        if (generation == null) {
+            refresh();
+            generation = current;
+        }
+        return generation;
+    }
+
+    private byte[] fetchWSDL() throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .GET()
+            .uri(URI.create(serviceUrl.toString() + "?wsdl"))
+            .timeout(Duration.ofMillis(WSDL_TIMEOUT));
+        if (IRIXClient.AUTH_TYPE_BASIC.equals(authType)) {
+            builder.header("Authorization", "Basic " + authCred);
+        }
+        HttpResponse<byte[]> response;
+        try {
+            response = OutboundHttp.send(OutboundHttp.getClient(),
+                builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching WSDL.");
+        }
+        int statusCode = response.statusCode();
+        if (statusCode < HttpURLConnection.HTTP_OK
+            || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+            throw new IOException("HTTP status " + statusCode);
+        }
+        return response.body();
+    }
+
+    private UploadReportInterface createPort(ServiceGeneration generation) {
+        UploadReportInterface port = generation.service.getUploadReportPort(
+            new MTOMFeature(mtom, mtomThreshold));
+        Map<String, Object> reqCon =
+            ((BindingProvider) port).getRequestContext();
+        // chunked requests are only worth it for binary attachments, and
+        // not every webservice accepts them
+        if (mtom && chunkSize > 0) {
+            reqCon.put(CHUNK_SIZE_PROPERTY, chunkSize);
+        }
+        if (generation.bundled
+                || IRIXClient.AUTH_TYPE_BASIC.equals(authType)) {
+            //TODO: This line seems to override the endpoint (e.g. host, port) found in the wsdl file.
+            //This is usually good, because bad proxy configurations cannot break the
+            //communication, but it also obstructs intentional changes to urls via wsdl file.
+            reqCon.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
+                serviceUrl.toString());
+        }
+        if (IRIXClient.AUTH_TYPE_BASIC.equals(authType)) {
+            reqCon.put(MessageContext.HTTP_REQUEST_HEADERS, Map.of(
+                "Authorization", List.of("Basic " + authCred)));
+        }
+        return port;
+    }
+
+    /** A proxy of the upload service and the WSDL it was created from. */
+    public static final class PooledPort {
+        private final ServiceGeneration generation;
+        private final UploadReportInterface port;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        PooledPort(ServiceGeneration gen, UploadReportInterface proxy) {
+            this.generation = gen;
+            this.port = proxy;
+        }
+
+        /**
+         * The upload service proxy.
+         *
+         * @return the proxy.
+         */
+        public UploadReportInterface getPort() {
+            return port;
+        }
+    }
+
+    /** A service instance created from one version of the WSDL. */
+    private static final class ServiceGeneration {
+        private final UploadReportService service;
+        private final byte[] wsdl;
+        private final boolean bundled;
+
+        ServiceGeneration(UploadReportService svc, byte[] content,
+                boolean fromBundle) {
+            this.service = svc;
+            this.wsdl = content;
+            this.bundled = fromBundle;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.xml.bind.JAXBException;
+
+import org.iaea._2012.irix.format.ReportType;
+import org.iaea._2012.irix.format.annexes.AnnexesType;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Adding the Dokpool annotation for each of the extensions.
+ *
+ * The request of each extension is derived from
+ * examples/dokpool-all-noattachs-test_respond.json by removing the
+ * metadata of the other extensions.
+ *
+ * Run with {@code mvn -Pperf test-compile exec:exec -Djmh.args=Annotation}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationBenchmark {
+
+    /** Request with DOKSYS, ELAN, RODOS and REI metadata. */
+    private static final String FIXTURE =
+        "examples/dokpool-all-noattachs-test_respond.json";
+
+    private static final List<String> EXTENSIONS =
+        List.of("DOKSYS", "ELAN", "RODOS", "REI");
+
+    /** The extension whose metadata is kept. */
+    @Param({"DOKSYS", "ELAN", "RODOS", "REI"})
+    private String extension;
+
+    private JSONObject request;
+    private JSONObject userJsonObject;
+
+    /**
+     * Load the fixture and keep only the metadata of the extension.
+     *
+     * @throws IOException if the fixture cannot be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        request = new JSONObject(Files.readString(
+            Paths.get(FIXTURE), StandardCharsets.UTF_8));
+        JSONObject meta = request.getJSONObject("irix")
+            .getJSONObject("DokpoolMeta");
+        for (String name : EXTENSIONS) {
+            String flag = "Is" + name.charAt(0)
+                + name.substring(1).toLowerCase();
+            boolean keep = name.equals(extension);
+            meta.put(flag, keep);
+            if (!keep) {
+                meta.remove(name);
+            }
+        }
+        userJsonObject = new JSONObject();
+    }
+
+    /**
+     * Add the annotation to an empty report.
+     *
+     * @return the report.
+     * @throws JAXBException if marshalling the metadata failed.
+     * @throws SAXException never without schema.
+     */
+    @Benchmark
+    public ReportType addAnnotation() throws JAXBException, SAXException {
+        ReportType report = new ReportType();
+        report.setAnnexes(new AnnexesType());
+        DokpoolUtils.addAnnotation(request, report, null, userJsonObject);
+        return report;
+    }
+}
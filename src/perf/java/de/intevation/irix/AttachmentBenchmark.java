@@ -0,0 +1,101 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.xml.bind.JAXBException;
+
+import org.iaea._2012.irix.format.ReportType;
+import org.iaea._2012.irix.format.annexes.AnnexesType;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Attaching files of different sizes and writing them as base64.
+ *
+ * Run with {@code mvn -Pperf test-compile exec:exec -Djmh.args=Attachment}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttachmentBenchmark {
+
+    /** Request of the report that is marshalled. */
+    private static final String FIXTURE = "examples/img-test_respond.json";
+
+    /** Size of the attachment in bytes. */
+    @Param({"1024", "65536", "1048576", "16777216"})
+    private int size;
+
+    private byte[] data;
+    private ReportType attached;
+
+    /**
+     * Load the fixture and create random content.
+     *
+     * @throws IOException if the fixture cannot be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        JSONObject request = new JSONObject(Files.readString(
+            Paths.get(FIXTURE), StandardCharsets.UTF_8));
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+        attached = ReportUtils.prepareReport(request);
+        ReportUtils.attachFile("Benchmark", data, attached, "image/png",
+            "benchmark.png");
+    }
+
+    /**
+     * Hash the content and attach it to an empty report.
+     *
+     * @return the report.
+     */
+    @Benchmark
+    public ReportType attach() {
+        ReportType report = new ReportType();
+        report.setAnnexes(new AnnexesType());
+        ReportUtils.attachFile("Benchmark", data, report, "image/png",
+            "benchmark.png");
+        return report;
+    }
+
+    /**
+     * Marshal a report with the attachment.
+     *
+     * @throws JAXBException if marshalling failed.
+     * @throws SAXException never without schema.
+     */
+    @Benchmark
+    public void marshal() throws JAXBException, SAXException {
+        ReportUtils.marshallReport(attached, OutputStream.nullOutputStream(),
+            null);
+    }
+}
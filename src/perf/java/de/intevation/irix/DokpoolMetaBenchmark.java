@@ -0,0 +1,85 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import de.bfs.irix.extensions.dokpool.DokpoolMeta;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares populating DokpoolMeta through the precomputed
+ * {@link PropertyAccessors} with the former reflective lookups.
+ *
+ * Run with {@code mvn -Pperf test-compile exec:exec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DokpoolMetaBenchmark {
+
+    /** Request with DOKSYS, ELAN, RODOS and REI metadata. */
+    private static final String FIXTURE =
+        "examples/dokpool-all-noattachs-test_respond.json";
+
+    private JSONObject metaObj;
+    private JSONObject userJsonObject;
+
+    /**
+     * Load the fixture.
+     *
+     * @throws IOException if the fixture cannot be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        JSONObject request = new JSONObject(Files.readString(
+            Paths.get(FIXTURE), StandardCharsets.UTF_8));
+        metaObj = request.getJSONObject("irix").getJSONObject("DokpoolMeta");
+        userJsonObject = new JSONObject();
+    }
+
+    /**
+     * Populate with the precomputed accessors.
+     *
+     * @return the populated object.
+     */
+    @Benchmark
+    public DokpoolMeta accessors() {
+        return DokpoolUtils.createDokpoolMeta(metaObj, userJsonObject);
+    }
+
+    /**
+     * Populate with reflective lookups per field.
+     *
+     * @return the populated object.
+     */
+    @Benchmark
+    public DokpoolMeta reflective() {
+        return ReflectiveDokpoolMeta.createDokpoolMeta(metaObj,
+            userJsonObject);
+    }
+}
@@ -0,0 +1,545 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * An IRIXClient servlet served by the HTTP server of the JDK.
+ *
+ * Only the parts of the servlet API used by IRIXClient are bridged.
+ * Requests are processed on the threads of the server, which play the
+ * role of the container threads. Asynchronous processing is supported:
+ * a server thread is released once the servlet has started it, and
+ * AsyncListener timeouts are delivered like a container does, so
+ * request-threads, background jobs and waiting for jobs behave as when
+ * deployed. Responses are buffered and sent when the servlet returns or
+ * completes the asynchronous processing.
+ */
+public class EmbeddedIRIXClient {
+    /** Context path of the web application. */
+    public static final String CONTEXT_PATH = "/irix-client";
+
+    /** Path of the servlet below the context path. */
+    public static final String SERVLET_PATH = "/IRIXClient";
+
+    private static final String WEBAPP = "src/main/webapp";
+
+    /** Default asynchronous timeout of servlet containers. */
+    private static final long DEFAULT_ASYNC_TIMEOUT_MS = 30000;
+
+    private final Map<String, Object> attributes =
+        new ConcurrentHashMap<String, Object>();
+
+    private IRIXClient client;
+    private ServletContext servletContext;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Initialize the servlet and start serving.
+     *
+     * The schemas are taken from src/main/webapp. If the irix-schema
+     * submodule is missing, reports are not validated.
+     *
+     * @param params  the init parameters of the servlet.
+     * @param port    the port, 0 picks a free one.
+     * @param threads number of threads processing requests.
+     * @throws IOException      if the port cannot be bound.
+     * @throws ServletException if the servlet cannot be initialized.
+     */
+    public void start(Map<String, String> params, int port, int threads)
+            throws IOException, ServletException {
+        servletContext = proxy(ServletContext.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getAttribute":
+                    return attributes.get(args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove(args[0]);
+                    return null;
+                case "getContextPath":
+                    return CONTEXT_PATH;
+                case "getRealPath":
+                    return new File(WEBAPP, (String) args[0]).getPath();
+                case "getResource":
+                    File file = new File(WEBAPP, (String) args[0]);
+                    if (file.exists()) {
+                        return file.toURI().toURL();
+                    }
+                    return null;
+                default:
+                    return defaultValue(method);
+            }
+        });
+        ServletConfig config = proxy(ServletConfig.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getInitParameter":
+                    return params.get(args[0]);
+                case "getInitParameterNames":
+                    return Collections.enumeration(params.keySet());
+                case "getServletContext":
+                    return servletContext;
+                case "getServletName":
+                    return "IRIXClient";
+                default:
+                    return defaultValue(method);
+            }
+        });
+        client = new IRIXClient() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void init() throws ServletException {
+                super.init();
+                if (!irixSchemaFile.exists()) {
+                    System.err.println("IRIX schema missing, reports are "
+                        + "not validated.");
+                    irixSchemaFile = null;
+                }
+                if (!dokpoolSchemaFile.exists()) {
+                    dokpoolSchemaFile = null;
+                }
+            }
+        };
+        client.init(config);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(CONTEXT_PATH + SERVLET_PATH, this::handle);
+        executor = Executors.newFixedThreadPool(threads,
+            ThreadPools.newThreadFactory("embedded-irix"));
+        server.setExecutor(executor);
+        timer = Executors.newSingleThreadScheduledExecutor(
+            ThreadPools.newThreadFactory("embedded-irix-timeout"));
+        server.start();
+    }
+
+    /** Stop serving and release the resources of the servlet. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        timer.shutdownNow();
+        client.destroy();
+        new BaseServletContextListener().contextDestroyed(
+            new ServletContextEvent(servletContext));
+    }
+
+    /** @return the URL of the servlet. */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort()
+            + CONTEXT_PATH + SERVLET_PATH;
+    }
+
+    /** @return the stage latencies recorded by the servlet. */
+    public StageMetrics getMetrics() {
+        return (StageMetrics) attributes.get(StageMetrics.class.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(
+            EmbeddedIRIXClient.class.getClassLoader(),
+            new Class<?>[] {type}, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        Exchange bridged = new Exchange(exchange, body);
+        try {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                client.doGet(bridged.request, bridged.response);
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                client.doPost(bridged.request, bridged.response);
+            } else {
+                bridged.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+                    null);
+            }
+        } catch (ServletException | IOException | RuntimeException e) {
+            bridged.sendError(HttpURLConnection.HTTP_INTERNAL_ERROR,
+                e.toString());
+            bridged.complete();
+            return;
+        }
+        if (bridged.async != null) {
+            // answered by complete(), possibly already done
+            bridged.scheduleTimeout();
+            return;
+        }
+        bridged.complete();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = pair;
+            String value = "";
+            if (eq >= 0) {
+                name = pair.substring(0, eq);
+                value = URLDecoder.decode(pair.substring(eq + 1),
+                    StandardCharsets.UTF_8);
+            }
+            params.putIfAbsent(
+                URLDecoder.decode(name, StandardCharsets.UTF_8), value);
+        }
+        return params;
+    }
+
+    private static ServletInputStream inputStream(byte[] body) {
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener listener) {
+            }
+        };
+    }
+
+    private static ServletOutputStream outputStream(
+            ByteArrayOutputStream target) {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                target.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                target.write(b, off, len);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+    }
+
+    /** A request and its buffered response. */
+    private final class Exchange {
+        private final HttpExchange exchange;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final ByteArrayOutputStream buffer =
+            new ByteArrayOutputStream();
+        private final PrintWriter writer = new PrintWriter(
+            new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        private int status = HttpURLConnection.HTTP_OK;
+        private String contentType;
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private final List<AsyncListener> listeners =
+            new CopyOnWriteArrayList<AsyncListener>();
+        private volatile AsyncContext async;
+        private volatile long asyncTimeout = DEFAULT_ASYNC_TIMEOUT_MS;
+
+        Exchange(HttpExchange httpExchange, byte[] body) {
+            this.exchange = httpExchange;
+            Headers headers = httpExchange.getRequestHeaders();
+            Map<String, String> query = parseQuery(
+                httpExchange.getRequestURI().getRawQuery());
+            String path = httpExchange.getRequestURI().getPath();
+            String pathInfo = path.substring(
+                (CONTEXT_PATH + SERVLET_PATH).length());
+            ServletInputStream in = inputStream(body);
+            this.request = proxy(HttpServletRequest.class,
+                (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return httpExchange.getRequestMethod();
+                        case "getReader":
+                            return new BufferedReader(new InputStreamReader(
+                                in, StandardCharsets.UTF_8));
+                        case "getInputStream":
+                            return in;
+                        case "getHeader":
+                            return headers.getFirst((String) args[0]);
+                        case "getHeaders":
+                            List<String> values =
+                                headers.get((String) args[0]);
+                            if (values == null) {
+                                values = List.of();
+                            }
+                            return Collections.enumeration(values);
+                        case "getHeaderNames":
+                            return Collections.enumeration(
+                                new ArrayList<String>(headers.keySet()));
+                        case "getContentType":
+                            return headers.getFirst("Content-Type");
+                        case "getParameter":
+                            return query.get(args[0]);
+                        case "getContextPath":
+                            return CONTEXT_PATH;
+                        case "getServletPath":
+                            return SERVLET_PATH;
+                        case "getPathInfo":
+                            if (pathInfo.isEmpty()) {
+                                return null;
+                            }
+                            return pathInfo;
+                        case "getRequestURI":
+                            return path;
+                        case "isAsyncSupported":
+                            return true;
+                        case "startAsync":
+                            return startAsync();
+                        case "isAsyncStarted":
+                            return async != null && !completed.get();
+                        case "getAsyncContext":
+                            return async;
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+            ServletOutputStream out = outputStream(buffer);
+            Headers responseHeaders = httpExchange.getResponseHeaders();
+            this.response = proxy(HttpServletResponse.class,
+                (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "setStatus":
+                            status = (Integer) args[0];
+                            return null;
+                        case "getStatus":
+                            return status;
+                        case "sendError":
+                            String message = null;
+                            if (args.length > 1) {
+                                message = (String) args[1];
+                            }
+                            sendError((Integer) args[0], message);
+                            return null;
+                        case "setContentType":
+                            contentType = (String) args[0];
+                            return null;
+                        case "getContentType":
+                            return contentType;
+                        case "setHeader":
+                            responseHeaders.set((String) args[0],
+                                (String) args[1]);
+                            return null;
+                        case "addHeader":
+                            responseHeaders.add((String) args[0],
+                                (String) args[1]);
+                            return null;
+                        case "getHeader":
+                            return responseHeaders.getFirst((String) args[0]);
+                        case "containsHeader":
+                            return responseHeaders.containsKey(args[0]);
+                        case "getOutputStream":
+                            return out;
+                        case "getWriter":
+                            return writer;
+                        case "reset":
+                            responseHeaders.clear();
+                            status = HttpURLConnection.HTTP_OK;
+                            buffer.reset();
+                            return null;
+                        case "resetBuffer":
+                            buffer.reset();
+                            return null;
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+        }
+
+        private AsyncContext startAsync() {
+            if (async == null) {
+                async = proxy(AsyncContext.class, (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRequest":
+                            return request;
+                        case "getResponse":
+                            return response;
+                        case "hasOriginalRequestAndResponse":
+                            return true;
+                        case "setTimeout":
+                            asyncTimeout = (Long) args[0];
+                            return null;
+                        case "getTimeout":
+                            return asyncTimeout;
+                        case "addListener":
+                            listeners.add((AsyncListener) args[0]);
+                            return null;
+                        case "start":
+                            executor.execute((Runnable) args[0]);
+                            return null;
+                        case "complete":
+                            complete();
+                            return null;
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+            }
+            return async;
+        }
+
+        /** Deliver the timeout, unless completed in time. */
+        void scheduleTimeout() {
+            if (asyncTimeout <= 0 || completed.get()) {
+                return;
+            }
+            timer.schedule(() -> {
+                if (completed.get()) {
+                    return;
+                }
+                for (AsyncListener listener : listeners) {
+                    try {
+                        listener.onTimeout(new AsyncEvent(async));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("onTimeout failed: " + e);
+                    }
+                }
+                if (!completed.get()) {
+                    sendError(HttpURLConnection.HTTP_INTERNAL_ERROR,
+                        "Asynchronous processing timed out.");
+                    complete();
+                }
+            }, asyncTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        /** Send the response, only the first call has an effect. */
+        void complete() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            for (AsyncListener listener : listeners) {
+                try {
+                    listener.onComplete(new AsyncEvent(async));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("onComplete failed: " + e);
+                }
+            }
+            try {
+                send();
+            } catch (IOException e) {
+                System.err.println("Sending response failed: " + e);
+            }
+        }
+
+        void sendError(int code, String message) {
+            status = code;
+            contentType = "text/plain; charset=UTF-8";
+            buffer.reset();
+            if (message != null) {
+                buffer.writeBytes(message.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        private void send() throws IOException {
+            writer.flush();
+            if (contentType != null) {
+                exchange.getResponseHeaders().set("Content-Type",
+                    contentType);
+            }
+            int length = buffer.size();
+            if (length == 0) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                exchange.sendResponseHeaders(status, length);
+            }
+            try (OutputStream out = exchange.getResponseBody()) {
+                buffer.writeTo(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Replays requests against an IRIXClient at a fixed arrival rate.
+ *
+ * Requests are sent on schedule whether or not earlier requests have
+ * been answered, and latencies are measured from the scheduled start,
+ * so a slow client shows up in the latencies instead of lowering the
+ * load. Results are collected per request type.
+ *
+ * A share of the requests can be sent as background jobs: the driver
+ * then waits for the job to finish and fetches its report, and the
+ * latency covers all of it. Jobs are reported as their own type.
+ */
+public class LoadDriver {
+    /** Type of requests sent as a JSON array. */
+    public static final String BATCH = "batch";
+
+    /** Suffix of the type of requests sent as background jobs. */
+    public static final String JOB_SUFFIX = " job";
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double P50 = 0.5;
+    private static final double P95 = 0.95;
+    private static final double P99 = 0.99;
+    private static final double PERCENT = 100;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final String url;
+    private final List<Fixture> fixtures;
+    private final Map<String, String> headers;
+    private final Duration timeout;
+    private final HttpClient http;
+    private final Map<String, Recorder> recorders =
+        new ConcurrentHashMap<String, Recorder>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private int maxInFlight = Integer.MAX_VALUE;
+    private double jobRatio;
+
+    /** A request and its type. */
+    public static final class Fixture {
+        private final String name;
+        private final String type;
+        private final String body;
+
+        Fixture(String fileName, String requestType, String json) {
+            this.name = fileName;
+            this.type = requestType;
+            this.body = json;
+        }
+
+        /** @return the file the request was read from. */
+        public String getName() {
+            return name;
+        }
+
+        /** @return the request type, or {@link LoadDriver#BATCH}. */
+        public String getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Create a driver.
+     *
+     * @param clientUrl      URL of the IRIXClient servlet.
+     * @param requests       the requests, sent in turn.
+     * @param requestHeaders additional headers, e.g. the user headers.
+     * @param requestTimeout time after which a request counts as failed.
+     */
+    public LoadDriver(String clientUrl, List<Fixture> requests,
+            Map<String, String> requestHeaders, Duration requestTimeout) {
+        this.url = clientUrl;
+        this.fixtures = requests;
+        this.headers = requestHeaders;
+        this.timeout = requestTimeout;
+        this.http = HttpClient.newBuilder()
+            .connectTimeout(requestTimeout)
+            .build();
+    }
+
+    /**
+     * Count requests as failed without sending them while this number of
+     * requests is outstanding.
+     *
+     * @param limit the maximum number of outstanding requests.
+     */
+    public void setMaxInFlight(int limit) {
+        this.maxInFlight = limit;
+    }
+
+    /**
+     * Send a share of the requests as background jobs.
+     *
+     * @param ratio share of the requests between 0 and 1.
+     */
+    public void setJobRatio(double ratio) {
+        this.jobRatio = ratio;
+    }
+
+    /**
+     * Read the requests from a directory and point their print specs
+     * and images to the stubs.
+     *
+     * Layouts and print apps used by the requests are announced by the
+     * print stub, together with the map and legend layouts.
+     *
+     * @param dir          directory with the requests.
+     * @param pattern      regular expression the file names must match.
+     * @param print        the print stub.
+     * @param mapSuffix    suffix of the map layouts.
+     * @param legendSuffix suffix of the legend layouts.
+     * @return the requests.
+     * @throws IOException if the directory cannot be read.
+     */
+    public static List<Fixture> loadFixtures(Path dir, String pattern,
+            StubPrintServer print, String mapSuffix, String legendSuffix)
+            throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().matches(pattern)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        List<Fixture> result = new ArrayList<Fixture>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            try {
+                Object json;
+                String type;
+                if (content.trim().startsWith("[")) {
+                    JSONArray batch = new JSONArray(content);
+                    for (int i = 0; i < batch.length(); i++) {
+                        redirect(batch.getJSONObject(i), print, mapSuffix,
+                            legendSuffix);
+                    }
+                    json = batch;
+                    type = BATCH;
+                } else {
+                    JSONObject request = new JSONObject(content);
+                    redirect(request, print, mapSuffix, legendSuffix);
+                    json = request;
+                    type = request.optString("request-type").toLowerCase();
+                }
+                result.add(new Fixture(name, type, json.toString()));
+            } catch (JSONException e) {
+                System.err.println("Skipping " + name + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static void redirect(JSONObject request, StubPrintServer print,
+            String mapSuffix, String legendSuffix) {
+        if (request.has("printapp")) {
+            print.addApp(request.getString("printapp"));
+        }
+        JSONArray specs = request.optJSONArray("mapfish-print");
+        for (int i = 0; specs != null && i < specs.length(); i++) {
+            JSONObject spec = specs.getJSONObject(i);
+            String layout = spec.optString("layout");
+            print.addLayout(layout);
+            print.addLayout(layout + mapSuffix);
+            print.addLayout(layout + legendSuffix);
+            if (spec.has("baseurl")) {
+                spec.put("baseurl", print.getPrintUrl());
+            }
+            if (spec.has("printapp")) {
+                print.addApp(spec.getString("printapp"));
+            }
+        }
+        for (String key : List.of("img-print", "doc-print")) {
+            JSONArray images = request.optJSONArray(key);
+            for (int i = 0; images != null && i < images.length(); i++) {
+                JSONObject image = images.getJSONObject(i);
+                if (image.has("url")) {
+                    String imageUrl = image.getString("url");
+                    image.put("url", print.getImageUrl() + "/"
+                        + imageUrl.substring(imageUrl.lastIndexOf('/') + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Send requests at the given rate.
+     *
+     * @param rate     requests per second.
+     * @param warmup   time before the results are recorded.
+     * @param duration time during which the results are recorded.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void run(double rate, Duration warmup, Duration duration)
+            throws InterruptedException {
+        long interval = (long) (NANOS_PER_SECOND / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        for (long i = 0;; i++) {
+            long scheduled = start + i * interval;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            while (wait > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                wait = scheduled - System.nanoTime();
+            }
+            Fixture fixture = fixtures.get(
+                (int) (i % fixtures.size()));
+            // spread the jobs evenly over the requests
+            boolean job = Math.floor((i + 1) * jobRatio)
+                > Math.floor(i * jobRatio);
+            send(fixture, scheduled, scheduled >= measureFrom, job);
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(interval) + 1);
+        }
+    }
+
+    private void send(Fixture fixture, long scheduled, boolean measured,
+            boolean job) {
+        Recorder recorder = null;
+        if (measured) {
+            String type = fixture.type;
+            if (job) {
+                type += JOB_SUFFIX;
+            }
+            recorder = recorders.computeIfAbsent(type, t -> new Recorder());
+        }
+        if (inFlight.get() >= maxInFlight) {
+            if (recorder != null) {
+                recorder.rejected();
+            }
+            return;
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .timeout(timeout)
+            .header("Content-Type", "application/json; charset=utf-8")
+            .POST(HttpRequest.BodyPublishers.ofString(fixture.body));
+        headers.forEach(builder::header);
+        inFlight.incrementAndGet();
+        Recorder target = recorder;
+        if (job) {
+            builder.header("Prefer", "respond-async");
+            http.sendAsync(builder.build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenCompose(this::awaitJob)
+                .whenComplete((failure, error) -> {
+                    long latency = System.nanoTime() - scheduled;
+                    inFlight.decrementAndGet();
+                    if (target == null) {
+                        return;
+                    }
+                    if (error != null) {
+                        target.record(latency, error.toString());
+                    } else {
+                        target.record(latency, failure);
+                    }
+                });
+            return;
+        }
+        http.sendAsync(builder.build(), LoadDriver::errorBody)
+            .whenComplete((response, error) -> {
+                long latency = System.nanoTime() - scheduled;
+                inFlight.decrementAndGet();
+                if (target == null) {
+                    return;
+                }
+                if (error != null) {
+                    target.record(latency, error.toString());
+                } else if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                    target.record(latency, response.statusCode() + " "
+                        + response.body());
+                } else {
+                    target.record(latency, null);
+                }
+            });
+    }
+
+    /**
+     * Wait for a submitted job to finish and fetch its report.
+     *
+     * @return a future of null on success, otherwise of the failure.
+     */
+    private CompletableFuture<String> awaitJob(
+            HttpResponse<String> submitted) {
+        if (submitted.statusCode() != HttpURLConnection.HTTP_ACCEPTED) {
+            return CompletableFuture.completedFuture(
+                submitted.statusCode() + " " + submitted.body());
+        }
+        URI status = URI.create(url).resolve(
+            submitted.headers().firstValue("Location").orElseThrow());
+        return pollJob(status);
+    }
+
+    private CompletableFuture<String> pollJob(URI status) {
+        // let the server hold the status request well within the timeout
+        long wait = Math.max(1, timeout.getSeconds() / 2);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(
+            URI.create(status + "?wait=" + wait)).timeout(timeout);
+        headers.forEach(builder::header);
+        return http.sendAsync(builder.build(),
+            HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+            .thenCompose(response -> {
+                if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                    return CompletableFuture.completedFuture(
+                        response.statusCode() + " " + response.body());
+                }
+                JSONObject job = new JSONObject(response.body());
+                if (!job.has("finished")) {
+                    return pollJob(status);
+                }
+                if (!job.has("report")) {
+                    return CompletableFuture.completedFuture(
+                        "job " + job.optString("status") + ": "
+                        + job.optString("message"));
+                }
+                HttpRequest.Builder report = HttpRequest.newBuilder(
+                    status.resolve(job.getString("report"))).timeout(timeout);
+                headers.forEach(report::header);
+                return http.sendAsync(report.build(), LoadDriver::errorBody)
+                    .thenApply(result -> {
+                        if (result.statusCode()
+                                != HttpURLConnection.HTTP_OK) {
+                            return result.statusCode() + " " + result.body();
+                        }
+                        return null;
+                    });
+            });
+    }
+
+    /** Keep the body of failed requests only. */
+    private static HttpResponse.BodySubscriber<String> errorBody(
+            HttpResponse.ResponseInfo info) {
+        if (info.statusCode() == HttpURLConnection.HTTP_OK) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the results per request type.
+     *
+     * @param duration the measured time.
+     * @param out      the stream to write to.
+     */
+    public void report(Duration duration, PrintStream out) {
+        double seconds = duration.toNanos() / (double) NANOS_PER_SECOND;
+        out.printf("%-16s %8s %8s %8s %10s %10s %10s %10s%n", "type",
+            "count", "ok/s", "errors%", "p50 ms", "p95 ms", "p99 ms",
+            "max ms");
+        for (Map.Entry<String, Recorder> entry
+                : new TreeMap<String, Recorder>(recorders).entrySet()) {
+            Recorder recorder = entry.getValue();
+            long[] latencies = recorder.latencies();
+            long successes = recorder.successes();
+            long count = latencies.length + recorder.rejections();
+            long errors = count - successes;
+            out.printf("%-16s %8d %8.1f %8.2f %10.1f %10.1f %10.1f %10.1f%n",
+                entry.getKey(), count, successes / seconds,
+                errors * PERCENT / Math.max(1, count),
+                millis(latencies, P50), millis(latencies, P95),
+                millis(latencies, P99), millis(latencies, 1));
+        }
+        for (Map.Entry<String, Recorder> entry
+                : new TreeMap<String, Recorder>(recorders).entrySet()) {
+            String error = entry.getValue().firstError();
+            if (error != null) {
+                out.println("first error of " + entry.getKey() + ": "
+                    + error.substring(0, Math.min(error.length(),
+                        MAX_ERROR_LENGTH)));
+            }
+        }
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / NANOS_PER_MILLI;
+    }
+
+    /** Latencies and outcomes of one request type. */
+    private static final class Recorder {
+        private long[] values = new long[INITIAL_CAPACITY];
+        private int size;
+        private long okCount;
+        private long rejectedCount;
+        private String error;
+
+        synchronized void record(long nanos, String failure) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+            if (failure == null) {
+                okCount++;
+            } else if (error == null) {
+                error = failure;
+            }
+        }
+
+        synchronized String firstError() {
+            return error;
+        }
+
+        synchronized void rejected() {
+            rejectedCount++;
+        }
+
+        synchronized long successes() {
+            return okCount;
+        }
+
+        synchronized long rejections() {
+            return rejectedCount;
+        }
+
+        synchronized long[] latencies() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
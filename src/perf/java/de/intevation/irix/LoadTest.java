@@ -0,0 +1,194 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-to-end load test of IRIXClient with stand-ins for mapfish-print,
+ * image servers and the irix-webservice.
+ *
+ * The stubs are started, the requests in examples/ are pointed to them
+ * and replayed at a fixed rate against an IRIXClient embedded in this
+ * process, or against a deployed one given with {@code --target}, whose
+ * print-url and irix-webservice-url must then point to the stubs
+ * (see {@code --print-port} and {@code --upload-port}).
+ *
+ * The embedded IRIXClient processes requests asynchronously on
+ * {@code --request-threads} threads like a deployed one; {@code 0}
+ * measures processing on the server threads instead. With
+ * {@code --job-ratio} a share of the requests is sent as background jobs.
+ *
+ * Run with
+ * {@code mvn -Pperf test-compile exec:java@load -Dload.args="--rate=20"}.
+ * Options are given as {@code --name=value}, see {@link #DEFAULTS}.
+ */
+public final class LoadTest {
+    private static final String MAP_SUFFIX = "_map";
+    private static final String LEGEND_SUFFIX = "_legend";
+    private static final String USER_HEADER = "X-SHIB-user";
+    private static final String DISPLAYNAME_HEADER = "X-SHIB-displayname";
+
+    /** The options and their defaults. */
+    static final Map<String, String> DEFAULTS = Map.ofEntries(
+        // requests per second and measured time after the warmup
+        Map.entry("rate", "10"),
+        Map.entry("warmup-s", "10"),
+        Map.entry("duration-s", "60"),
+        Map.entry("timeout-s", "60"),
+        Map.entry("max-in-flight", "1000"),
+        // regular expression selecting the requests in examples/
+        Map.entry("fixtures", ".*"),
+        // URL of a deployed IRIXClient, empty for an embedded one
+        Map.entry("target", ""),
+        // threads of the embedded IRIXClient, i.e. container threads
+        Map.entry("client-threads", "32"),
+        // request-threads of the embedded IRIXClient, 0 for synchronous
+        Map.entry("request-threads", "16"),
+        // share of the requests sent as background jobs
+        Map.entry("job-ratio", "0"),
+        Map.entry("print-port", "0"),
+        Map.entry("print-threads", "16"),
+        Map.entry("print-latency-ms", "500"),
+        Map.entry("print-jitter-ms", "250"),
+        Map.entry("print-error-rate", "0"),
+        Map.entry("pdf-bytes", "500000"),
+        Map.entry("png-bytes", "100000"),
+        Map.entry("upload-port", "0"),
+        Map.entry("upload-threads", "16"),
+        Map.entry("upload-latency-ms", "200"),
+        Map.entry("upload-jitter-ms", "100"),
+        Map.entry("upload-error-rate", "0"),
+        Map.entry("user", "loadtest"));
+
+    private LoadTest() {
+        // hidden constructor, only main is used.
+    }
+
+    /**
+     * Run the load test and print the results.
+     *
+     * @param args options as {@code --name=value}.
+     * @throws Exception if a stub or the client cannot be started.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.substring(2, Math.max(2, eq));
+            if (!arg.startsWith("--") || eq < 0
+                    || !DEFAULTS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown option " + arg
+                    + ", known: " + DEFAULTS.keySet());
+            }
+            options.put(name, arg.substring(eq + 1));
+        }
+
+        StubPrintServer print = new StubPrintServer(
+            Long.parseLong(options.get("print-latency-ms")),
+            Long.parseLong(options.get("print-jitter-ms")),
+            Integer.parseInt(options.get("pdf-bytes")),
+            Integer.parseInt(options.get("png-bytes")));
+        print.setErrorRate(Double.parseDouble(
+            options.get("print-error-rate")));
+        print.start(Integer.parseInt(options.get("print-port")),
+            Integer.parseInt(options.get("print-threads")));
+        StubUploadService upload = new StubUploadService(
+            Long.parseLong(options.get("upload-latency-ms")),
+            Long.parseLong(options.get("upload-jitter-ms")));
+        upload.setErrorRate(Double.parseDouble(
+            options.get("upload-error-rate")));
+        upload.start(Integer.parseInt(options.get("upload-port")),
+            Integer.parseInt(options.get("upload-threads")));
+        System.out.println("print-url: " + print.getPrintUrl());
+        System.out.println("irix-webservice-url: " + upload.getUrl());
+
+        List<LoadDriver.Fixture> fixtures = LoadDriver.loadFixtures(
+            Path.of("examples"), options.get("fixtures"), print, MAP_SUFFIX,
+            LEGEND_SUFFIX);
+        if (fixtures.isEmpty()) {
+            throw new IllegalArgumentException("No requests match "
+                + options.get("fixtures"));
+        }
+
+        EmbeddedIRIXClient embedded = null;
+        String target = options.get("target");
+        if (target.isEmpty()) {
+            Map<String, String> params = new HashMap<String, String>();
+            params.put("print-url", print.getPrintUrl());
+            params.put("map-layout-suffix", MAP_SUFFIX);
+            params.put("legend-layout-suffix", LEGEND_SUFFIX);
+            params.put("irix-webservice-url", upload.getUrl());
+            params.put("irix-webservice-wsdl-tmpfile",
+                Files.createTempFile("upload-report", ".wsdl").toString());
+            params.put("irix-webservice-wsdl-ttl-s", "0");
+            params.put("user-header", USER_HEADER);
+            params.put("user-displayname-header", DISPLAYNAME_HEADER);
+            params.put("keep-request-headers", "false");
+            params.put("request-threads", options.get("request-threads"));
+            embedded = new EmbeddedIRIXClient();
+            embedded.start(params, 0,
+                Integer.parseInt(options.get("client-threads")));
+            target = embedded.getUrl();
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(USER_HEADER, options.get("user"));
+        headers.put(DISPLAYNAME_HEADER, options.get("user"));
+        LoadDriver driver = new LoadDriver(target, fixtures, headers,
+            Duration.ofSeconds(Long.parseLong(options.get("timeout-s"))));
+        driver.setMaxInFlight(Integer.parseInt(
+            options.get("max-in-flight")));
+        driver.setJobRatio(Double.parseDouble(options.get("job-ratio")));
+        Duration duration = Duration.ofSeconds(
+            Long.parseLong(options.get("duration-s")));
+        System.out.println("Sending " + options.get("rate")
+            + " requests/s of " + fixtures.size() + " requests to " + target);
+        try {
+            driver.run(Double.parseDouble(options.get("rate")),
+                Duration.ofSeconds(Long.parseLong(options.get("warmup-s"))),
+                duration);
+            System.out.println();
+            driver.report(duration, System.out);
+            System.out.println();
+            System.out.println("print stub: " + print.getPrints()
+                + " documents, " + print.getImages() + " images, "
+                + print.getFailures() + " failures");
+            System.out.println("upload stub: " + upload.getUploads()
+                + " uploads, " + upload.getReceivedBytes() + " bytes, "
+                + upload.getFailures() + " failures");
+            if (embedded != null) {
+                System.out.println();
+                System.out.println("Stages of the client, including warmup:");
+                System.out.printf("%-16s %-16s %-20s %8s %8s %10s %10s %10s%n",
+                    "stage", "app", "host", "count", "errors", "p50 ms",
+                    "p95 ms", "p99 ms");
+                for (StageStatistics stage
+                        : embedded.getMetrics().getStatistics()) {
+                    System.out.printf(
+                        "%-16s %-16s %-20s %8d %8d %10.1f %10.1f %10.1f%n",
+                        stage.getStage(), stage.getApp(), stage.getHost(),
+                        stage.getCount(), stage.getErrors(), stage.getP50Ms(),
+                        stage.getP95Ms(), stage.getP99Ms());
+                }
+            }
+        } finally {
+            if (embedded != null) {
+                embedded.stop();
+            }
+            upload.stop();
+            print.stop();
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import de.bfs.irix.extensions.dokpool.DokpoolMeta;
+import de.bfs.irix.extensions.dokpool.DokpoolMeta.RODOS;
+import de.bfs.irix.extensions.dokpool.DokpoolMeta.DOKSYS;
+import de.bfs.irix.extensions.dokpool.DokpoolMeta.REI;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * The reflective DokpoolMeta population of DokpoolUtils before the
+ * accessor registry, kept as baseline for {@link DokpoolMetaBenchmark}.
+ */
+public final class ReflectiveDokpoolMeta {
+    private static System.Logger log = System.getLogger(ReflectiveDokpoolMeta.class.getName());
+
+    private static final String[] DOKPOOL_FIELDS = new String[] {
+        "DokpoolContentType",
+        "DokpoolName",
+        "DokpoolGroupFolder",
+        "DokpoolPrivateFolder",
+        "DokpoolTransferFolder",
+        "DokpoolDocumentOwner",
+        "Subject",
+        "IsElan",
+        "IsDoksys",
+        "IsRodos",
+        "IsRei"
+    };
+
+    private static final String[] DOKSYS_FIELDS = new String[] {
+        "Purpose",
+        "NetworkOperator",
+        "SampleType",
+        "MeasurementCategory",
+        "Dom",
+        "DataSource",
+        "LegalBase",
+        "SamplingBegin",
+        "SamplingEnd",
+        "Duration",
+        "OperationMode",
+        "TrajectoryStartLocation",
+        "TrajectoryEndLocation",
+        "TrajectoryStartTime",
+        "TrajectoryEndTime",
+        "MeasuringProgram",
+        "Status"
+    };
+
+    private static final String[] REI_FIELDS = new String[] {
+            "Revision", // numeric
+            "Year", // (Mitte Sammelzeitraum): z.B. „2009“
+            "Period", // e.g. Q3 for third Quarter
+            "NuclearInstallation", // z.B. „KKW Grafenrheinfeld“
+            "Medium", //"Abwasser", "Fortluft" oder "Abwasser/Fortluft",
+            "ReiLegalBase", // REI-E, REI-I oder REI-E/REI-I
+            "Origin", // "Genehmigungsinhaber"
+            "MSt", // "1234", "ABCD"
+            "Authority", // z.B. „Bayern“
+            "PDFVersion",  // PDF/A-1b
+            "SigningDate",
+            "SigningComment",
+            "Signed" // Bool
+    };
+
+    private ReflectiveDokpoolMeta() {
+        // hidden constructor to avoid instantiation.
+    }
+
+    /**
+     * Create the DokpoolMeta object as DokpoolUtils.addAnnotation did.
+     *
+     * @param metaObj The DokpoolMeta jsonObject of the request.
+     * @param userJsonObject The userJsonObject created from headers.
+     * @return the populated DokpoolMeta object.
+     */
+    public static DokpoolMeta createDokpoolMeta(JSONObject metaObj,
+            JSONObject userJsonObject) {
+        DokpoolMeta meta = new DokpoolMeta();
+        boolean hasType = false;
+        for (String field: DOKPOOL_FIELDS) {
+            if (!metaObj.has(field)) {
+                continue;
+            }
+            String methodName = "set" + field;
+            String value = metaObj.get(field).toString();
+            if (field.equals("DokpoolDocumentOwner") && userJsonObject
+                    .has("uid")) {
+                String uid = userJsonObject.getString("uid");
+                if (uid.length() > 0) {
+                    value = uid;
+                    log.log(INFO, "Using DokpoolDocumentOwner from Header "
+                            + "instead of request");
+                }
+            }
+            try {
+                if (field.startsWith("Is")) {
+                    Method method = meta.getClass().getMethod(methodName,
+                            Boolean.class);
+                    boolean bValue = value.toLowerCase().equals("true");
+                    method.invoke(meta, bValue);
+                    hasType = bValue || hasType;
+                } else if (field.equals("Subject")) {
+                    if (metaObj.has("Subject")) {
+                        JSONArray dpSubjectsJson = metaObj.getJSONArray("Subject");
+                        for (int i = 0; i < dpSubjectsJson.length(); i++) {
+                            meta.getSubject().add(dpSubjectsJson.getString(i));
+                        }
+                    }
+                } else {
+                    Method method = meta.getClass().getMethod(methodName, String.class);
+                    method.invoke(meta, value);
+                }
+            } catch (Exception e) {
+                log.log(ERROR, e.getClass().getName()
+                    + " exception while trying to access " + methodName
+                    + " on DokpoolMeta object.");
+            }
+        }
+        if ((metaObj.has("Doksys") || metaObj.has("DOKSYS"))
+                && meta.isIsDoksys()) {
+            addDoksysMeta(metaObj, meta);
+        }
+        if ((metaObj.has("Elan") || metaObj.has("ELAN"))
+                && meta.isIsElan()) {
+            DokpoolUtils.addElanMeta(metaObj, meta);
+        }
+        if ((metaObj.has("Rodos") || metaObj.has("RODOS"))
+                && meta.isIsRodos()) {
+            addRodosMeta(metaObj, meta);
+        }
+        if ((metaObj.has("Rei") || metaObj.has("REI"))
+                && meta.isIsRei()) {
+            addReiMeta(metaObj, meta);
+        }
+        return meta;
+    }
+
+    /**
+     * Reflective variant of DokpoolUtils.addDoksysMeta.
+     *
+     * @param metaObj The DokpoolMeta jsonObject of the request.
+     * @param meta The meta object to add to.
+     */
+    public static void addDoksysMeta(JSONObject metaObj, DokpoolMeta meta) {
+        DOKSYS doksys = new DOKSYS();
+        JSONObject doksysMetaObj;
+        if (metaObj.has("Doksys")) {
+            doksysMetaObj = metaObj.getJSONObject("Doksys");
+        } else if (metaObj.has("DOKSYS")) {
+            doksysMetaObj = metaObj.getJSONObject("DOKSYS");
+        } else {
+            return;
+        }
+        List<String> dateParams = Arrays.asList(
+                "SamplingBegin",
+                "SamplingEnd",
+                "TrajectoryStartTime",
+                "TrajectoryEndTime"
+        );
+        for (String field: DOKSYS_FIELDS) {
+            if (!doksysMetaObj.has(field)) {
+                continue;
+            }
+            String setMethodName = "set" + field;
+            String getMethodName = "get" + field;
+            Method[] methods = doksys.getClass().getDeclaredMethods();
+            try {
+                if (dateParams.contains(field)) {
+                    String value = doksysMetaObj
+                            .get(field).toString();
+                    XMLGregorianCalendar calval;
+                    calval = ReportUtils.xmlCalendarFromString(value);
+                    Method method = doksys.getClass().getMethod(
+                            setMethodName,
+                            XMLGregorianCalendar.class
+                    );
+                    method.invoke(doksys, calval);
+                } else {
+                    boolean hasGetMethod = false;
+                    boolean hasSetMethod = false;
+                    if (doksysMetaObj.get(field) instanceof String) {
+                        String value = doksysMetaObj.get(field).toString();
+                        for (Method m : methods) {
+                            if (m.getName().equals(getMethodName)) {
+                                hasGetMethod = true;
+                            }
+                            if (m.getName().equals(setMethodName)) {
+                                hasSetMethod = true;
+                            }
+                        }
+                        if (hasSetMethod) {
+                            Method method = doksys.getClass().getMethod(
+                                    setMethodName,
+                                    String.class
+                            );
+                            method.invoke(doksys, value);
+                        }
+                        if (hasGetMethod) {
+                            Method method = doksys.getClass().getMethod(getMethodName);
+                            try {
+                                ArrayList methodArray = (ArrayList) method.invoke(doksys);
+                                methodArray.add(value);
+                            } catch (Exception e) {
+                                log.log(ERROR, e);
+                            }
+                        }
+                    } else if (doksysMetaObj.get(field) instanceof JSONArray) {
+                        JSONArray values = doksysMetaObj.getJSONArray(field);
+                        for (Method m : methods) {
+                            if (m.getName().equals(getMethodName)) {
+                                hasGetMethod = true;
+                            }
+                            if (m.getName().equals(setMethodName)) {
+                                hasSetMethod = true;
+                            }
+                        }
+                        if (hasGetMethod) {
+                            Method method = doksys.getClass().getMethod(getMethodName);
+                            try {
+                                ArrayList methodArray = (ArrayList) method.invoke(doksys);
+                                for (int i = 0; i < values.length(); i++) {
+                                    methodArray.add(values.get(i));
+                                }
+                            } catch (Exception e) {
+                                log.log(ERROR, e);
+                            }
+                        }
+                        if (hasSetMethod) {
+                            log.log(DEBUG, setMethodName + " shouldn't exist here.");
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.log(ERROR, e.getClass().getName()
+                        + " exception while trying to access methods for " + field
+                        + " on DokpoolDoksysMeta object.");
+            }
+        }
+        meta.setDOKSYS(doksys);
+    }
+
+    /**
+     * Reflective variant of DokpoolUtils.addRodosMeta.
+     *
+     * @param metaObj The DokpoolMeta jsonObject of the request.
+     * @param meta The meta object to add to.
+     */
+    public static void addRodosMeta(JSONObject metaObj, DokpoolMeta meta) {
+        RODOS rodos = new RODOS();
+        JSONObject rodosMetaObj;
+        if (metaObj.has("Rodos")) {
+            rodosMetaObj = metaObj.getJSONObject("Rodos");
+        } else if (metaObj.has("RODOS")) {
+            rodosMetaObj = metaObj.getJSONObject("RODOS");
+        } else {
+            return;
+        }
+        for (String field: rodosMetaObj.keySet()) {
+            String methodName = "set" + field;
+            try {
+                String value = rodosMetaObj.get(field).toString();
+                Method method = rodos.getClass().getMethod(
+                        methodName,
+                        String.class
+                );
+                method.invoke(rodos, value);
+            } catch (Exception e) {
+                log.log(ERROR, e.getClass().getName()
+                        + " exception while trying to access " + methodName
+                        + " on DokpoolRodosMeta object.");
+            }
+        }
+        meta.setRODOS(rodos);
+    }
+
+    /**
+     * Reflective variant of DokpoolUtils.addReiMeta.
+     *
+     * @param metaObj The DokpoolMeta jsonObject of the request.
+     * @param meta The meta object to add to.
+     */
+    public static void addReiMeta(JSONObject metaObj, DokpoolMeta meta) {
+        REI rei = new REI();
+        JSONObject reiMetaObj;
+        if (metaObj.has("Rei")) {
+            reiMetaObj = metaObj.getJSONObject("Rei");
+        } else if (metaObj.has("REI")) {
+            reiMetaObj = metaObj.getJSONObject("REI");
+        } else {
+            return;
+        }
+        List<String> dateParams = Arrays.asList("SigningDate");
+        List<String> boolParams = Arrays.asList("Signed");
+        List<String> numParams = Arrays.asList("Year", "Revision");
+        List<String> listParams = Arrays.asList(
+                "ReiLegalBase",
+                "MSt",
+                "Origin",
+                "NuclearInstallation"
+        );
+        for (String field: REI_FIELDS) {
+            if (!reiMetaObj.has(field)) {
+                continue;
+            }
+            String methodName = "set" + field;
+            // TODO add generic list handling as well!
+            // TODO allow string if list has only one value for JSON
+            try {
+
+                if (dateParams.contains(field)) {
+                    String value = reiMetaObj
+                            .get(field).toString();
+                    XMLGregorianCalendar calval;
+                    calval = ReportUtils.xmlCalendarFromString(value);
+                    Method method = rei.getClass().getMethod(
+                            methodName,
+                            XMLGregorianCalendar.class
+                    );
+                    method.invoke(rei, calval);
+                } else if (boolParams.contains(field)) {
+                    Boolean bval = reiMetaObj.getBoolean(field);
+                    Method bMethod = REI.class.getMethod(
+                            methodName,
+                            Boolean.class
+                    );
+                    bMethod.invoke(rei, bval);
+                } else if (numParams.contains(field)) {
+                    BigInteger numval = BigInteger.valueOf(
+                            reiMetaObj.getInt(field)
+                    );
+                    Method numMethod = REI.class.getMethod(
+                            methodName,
+                            BigInteger.class
+                    );
+                    numMethod.invoke(rei, numval);
+                } else if (listParams.contains(field)) {
+                    DokpoolUtils.addReiListParam(reiMetaObj, rei, field);
+                } else {
+                    String value = reiMetaObj
+                            .getString(field);
+                    Method aMethod = REI.class
+                            .getMethod(
+                                    methodName,
+                                    String.class
+                            );
+                    aMethod.invoke(rei, value);
+                }
+            } catch (Exception e) {
+                log.log(ERROR, e.getClass().getName()
+                        + " exception while trying to access " + methodName
+                        + " on DokpoolReiMeta object.");
+            }
+        }
+        meta.setREI(rei);
+    }
+}
@@ -0,0 +1,178 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import jakarta.xml.bind.JAXBException;
+
+import org.iaea._2012.irix.format.ReportType;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Building, marshalling and unmarshalling reports of the example
+ * requests.
+ *
+ * The validating benchmarks need the IRIX schema of the irix-schema
+ * submodule below src/main/webapp/WEB-INF.
+ *
+ * Run with {@code mvn -Pperf test-compile exec:exec -Djmh.args=Report}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+    private static final String IRIX_SCHEMA =
+        "src/main/webapp/WEB-INF/irix-schema/IRIX.xsd";
+
+    /** Example request, relative to examples/. */
+    @Param({
+        "irix-test_respond.json",
+        "dokpool-all-noattachs-test_respond.json",
+        "rei-mini_respond.json"
+    })
+    private String fixture;
+
+    private JSONObject request;
+    private JSONObject userJsonObject;
+    private ReportType report;
+    private byte[] xml;
+    private File schema;
+    private XMLInputFactory inputFactory;
+
+    /**
+     * Load the fixture and prepare the report and its XML.
+     *
+     * @throws Exception if the fixture cannot be read or marshalled.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        request = new JSONObject(Files.readString(
+            Paths.get("examples", fixture), StandardCharsets.UTF_8));
+        userJsonObject = new JSONObject();
+        report = ReportUtils.prepareReport(request, userJsonObject);
+        DokpoolUtils.addAnnotation(request, report, null, userJsonObject);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportUtils.marshallReport(report, out, null);
+        xml = out.toByteArray();
+        schema = new File(IRIX_SCHEMA);
+        inputFactory = XMLInputFactory.newInstance();
+    }
+
+    /**
+     * Create a report from the request.
+     *
+     * @return the report.
+     */
+    @Benchmark
+    public ReportType prepareReport() {
+        return ReportUtils.prepareReport(request, userJsonObject);
+    }
+
+    /**
+     * Marshal the report without validation.
+     *
+     * @throws JAXBException if marshalling failed.
+     * @throws SAXException never without schema.
+     */
+    @Benchmark
+    public void marshal() throws JAXBException, SAXException {
+        ReportUtils.marshallReport(report, OutputStream.nullOutputStream(),
+            null);
+    }
+
+    /**
+     * Marshal the report without indentation.
+     *
+     * @throws JAXBException if marshalling failed.
+     * @throws SAXException never without schema.
+     */
+    @Benchmark
+    public void marshalCompact() throws JAXBException, SAXException {
+        ReportUtils.marshallReport(report, OutputStream.nullOutputStream(),
+            null, false);
+    }
+
+    /**
+     * Marshal the report validating against the IRIX schema.
+     *
+     * @throws JAXBException if marshalling or validation failed.
+     * @throws SAXException if the schema is missing or invalid.
+     */
+    @Benchmark
+    public void marshalValidated() throws JAXBException, SAXException {
+        ReportUtils.marshallReport(report, OutputStream.nullOutputStream(),
+            schema);
+    }
+
+    /**
+     * Unmarshal the XML of the report.
+     *
+     * @return the report.
+     * @throws JAXBException if unmarshalling failed.
+     * @throws SAXException never without schema.
+     * @throws XMLStreamException if the XML cannot be read.
+     * @throws IOException never for an in-memory stream.
+     */
+    @Benchmark
+    public ReportType unmarshal()
+            throws JAXBException, SAXException, XMLStreamException,
+            IOException {
+        try (ByteArrayInputStream in = new ByteArrayInputStream(xml)) {
+            return ReportUtils.unmarshallReport(
+                inputFactory.createXMLStreamReader(in), null);
+        }
+    }
+
+    /**
+     * Unmarshal the XML of the report validating against the IRIX schema.
+     *
+     * @return the report.
+     * @throws JAXBException if unmarshalling or validation failed.
+     * @throws SAXException if the schema is missing or invalid.
+     * @throws XMLStreamException if the XML cannot be read.
+     * @throws IOException never for an in-memory stream.
+     */
+    @Benchmark
+    public ReportType unmarshalValidated()
+            throws JAXBException, SAXException, XMLStreamException,
+            IOException {
+        try (ByteArrayInputStream in = new ByteArrayInputStream(xml)) {
+            return ReportUtils.unmarshallReport(
+                inputFactory.createXMLStreamReader(in), schema);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Stand-in for a mapfish-print service and the servers of external
+ * images.
+ *
+ * Every print app announces the same layouts in its capabilities.json.
+ * buildreport.pdf and buildreport.png answer after a configurable latency
+ * with a document of a configurable size. Images are served below
+ * {@code /img/}.
+ */
+public class StubPrintServer {
+    /** Context path of the print service. */
+    public static final String PRINT_PATH = "/print";
+
+    /** Context path of the images. */
+    public static final String IMAGE_PATH = "/img";
+
+    private static final byte[] PDF_HEADER =
+        "%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PNG_HEADER =
+        {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private final Set<String> apps = ConcurrentHashMap.newKeySet();
+    private final Set<String> layouts = ConcurrentHashMap.newKeySet();
+    private final LongAdder prints = new LongAdder();
+    private final LongAdder images = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final long latencyMs;
+    private final long jitterMs;
+    private final byte[] pdf;
+    private final byte[] png;
+    private volatile double errorRate;
+
+    /**
+     * Create the stub.
+     *
+     * @param printLatencyMs mean time to render a document.
+     * @param printJitterMs  maximum random deviation from the latency.
+     * @param pdfSize        size of the rendered PDF documents in bytes.
+     * @param pngSize        size of the rendered PNG maps and legends and
+     *                       of the images in bytes.
+     */
+    public StubPrintServer(long printLatencyMs, long printJitterMs,
+            int pdfSize, int pngSize) {
+        this.latencyMs = printLatencyMs;
+        this.jitterMs = printJitterMs;
+        this.pdf = document(PDF_HEADER, pdfSize);
+        this.png = document(PNG_HEADER, pngSize);
+    }
+
+    /**
+     * Fail this fraction of the print requests with status 500.
+     *
+     * @param rate the fraction between 0 and 1.
+     */
+    public void setErrorRate(double rate) {
+        this.errorRate = rate;
+    }
+
+    /**
+     * Announce a print app in apps.json.
+     *
+     * Capabilities are served for any app, so this is only needed for
+     * prefetching.
+     *
+     * @param app the name of the print app.
+     */
+    public void addApp(String app) {
+        apps.add(app);
+    }
+
+    /**
+     * Announce a layout in the capabilities of all print apps.
+     *
+     * @param layout the name of the layout.
+     */
+    public void addLayout(String layout) {
+        layouts.add(layout);
+    }
+
+    /**
+     * Start serving.
+     *
+     * @param port    the port, 0 picks a free one.
+     * @param threads number of threads handling requests, i.e. the
+     *                number of documents rendered concurrently.
+     * @throws IOException if the port cannot be bound.
+     */
+    public void start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PRINT_PATH + "/", this::handlePrint);
+        server.createContext(IMAGE_PATH + "/", this::handleImage);
+        executor = Executors.newFixedThreadPool(threads,
+            ThreadPools.newThreadFactory("stub-print"));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** Stop serving. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** @return the base URL of the print service, e.g. for print-url. */
+    public String getPrintUrl() {
+        return "http://localhost:" + server.getAddress().getPort()
+            + PRINT_PATH;
+    }
+
+    /** @return the base URL of the images. */
+    public String getImageUrl() {
+        return "http://localhost:" + server.getAddress().getPort()
+            + IMAGE_PATH;
+    }
+
+    /** @return the number of rendered documents. */
+    public long getPrints() {
+        return prints.sum();
+    }
+
+    /** @return the number of served images. */
+    public long getImages() {
+        return images.sum();
+    }
+
+    /** @return the number of failed print requests. */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    private static byte[] document(byte[] header, int size) {
+        byte[] content = new byte[Math.max(size, header.length)];
+        ThreadLocalRandom.current().nextBytes(content);
+        System.arraycopy(header, 0, content, 0, header.length);
+        return content;
+    }
+
+    private void handlePrint(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String path = exchange.getRequestURI().getPath()
+            .substring(PRINT_PATH.length());
+        if (path.equals("/apps.json")) {
+            send(exchange, HttpURLConnection.HTTP_OK, "application/json",
+                new JSONArray(apps).toString()
+                    .getBytes(StandardCharsets.UTF_8));
+        } else if (path.endsWith("/capabilities.json")) {
+            send(exchange, HttpURLConnection.HTTP_OK, "application/json",
+                capabilities().getBytes(StandardCharsets.UTF_8));
+        } else if (path.endsWith("/buildreport.pdf")) {
+            render(exchange, "application/pdf", pdf);
+        } else if (path.endsWith("/buildreport.png")) {
+            render(exchange, "image/png", png);
+        } else {
+            send(exchange, HttpURLConnection.HTTP_NOT_FOUND, "text/plain",
+                ("No such resource: " + path)
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        images.increment();
+        send(exchange, HttpURLConnection.HTTP_OK, "image/png", png);
+    }
+
+    private String capabilities() {
+        JSONArray layoutList = new JSONArray();
+        for (String name : layouts) {
+            layoutList.put(new JSONObject().put("name", name)
+                .put("attributes", new JSONArray()));
+        }
+        return new JSONObject().put("app", "stub")
+            .put("layouts", layoutList)
+            .put("formats", new JSONArray(Arrays.asList("pdf", "png")))
+            .toString();
+    }
+
+    private void render(HttpExchange exchange, String contentType,
+            byte[] content) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs;
+        if (jitterMs > 0) {
+            delay += random.nextLong(-jitterMs, jitterMs + 1);
+        }
+        try {
+            Thread.sleep(Math.max(0, delay));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (random.nextDouble() < errorRate) {
+            failures.increment();
+            send(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR,
+                "application/json", "{\"error\":\"stub failure\"}"
+                    .getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        prints.increment();
+        send(exchange, HttpURLConnection.HTTP_OK, contentType, content);
+    }
+
+    private static void send(HttpExchange exchange, int status,
+            String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.irix;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the UploadReportInterface of the irix-webservice.
+ *
+ * The WSDL bundled with the application is served with the address of
+ * the stub. Uploads are read completely, plain SOAP and MTOM alike, and
+ * answered with an empty uploadReportResponse after a configurable
+ * latency, or with an UploadReportException fault.
+ */
+public class StubUploadService {
+    /** Path of the upload service, e.g. for irix-webservice-url. */
+    public static final String SERVICE_PATH =
+        "/irix-webservice/upload-report";
+
+    private static final String WSDL =
+        "src/main/webapp/META-INF/upload-report-v1.wsdl";
+
+    private static final String XSD =
+        "src/main/webapp/META-INF/upload-report.xsd";
+
+    private static final String BUNDLED_ADDRESS =
+        "http://localhost:8080/irix-webservice/upload-report";
+
+    private static final String SOAP_CONTENT_TYPE =
+        "text/xml; charset=utf-8";
+
+    private static final byte[] RESPONSE = (
+        "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<S:Body><ns2:uploadReportResponse"
+        + " xmlns:ns2=\"http://irixservice.intevation.de/\"/>"
+        + "</S:Body></S:Envelope>").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] FAULT = (
+        "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<S:Body><S:Fault><faultcode>S:Server</faultcode>"
+        + "<faultstring>stub failure</faultstring><detail>"
+        + "<ns2:UploadReportException"
+        + " xmlns:ns2=\"http://irixservice.intevation.de/\">"
+        + "<message>stub failure</message></ns2:UploadReportException>"
+        + "</detail></S:Fault></S:Body></S:Envelope>")
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+
+    private final long latencyMs;
+    private final long jitterMs;
+    private volatile double errorRate;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private byte[] wsdl;
+    private byte[] xsd;
+
+    /**
+     * Create the stub.
+     *
+     * @param uploadLatencyMs mean time to accept an upload.
+     * @param uploadJitterMs  maximum random deviation from the latency.
+     */
+    public StubUploadService(long uploadLatencyMs, long uploadJitterMs) {
+        this.latencyMs = uploadLatencyMs;
+        this.jitterMs = uploadJitterMs;
+    }
+
+    /**
+     * Answer this fraction of the uploads with a fault.
+     *
+     * @param rate the fraction between 0 and 1.
+     */
+    public void setErrorRate(double rate) {
+        this.errorRate = rate;
+    }
+
+    /**
+     * Start serving.
+     *
+     * @param port    the port, 0 picks a free one.
+     * @param threads number of threads handling requests.
+     * @throws IOException if the WSDL cannot be read or the port cannot
+     *                     be bound.
+     */
+    public void start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(SERVICE_PATH, this::handle);
+        executor = Executors.newFixedThreadPool(threads,
+            ThreadPools.newThreadFactory("stub-upload"));
+        server.setExecutor(executor);
+        server.start();
+        wsdl = Files.readString(Path.of(WSDL), StandardCharsets.UTF_8)
+            .replace(BUNDLED_ADDRESS, getUrl())
+            .replace("schemaLocation=\"upload-report.xsd\"",
+                "schemaLocation=\"" + getUrl() + "?xsd=1\"")
+            .getBytes(StandardCharsets.UTF_8);
+        xsd = Files.readAllBytes(Path.of(XSD));
+    }
+
+    /** Stop serving. */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** @return the URL of the service. */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort()
+            + SERVICE_PATH;
+    }
+
+    /** @return the number of accepted uploads. */
+    public long getUploads() {
+        return uploads.sum();
+    }
+
+    /** @return the number of uploads answered with a fault. */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /** @return the number of bytes received with uploads. */
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        if ("GET".equals(exchange.getRequestMethod())) {
+            if ("wsdl".equalsIgnoreCase(query)) {
+                send(exchange, HttpURLConnection.HTTP_OK, wsdl);
+            } else if (query != null && query.startsWith("xsd")) {
+                send(exchange, HttpURLConnection.HTTP_OK, xsd);
+            } else {
+                send(exchange, HttpURLConnection.HTTP_NOT_FOUND, new byte[0]);
+            }
+            return;
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            receivedBytes.add(in.transferTo(OutputStream.nullOutputStream()));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs;
+        if (jitterMs > 0) {
+            delay += random.nextLong(-jitterMs, jitterMs + 1);
+        }
+        try {
+            Thread.sleep(Math.max(0, delay));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (random.nextDouble() < errorRate) {
+            failures.increment();
+            send(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, FAULT);
+            return;
+        }
+        uploads.increment();
+        send(exchange, HttpURLConnection.HTTP_OK, RESPONSE);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", SOAP_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.AsyncRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncRequestTest {
+    static final long TIMEOUT_S = 10;
+    static final int STALL = 'x';
+
+    private ByteArrayOutputStream body;
+    private AtomicInteger status;
+    private AtomicInteger completions;
+    private AsyncContext context;
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        body = new ByteArrayOutputStream();
+        status = new AtomicInteger();
+        completions = new AtomicInteger();
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                if (b == STALL) {
+                    // a client that stopped reading
+                    writing.countDown();
+                    try {
+                        stalled.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException("interrupted");
+                    }
+                }
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        HttpServletResponse response = (HttpServletResponse)
+            Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return out;
+                        case "sendError":
+                            status.set((Integer) args[0]);
+                            return null;
+                        case "isCommitted":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+        context = (AsyncContext) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {AsyncContext.class},
+            (p, method, args) -> {
+                switch (method.getName()) {
+                    case "getResponse":
+                        return response;
+                    case "complete":
+                        completions.incrementAndGet();
+                        return null;
+                    case "getTimeout":
+                        return 0L;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    @Test
+    public void testCompleted() {
+        new AsyncRequest(context, (request, response) ->
+            response.getOutputStream().write(
+                "done".getBytes(StandardCharsets.US_ASCII))).run();
+        Assert.assertEquals("done",
+            new String(body.toByteArray(), StandardCharsets.US_ASCII));
+        Assert.assertEquals(1, completions.get());
+        Assert.assertEquals(0, status.get());
+    }
+
+    @Test
+    public void testTimeoutFencesWorker() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicReference<IOException> lateWrite =
+            new AtomicReference<IOException>();
+        AsyncRequest asyncRequest = new AsyncRequest(context,
+            (request, response) -> {
+                ServletOutputStream out = response.getOutputStream();
+                out.write('a');
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                try {
+                    out.write('b');
+                } catch (IOException e) {
+                    lateWrite.set(e);
+                    throw e;
+                }
+            });
+        Thread worker = new Thread(asyncRequest);
+        worker.start();
+        Assert.assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        asyncRequest.onTimeout(null);
+        Assert.assertTrue(interrupted.await(TIMEOUT_S, TimeUnit.SECONDS));
+        worker.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+
+        Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+            status.get());
+        Assert.assertNotNull("write after timeout fails", lateWrite.get());
+        Assert.assertEquals("a",
+            new String(body.toByteArray(), StandardCharsets.US_ASCII));
+        Assert.assertEquals(1, completions.get());
+    }
+
+    @Test
+    public void testTimeoutDuringStalledWrite() throws Exception {
+        AtomicReference<IOException> failedWrite =
+            new AtomicReference<IOException>();
+        AsyncRequest asyncRequest = new AsyncRequest(context,
+            (request, response) -> {
+                try {
+                    response.getOutputStream().write(STALL);
+                } catch (IOException e) {
+                    failedWrite.set(e);
+                    throw e;
+                }
+            });
+        Thread worker = new Thread(asyncRequest);
+        worker.start();
+        Assert.assertTrue(writing.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+        Thread timeout = new Thread(() -> asyncRequest.onTimeout(null));
+        timeout.start();
+        timeout.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+        Assert.assertFalse("timeout does not wait for the write",
+            timeout.isAlive());
+        Assert.assertEquals(1, completions.get());
+
+        worker.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+        Assert.assertFalse(worker.isAlive());
+        Assert.assertNotNull("stalled write interrupted", failedWrite.get());
+        Assert.assertEquals(1, completions.get());
+    }
+}
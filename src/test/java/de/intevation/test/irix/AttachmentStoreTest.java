@@ -0,0 +1,182 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.AttachmentStore;
+import de.intevation.irix.Digests;
+import de.intevation.irix.Payload;
+import de.intevation.irix.PayloadSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AttachmentStoreTest {
+    static final int THRESHOLD = 1024;
+    static final int LARGE_SIZE = 100000;
+    static final int FAR_COMMA = 4096;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] sha1(byte[] data) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-1").digest(data);
+    }
+
+    private static byte[] largeData() {
+        byte[] data = new byte[LARGE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private AttachmentStore newStore() {
+        return new AttachmentStore(THRESHOLD, tmp.getRoot().toPath());
+    }
+
+    @Test
+    public void testDataUri() throws Exception {
+        byte[] data = "Hello IRIX".getBytes(StandardCharsets.UTF_8);
+        try (AttachmentStore store = newStore()) {
+            Payload content = store.storeBase64("data:text/plain;base64,"
+                + Base64.getEncoder().encodeToString(data));
+            Assert.assertTrue(content.isInMemory());
+            Assert.assertArrayEquals(data, content.toByteArray());
+            Assert.assertArrayEquals(sha1(data), content.getDigest());
+        }
+    }
+
+    @Test
+    public void testPrefixes() throws IOException {
+        try (AttachmentStore store = newStore()) {
+            Assert.assertEquals("Hi", new String(store.storeBase64(
+                "DATA:text/plain;base64,SGk=").toByteArray(),
+                StandardCharsets.UTF_8));
+            Assert.assertEquals("Hi", new String(store.storeBase64(
+                "image/png;base64,SGk=").toByteArray(),
+                StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testLongValueWithoutPrefix() throws IOException {
+        String value = Base64.getEncoder().encodeToString(largeData());
+        try (AttachmentStore store = newStore()) {
+            store.storeBase64(value.substring(0, FAR_COMMA) + ","
+                + value.substring(FAR_COMMA));
+            Assert.fail("only the start of a value is searched for a comma");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("base64"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDataUriWithoutPayload() throws IOException {
+        try (AttachmentStore store = newStore()) {
+            store.storeBase64("Data:image/png;base64");
+        }
+    }
+
+    @Test
+    public void testClosedOnFailure() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        StringReader value = new StringReader("data:image/png;base64") {
+            @Override
+            public void close() {
+                closed.set(true);
+                super.close();
+            }
+        };
+        try (AttachmentStore store = newStore()) {
+            PayloadSink sink = store.newSink();
+            try {
+                sink.writeBase64(value);
+                Assert.fail("IOException expected");
+            } catch (IOException e) {
+                Assert.assertTrue(closed.get());
+            }
+        }
+    }
+
+    @Test
+    public void testUnpadded() throws IOException {
+        try (AttachmentStore store = newStore()) {
+            Payload content = store.storeBase64("SGk");
+            Assert.assertEquals("Hi", new String(content.toByteArray(),
+                StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() throws IOException {
+        try (AttachmentStore store = newStore()) {
+            store.storeBase64("data:image/png;base64,no base64!");
+        }
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        byte[] data = largeData();
+        try (AttachmentStore store = newStore()) {
+            Payload content = store.storeBase64(
+                Base64.getEncoder().encodeToString(data));
+            Assert.assertFalse(content.isInMemory());
+            Assert.assertEquals(LARGE_SIZE, content.size());
+            Assert.assertArrayEquals(sha1(data), content.getDigest());
+            Assert.assertEquals(1, tmp.getRoot().list().length);
+            try (InputStream in = content.toDataHandler("image/png")
+                    .getInputStream()) {
+                Assert.assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+        Assert.assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        byte[] data = largeData();
+        try (AttachmentStore store = newStore()) {
+            Payload content = store.store(out -> out.write(data));
+            Assert.assertArrayEquals(data, content.toByteArray());
+            Assert.assertArrayEquals(sha1(data), content.getDigest());
+        }
+    }
+
+    @Test
+    public void testAlgorithm() throws Exception {
+        byte[] data = largeData();
+        String algorithm = Digests.checkAlgorithm("sha-256");
+        try (AttachmentStore store = new AttachmentStore(THRESHOLD,
+                tmp.getRoot().toPath(), algorithm)) {
+            for (int i = 0; i < 2; i++) {
+                Payload content = store.store(out -> out.write(data));
+                Assert.assertEquals("SHA-256", content.getAlgorithm());
+                Assert.assertArrayEquals(
+                    MessageDigest.getInstance("SHA-256").digest(data),
+                    content.getDigest());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedAlgorithm() {
+        Digests.checkAlgorithm("MD5");
+    }
+}
@@ -0,0 +1,168 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.BackendGuard;
+import de.intevation.irix.BackendUnavailableException;
+import de.intevation.irix.ImageClient;
+import de.intevation.irix.ImageException;
+import de.intevation.irix.OutboundHttp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BackendGuardTest {
+    static final int THRESHOLD = 3;
+    static final long OPEN_MS = 50;
+    static final long QUEUE_MS = 10;
+    static final int MAX_CONCURRENT = 2;
+    static final int TIMEOUT = 5000;
+    static final int HTTP_ERROR = 500;
+
+    private HttpServer server;
+
+    @After
+    public void reset() {
+        OutboundHttp.configureGuards(OutboundHttp.DEFAULT_QUEUE_TIMEOUT_MS,
+            OutboundHttp.DEFAULT_FAILURE_THRESHOLD,
+            OutboundHttp.DEFAULT_OPEN_S);
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static void fail(BackendGuard guard, int times)
+            throws Exception {
+        for (int i = 0; i < times; i++) {
+            guard.release(guard.acquire(), false);
+        }
+    }
+
+    private static void assertRejected(BackendGuard guard) throws Exception {
+        try {
+            guard.release(guard.acquire(), true);
+            Assert.fail("BackendUnavailableException expected");
+        } catch (BackendUnavailableException e) {
+            Assert.assertTrue(e.getMessage().contains("print:8080"));
+        }
+    }
+
+    @Test
+    public void testOpensAndRecovers() throws Exception {
+        BackendGuard guard = new BackendGuard("print:8080", MAX_CONCURRENT,
+            QUEUE_MS, THRESHOLD, OPEN_MS);
+        fail(guard, THRESHOLD - 1);
+        guard.release(guard.acquire(), true);
+        fail(guard, THRESHOLD - 1);
+        Assert.assertEquals("successes reset the count",
+            BackendGuard.State.CLOSED, guard.getState());
+        fail(guard, 1);
+        Assert.assertEquals(BackendGuard.State.OPEN, guard.getState());
+        assertRejected(guard);
+
+        Thread.sleep(OPEN_MS + 1);
+        Assert.assertTrue(guard.acquire());
+        Assert.assertEquals(BackendGuard.State.HALF_OPEN, guard.getState());
+        assertRejected(guard);
+        guard.release(true, true);
+        Assert.assertEquals(BackendGuard.State.CLOSED, guard.getState());
+        guard.release(guard.acquire(), true);
+        Assert.assertEquals(2, guard.getRejections());
+    }
+
+    @Test
+    public void testFailedProbe() throws Exception {
+        BackendGuard guard = new BackendGuard("print:8080", MAX_CONCURRENT,
+            QUEUE_MS, THRESHOLD, OPEN_MS);
+        fail(guard, THRESHOLD);
+        Thread.sleep(OPEN_MS + 1);
+        fail(guard, 1);
+        Assert.assertEquals(BackendGuard.State.OPEN, guard.getState());
+        assertRejected(guard);
+    }
+
+    @Test
+    public void testStaleOutcomes() throws Exception {
+        BackendGuard guard = new BackendGuard("print:8080",
+            MAX_CONCURRENT * 2, QUEUE_MS, THRESHOLD, OPEN_MS);
+        // admitted while the circuit was still closed
+        boolean slow = guard.acquire();
+        boolean stale = guard.acquire();
+        fail(guard, THRESHOLD);
+        guard.release(slow, true);
+        Assert.assertEquals("a stale success does not close the circuit",
+            BackendGuard.State.OPEN, guard.getState());
+
+        Thread.sleep(OPEN_MS + 1);
+        boolean probe = guard.acquire();
+        Assert.assertTrue(probe);
+        guard.release(stale, false);
+        Assert.assertEquals("a stale failure does not reopen the circuit",
+            BackendGuard.State.HALF_OPEN, guard.getState());
+        guard.release(probe, true);
+        Assert.assertEquals(BackendGuard.State.CLOSED, guard.getState());
+    }
+
+    @Test
+    public void testBulkhead() throws Exception {
+        BackendGuard guard = new BackendGuard("print:8080", MAX_CONCURRENT,
+            QUEUE_MS, 0, OPEN_MS);
+        for (int i = 0; i < MAX_CONCURRENT; i++) {
+            guard.acquire();
+        }
+        assertRejected(guard);
+        guard.release(false, false);
+        guard.acquire();
+        for (int i = 0; i < MAX_CONCURRENT; i++) {
+            guard.release(false, false);
+        }
+        fail(guard, THRESHOLD);
+        Assert.assertEquals("threshold 0 never opens",
+            BackendGuard.State.CLOSED, guard.getState());
+    }
+
+    @Test
+    public void testImageHostFailsFast() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/img", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(HTTP_ERROR, -1);
+            exchange.close();
+        });
+        server.start();
+        OutboundHttp.configureGuards(QUEUE_MS, THRESHOLD,
+            OutboundHttp.DEFAULT_OPEN_S);
+        String url = "http://localhost:" + server.getAddress().getPort()
+            + "/img";
+        for (int i = 0; i <= THRESHOLD; i++) {
+            try {
+                ImageClient.getImage(url, TIMEOUT);
+                Assert.fail("ImageException expected");
+            } catch (ImageException e) {
+                if (i == THRESHOLD) {
+                    Assert.assertTrue(e.getMessage().contains("unavailable"));
+                }
+            } catch (IOException e) {
+                Assert.fail(e.toString());
+            }
+        }
+        Assert.assertEquals(THRESHOLD, requests.get());
+        Assert.assertEquals(1, OutboundHttp.getOpenCircuits());
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.BatchResponse;
+import de.intevation.irix.Payload;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchResponseTest {
+    static final int OK = 200;
+    static final int SERVER_ERROR = 500;
+    static final int ITEMS = 3;
+    static final String HEADER_END = "\r\n\r\n";
+
+    private static Payload text(String content) {
+        return Payload.of(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String write(BatchResponse response) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStatusArray() throws Exception {
+        BatchResponse response = new BatchResponse(List.of(
+            new BatchResponse.Item(0, false, OK, "text/html", text(""), null),
+            new BatchResponse.Item(1, false, SERVER_ERROR, "text/plain",
+                text("Upload failed"), null),
+            new BatchResponse.Item(2, false, SERVER_ERROR, null, null,
+                "Unknown request-type: foo")));
+
+        Assert.assertFalse(response.isMultipart());
+        Assert.assertEquals("application/json", response.getContentType());
+        JSONArray status = new JSONArray(write(response));
+        Assert.assertEquals(ITEMS, status.length());
+        Assert.assertEquals("done", status.getJSONObject(0).getString("status"));
+        Assert.assertFalse(status.getJSONObject(0).has("message"));
+        JSONObject failed = status.getJSONObject(1);
+        Assert.assertEquals("failed", failed.getString("status"));
+        Assert.assertEquals(SERVER_ERROR, failed.getInt("httpStatus"));
+        Assert.assertEquals("Upload failed", failed.getString("message"));
+        Assert.assertEquals("Unknown request-type: foo",
+            status.getJSONObject(2).getString("message"));
+    }
+
+    @Test
+    public void testMultipart() throws Exception {
+        BatchResponse response = new BatchResponse(List.of(
+            new BatchResponse.Item(0, false, OK, "text/html", text(""), null),
+            new BatchResponse.Item(1, true, OK, "application/xml",
+                text("<report/>"), null)));
+
+        Assert.assertTrue(response.isMultipart());
+        String type = response.getContentType();
+        Assert.assertTrue(type.startsWith("multipart/mixed; boundary="));
+        String boundary = type.substring(type.indexOf('=') + 1);
+
+        String body = write(response);
+        String[] parts = body.split("\r\n--" + boundary);
+        Assert.assertTrue(body.startsWith("--" + boundary + "\r\n"));
+        Assert.assertTrue(body.endsWith("--" + boundary + "--\r\n"));
+        // status part, report part and the closing delimiter
+        Assert.assertEquals(ITEMS, parts.length);
+
+        String statusPart = parts[0];
+        JSONArray status = new JSONArray(
+            statusPart.substring(statusPart.indexOf(HEADER_END)
+                + HEADER_END.length()));
+        Assert.assertFalse(status.getJSONObject(0).has("part"));
+        Assert.assertEquals("item-1",
+            status.getJSONObject(1).getString("part"));
+
+        String reportPart = parts[1];
+        Assert.assertTrue(reportPart.contains(
+            "Content-Type: application/xml\r\n"));
+        Assert.assertTrue(reportPart.contains("Content-ID: <item-1>\r\n"));
+        Assert.assertTrue(reportPart.contains("X-IRIX-Status: 200\r\n"));
+        Assert.assertTrue(reportPart.endsWith("\r\n\r\n<report/>"));
+    }
+}
@@ -0,0 +1,130 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.CapabilitiesCache;
+import de.intevation.irix.PrintException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CapabilitiesCacheTest {
+    static final int TTL = 60;
+    static final int TIMEOUT = 5000;
+    static final int HTTP_OK = 200;
+    static final int LOOKUPS = 3;
+
+    static final String CAPABILITIES =
+        "{\"app\":\"test\",\"layouts\":[{\"name\":\"A4 hoch\"},"
+        + "{\"name\":\"A4 quer\"}]}";
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private AtomicReference<String> served =
+        new AtomicReference<String>(CAPABILITIES);
+    private CapabilitiesCache cache;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/print/test/capabilities.json", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = served.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set(
+                "Content-Type", "application/json");
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        cache = new CapabilitiesCache(TTL, TIMEOUT);
+    }
+
+    @After
+    public void stopServer() {
+        cache.shutdown();
+        server.stop(0);
+    }
+
+    private String capabilitiesUrl() {
+        return "http://localhost:" + server.getAddress().getPort()
+            + "/print/test/capabilities.json";
+    }
+
+    @Test
+    public void testLayoutNames() {
+        Set<String> names = CapabilitiesCache.layoutNames(
+            new JSONObject(CAPABILITIES));
+        Assert.assertEquals(Set.of("A4 hoch", "A4 quer"), names);
+        Assert.assertTrue(CapabilitiesCache.layoutNames(
+            new JSONObject("{}")).isEmpty());
+    }
+
+    @Test
+    public void testFetchedOnce() throws IOException, PrintException {
+        for (int i = 0; i < LOOKUPS; i++) {
+            Assert.assertTrue(cache.getLayouts(capabilitiesUrl())
+                .contains("A4 quer"));
+        }
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(LOOKUPS - 1, cache.getHits());
+    }
+
+    @Test
+    public void testExpired() throws IOException, PrintException {
+        CapabilitiesCache noCache = new CapabilitiesCache(0, TIMEOUT);
+        try {
+            noCache.getLayouts(capabilitiesUrl());
+            noCache.getLayouts(capabilitiesUrl());
+            Assert.assertEquals(2, requests.get());
+        } finally {
+            noCache.shutdown();
+        }
+    }
+
+    @Test
+    public void testChangeListener() throws IOException, PrintException {
+        CapabilitiesCache noCache = new CapabilitiesCache(0, TIMEOUT);
+        List<String> changed = new CopyOnWriteArrayList<String>();
+        noCache.addChangeListener(changed::add);
+        try {
+            noCache.getLayouts(capabilitiesUrl());
+            served.set("{\"layouts\":[{\"name\":\"A4 hoch\"},"
+                + "{\"name\":\"A4 quer\"}],\"app\":\"test\"}");
+            noCache.getLayouts(capabilitiesUrl());
+            Assert.assertTrue("same capabilities, other key order", changed.isEmpty());
+            served.set("{\"app\":\"test\",\"layouts\":[{\"name\":\"A3\"}]}");
+            Assert.assertEquals(Set.of("A3"),
+                noCache.getLayouts(capabilitiesUrl()));
+            Assert.assertEquals(List.of(capabilitiesUrl()), changed);
+        } finally {
+            noCache.shutdown();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.CompressingResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompressingResponseTest {
+    static final int THRESHOLD = 64;
+    static final int LARGE = 10000;
+
+    private ByteArrayOutputStream body;
+    private Map<String, Object> headers;
+    private HttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        body = new ByteArrayOutputStream();
+        headers = new HashMap<String, Object>();
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        response = (HttpServletResponse) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {HttpServletResponse.class},
+            (p, method, args) -> {
+                switch (method.getName()) {
+                    case "getOutputStream":
+                        return out;
+                    case "setHeader":
+                    case "addHeader":
+                        headers.put((String) args[0], args[1]);
+                        return null;
+                    case "setContentLength":
+                        headers.put("Content-Length", args[0]);
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    @Test
+    public void testNegotiate() {
+        Assert.assertNull(CompressingResponse.negotiate(null));
+        Assert.assertNull(CompressingResponse.negotiate("identity"));
+        Assert.assertNull(CompressingResponse.negotiate("gzip;q=0, br"));
+        Assert.assertEquals("gzip",
+            CompressingResponse.negotiate("deflate, gzip"));
+        Assert.assertEquals("gzip", CompressingResponse.negotiate("*"));
+        Assert.assertEquals("deflate",
+            CompressingResponse.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals("deflate",
+            CompressingResponse.negotiate("*, gzip;q=0"));
+    }
+
+    @Test
+    public void testSmallBodyUncompressed() throws Exception {
+        CompressingResponse compressing =
+            new CompressingResponse(response, "gzip", THRESHOLD);
+        byte[] content = "<Report/>".getBytes(StandardCharsets.UTF_8);
+        compressing.getOutputStream().write(content);
+        compressing.getOutputStream().flush();
+        Assert.assertEquals("Buffered until finished", 0, body.size());
+        compressing.finish();
+
+        Assert.assertFalse(compressing.isCompressed());
+        Assert.assertArrayEquals(content, body.toByteArray());
+        Assert.assertEquals(content.length, headers.get("Content-Length"));
+        Assert.assertNull(headers.get("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", headers.get("Vary"));
+    }
+
+    @Test
+    public void testLargeBodyGzip() throws Exception {
+        CompressingResponse compressing =
+            new CompressingResponse(response, "gzip", THRESHOLD);
+        StringBuilder report = new StringBuilder("<Report>");
+        for (int i = 0; i < LARGE; i++) {
+            report.append("<annex>").append(i).append("</annex>");
+        }
+        report.append("</Report>");
+        byte[] content = report.toString().getBytes(StandardCharsets.UTF_8);
+        OutputStream out = compressing.getOutputStream();
+        for (byte b : content) {
+            out.write(b);
+        }
+        compressing.finish();
+
+        Assert.assertTrue(compressing.isCompressed());
+        Assert.assertEquals("gzip", headers.get("Content-Encoding"));
+        Assert.assertNull(headers.get("Content-Length"));
+        Assert.assertTrue(body.size() < content.length);
+        try (GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(body.toByteArray()))) {
+            Assert.assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import com.sun.net.httpserver.HttpServer;
+
+import de.intevation.irix.BackendGuard;
+import de.intevation.irix.BaseServletContextListener;
+import de.intevation.irix.IRIXClient;
+import de.intevation.irix.JobRegistry;
+import de.intevation.irix.OutboundHttp;
+import de.intevation.irix.ReportUtils;
+import de.intevation.irix.UploadServiceClient;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.iaea._2012.irix.format.ReportType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Fires many parallel POST requests against one servlet instance and
+ * checks that every response only contains the user and the attachment
+ * of its own request.
+ */
+public class ConcurrentRequestsTest {
+    static final int REQUESTS = 200;
+    static final int CLIENT_THREADS = 32;
+    static final int BACKEND_THREADS = 16;
+    static final int MAX_BACKEND_DELAY_MS = 5;
+    static final long TIMEOUT_S = 120;
+    static final long PREFETCH_WAIT_MS = 200;
+    static final int OK = 200;
+    static final int ACCEPTED = 202;
+    static final int HTTP_NOT_FOUND = 404;
+    static final int UNAVAILABLE = 503;
+    static final String USER_HEADER = "X-Test-User";
+    static final String DISPLAYNAME_HEADER = "X-Test-Displayname";
+    static final Pattern USER_PATTERN = Pattern.compile("user-\\d{4}");
+
+    private HttpServer backend;
+    private String backendUrl;
+    private TestClient client;
+    private ServletContext servletContext;
+    private final Map<String, String> params = new HashMap<String, String>();
+    private final CountDownLatch slowBackend = new CountDownLatch(1);
+    private final AtomicInteger printRequests = new AtomicInteger();
+
+    /** IRIXClient skipping schema validation if the schemas are missing. */
+    static class TestClient extends IRIXClient {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void init() throws jakarta.servlet.ServletException {
+            super.init();
+            if (!irixSchemaFile.exists()) {
+                irixSchemaFile = null;
+            }
+            if (!dokpoolSchemaFile.exists()) {
+                dokpoolSchemaFile = null;
+            }
+        }
+
+        void retryQueued(Path file) throws Exception {
+            uploadQueued(file);
+        }
+
+        String prometheus() throws IOException {
+            StringWriter out = new StringWriter();
+            metrics.writePrometheus(out);
+            return out.toString();
+        }
+
+        /** Load the WSDL now and stop fetching it in the background. */
+        void loadWsdl() throws ServletException {
+            uploadService.shutdown();
+            uploadService.refresh();
+        }
+    }
+
+    private static String token(int n) {
+        return String.format("%04d", n);
+    }
+
+    private static Object proxy(Class<?> type, Map<String, Object> answers) {
+        return Proxy.newProxyInstance(
+            ConcurrentRequestsTest.class.getClassLoader(),
+            new Class<?>[] {type},
+            (p, method, args) -> {
+                Object answer = answers.get(method.getName());
+                if (answer instanceof Handler) {
+                    return ((Handler) answer).handle(args);
+                }
+                if (answer != null) {
+                    return answer;
+                }
+                Class<?> ret = method.getReturnType();
+                if (ret == boolean.class) {
+                    return false;
+                }
+                if (ret == int.class) {
+                    return 0;
+                }
+                if (ret == long.class) {
+                    return 0L;
+                }
+                return null;
+            });
+    }
+
+    /** Answer of a proxied method depending on its arguments. */
+    interface Handler {
+        Object handle(Object[] args) throws Exception;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        backend = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        backend.createContext("/img/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = ("image-" + path.substring(path.lastIndexOf('/') + 1))
+                .getBytes(StandardCharsets.UTF_8);
+            try {
+                Thread.sleep(ThreadLocalRandom.current()
+                    .nextInt(MAX_BACKEND_DELAY_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        backend.createContext("/print/", exchange -> {
+            printRequests.incrementAndGet();
+            exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+            exchange.close();
+        });
+        backend.createContext("/slow/", exchange -> {
+            try {
+                slowBackend.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+            exchange.close();
+        });
+        backend.setExecutor(Executors.newFixedThreadPool(BACKEND_THREADS));
+        backend.start();
+        backendUrl = "http://127.0.0.1:" + backend.getAddress().getPort();
+
+        params.put("print-url", backendUrl + "/print");
+        params.put("print-prefetch-apps", "");
+        params.put("legend-layout-suffix", "_legend");
+        params.put("map-layout-suffix", "_map");
+        params.put("irix-webservice-url", backendUrl + "/upload-report");
+        params.put("irix-webservice-wsdl-tmpfile",
+            Files.createTempFile("upload-report", ".wsdl").toString());
+        params.put("irix-webservice-wsdl-ttl-s", "0");
+        params.put("user-header", USER_HEADER);
+        params.put("user-displayname-header", DISPLAYNAME_HEADER);
+        params.put("keep-request-headers", "false");
+        // requests are processed on the calling test threads
+        params.put("request-threads", "0");
+
+        Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+        Map<String, Object> contextAnswers = new HashMap<String, Object>();
+        contextAnswers.put("getAttribute", (Handler) a -> attributes.get(a[0]));
+        contextAnswers.put("setAttribute", (Handler) a -> {
+            attributes.put((String) a[0], a[1]);
+            return null;
+        });
+        contextAnswers.put("getRealPath", (Handler) a ->
+            new File("src/main/webapp", (String) a[0]).getPath());
+        contextAnswers.put("getResource", (Handler) a ->
+            new File("src/main/webapp", (String) a[0]).toURI().toURL());
+        servletContext = (ServletContext) proxy(ServletContext.class,
+            contextAnswers);
+        startClient();
+    }
+
+    private void startClient() throws ServletException {
+        Map<String, Object> configAnswers = new HashMap<String, Object>();
+        configAnswers.put("getInitParameter", (Handler) a -> params.get(a[0]));
+        configAnswers.put("getInitParameterNames", (Handler) a ->
+            Collections.enumeration(params.keySet()));
+        configAnswers.put("getServletContext", servletContext);
+        configAnswers.put("getServletName", "IRIXClient");
+
+        client = new TestClient();
+        client.init((ServletConfig) proxy(ServletConfig.class, configAnswers));
+    }
+
+    private void stopClient() {
+        client.destroy();
+        new BaseServletContextListener().contextDestroyed(
+            new ServletContextEvent(servletContext));
+    }
+
+    @After
+    public void tearDown() {
+        slowBackend.countDown();
+        stopClient();
+        backend.stop(0);
+    }
+
+    private String requestBody(int n, String imagePath) throws IOException {
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(
+            Path.of("examples/img-test_respond.json")),
+            StandardCharsets.UTF_8));
+        json.put("request-type", "respond");
+        JSONObject spec = new JSONObject();
+        spec.put("mimetype", "image/png");
+        spec.put("inputFormat", "png");
+        spec.put("outputFormat", "png");
+        spec.put("metadata", new JSONArray());
+        spec.put("url", backendUrl + imagePath + token(n));
+        json.put("img-print", new JSONArray().put(spec));
+        return json.toString();
+    }
+
+    /** Run one POST request and return the status and body. */
+    private String[] post(int n) throws Exception {
+        return post(n, "/img/", false);
+    }
+
+    /**
+     * Run one POST request and return the status and body.
+     *
+     * @param imagePath path of the image on the backend.
+     * @param job true to send the request as background job.
+     */
+    private String[] post(int n, String imagePath, boolean job)
+            throws Exception {
+        String body = requestBody(n, imagePath);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(USER_HEADER, "uid-" + token(n));
+        headers.put(DISPLAYNAME_HEADER, "user-" + token(n));
+        if (job) {
+            headers.put("Prefer", "respond-async");
+        }
+
+        Map<String, Object> requestAnswers = new HashMap<String, Object>();
+        requestAnswers.put("getMethod", "POST");
+        requestAnswers.put("getReader",
+            new BufferedReader(new StringReader(body)));
+        requestAnswers.put("getHeader", (Handler) a -> headers.get(a[0]));
+        requestAnswers.put("getHeaders", (Handler) a -> {
+            List<String> values = new ArrayList<String>();
+            if (headers.containsKey(a[0])) {
+                values.add(headers.get(a[0]));
+            }
+            return Collections.enumeration(values);
+        });
+        requestAnswers.put("getHeaderNames", (Handler) a ->
+            Collections.enumeration(headers.keySet()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        PrintWriter writer = new PrintWriter(out);
+        int[] status = {OK};
+        Map<String, Object> responseAnswers = new HashMap<String, Object>();
+        responseAnswers.put("getOutputStream", out);
+        responseAnswers.put("getWriter", writer);
+        responseAnswers.put("setStatus", (Handler) a -> {
+            status[0] = (Integer) a[0];
+            return null;
+        });
+        responseAnswers.put("getStatus", (Handler) a -> status[0]);
+        responseAnswers.put("sendError", (Handler) a -> {
+            status[0] = (Integer) a[0];
+            return null;
+        });
+
+        client.doPost(
+            (HttpServletRequest) proxy(HttpServletRequest.class,
+                requestAnswers),
+            (HttpServletResponse) proxy(HttpServletResponse.class,
+                responseAnswers));
+        writer.flush();
+        return new String[] {
+            Integer.toString(status[0]),
+            bytes.toString(StandardCharsets.UTF_8)
+        };
+    }
+
+    @Test
+    public void testNoStateCrossesRequests() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENT_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            int n = i;
+            results.add(pool.submit(() -> {
+                start.await();
+                return post(n);
+            }));
+        }
+        start.countDown();
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                String[] result = results.get(i).get(TIMEOUT_S,
+                    TimeUnit.SECONDS);
+                Assert.assertEquals(result[1], Integer.toString(OK),
+                    result[0]);
+                String xml = result[1];
+
+                Matcher users = USER_PATTERN.matcher(xml);
+                int found = 0;
+                while (users.find()) {
+                    Assert.assertEquals("Foreign user in response " + i,
+                        "user-" + token(i), users.group());
+                    found++;
+                }
+                Assert.assertTrue("Missing user in response " + i,
+                    found > 0);
+                String image = Base64.getEncoder().encodeToString(
+                    ("image-" + token(i)).getBytes(StandardCharsets.UTF_8));
+                Assert.assertTrue("Missing attachment in response " + i,
+                    xml.contains(image));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueuedUploadGuarded() throws Exception {
+        client.loadWsdl();
+        BackendGuard guard = OutboundHttp.guard(
+            URI.create(backendUrl + "/upload-report"));
+        for (int i = 0; i < OutboundHttp.DEFAULT_FAILURE_THRESHOLD; i++) {
+            guard.release(guard.acquire(), false);
+        }
+        Path file = Files.createTempFile("queued", ".xml");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ReportUtils.marshallReport(new ReportType(), out, null);
+        }
+        try {
+            // more attempts than proxies: each one gives its proxy back
+            for (int i = 0; i <= UploadServiceClient.DEFAULT_POOL_SIZE; i++) {
+                try {
+                    client.retryQueued(file);
+                    Assert.fail("ServletException expected");
+                } catch (ServletException e) {
+                    Assert.assertTrue(e.getMessage(),
+                        e.getMessage().contains("unavailable"));
+                }
+            }
+        } finally {
+            Files.delete(file);
+            // drop the open circuit
+            OutboundHttp.configureGuards(
+                OutboundHttp.DEFAULT_QUEUE_TIMEOUT_MS,
+                OutboundHttp.DEFAULT_FAILURE_THRESHOLD,
+                OutboundHttp.DEFAULT_OPEN_S);
+        }
+    }
+
+    @Test
+    public void testCacheMetrics() throws Exception {
+        String metrics = client.prometheus();
+        for (String name : new String[] {
+                "irix_capabilities_cache_hits_total",
+                "irix_capabilities_cache_refresh_failures_total",
+                "irix_schema_cache_hits_total",
+                "irix_schema_compiles_total",
+                "irix_schema_compile_seconds_total"}) {
+            Assert.assertTrue(name, metrics.contains("\n" + name + " "));
+        }
+    }
+
+    @Test
+    public void testRejectedJobRemoved() throws Exception {
+        stopClient();
+        // one job running, one waiting, the next is rejected
+        params.put("request-threads", "1");
+        params.put("request-queue-size", "1");
+        startClient();
+        JobRegistry jobs = (JobRegistry) servletContext.getAttribute(
+            JobRegistry.class.getName());
+
+        Assert.assertEquals(Integer.toString(ACCEPTED),
+            post(0, "/slow/", true)[0]);
+        Assert.assertEquals(Integer.toString(ACCEPTED),
+            post(1, "/slow/", true)[0]);
+        for (int i = 2; i < 2 + 2; i++) {
+            Assert.assertEquals(Integer.toString(UNAVAILABLE),
+                post(i, "/slow/", true)[0]);
+        }
+        Assert.assertEquals("rejected jobs are not kept", 2, jobs.size());
+    }
+
+    @Test
+    public void testNoPrefetchOnInvalidConfig() throws Exception {
+        stopClient();
+        params.remove("print-prefetch-apps");
+        params.remove("map-layout-suffix");
+        try {
+            startClient();
+            Assert.fail("ServletException expected");
+        } catch (ServletException e) {
+            Assert.assertTrue(e.getMessage().contains("map-layout-suffix"));
+        }
+        Thread.sleep(PREFETCH_WAIT_MS);
+        Assert.assertEquals(0, printRequests.get());
+    }
+}
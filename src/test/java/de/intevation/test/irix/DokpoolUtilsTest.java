@@ -22,6 +22,7 @@ import de.intevation.irix.ReportUtils;
 
 import jakarta.xml.bind.JAXBException;
 import java.io.File;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -254,7 +255,7 @@ public class DokpoolUtilsTest {
 //     }
 
     @Test
-    public void testAttachFile() {
+    public void testAttachFile() throws IOException {
         JSONObject json = new JSONObject(REQUEST);
         ReportType report = ReportUtils.prepareReport(json);
         ReportUtils.attachFile("foo", "testdata".getBytes(), report,
@@ -262,10 +263,10 @@ public class DokpoolUtilsTest {
         Assert.assertEquals("foo", report.getAnnexes().getFileEnclosure()
                 .get(0).getTitle());
         byte[] expected = "testdata".getBytes();
+        byte[] actual = report.getAnnexes().getFileEnclosure().get(0)
+            .getEnclosedObject().getInputStream().readAllBytes();
         for (int i = 0; i < expected.length; i++) {
-            Assert.assertEquals(expected[i],
-                    report.getAnnexes().getFileEnclosure().get(0)
-                            .getEnclosedObject()[i]);
+            Assert.assertEquals(expected[i], actual[i]);
         }
     }
 
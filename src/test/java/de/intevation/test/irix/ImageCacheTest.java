@@ -0,0 +1,151 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.ImageCache;
+import de.intevation.irix.ImageException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageCacheTest {
+    static final int TIMEOUT = 5000;
+    static final int HTTP_OK = 200;
+    static final int HTTP_NOT_MODIFIED = 304;
+    static final int HTTP_NOT_FOUND = 404;
+    static final int IMAGE_SIZE = 100;
+    static final int IMAGES = 8;
+    static final String ETAG = "\"v1\"";
+
+    private static final byte[] IMAGE = new byte[IMAGE_SIZE];
+    static {
+        Arrays.fill(IMAGE, (byte) 'x');
+    }
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private AtomicReference<String> condition = new AtomicReference<String>();
+    private ImageCache cache;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/img/", exchange -> {
+            requests.incrementAndGet();
+            String name = exchange.getRequestURI().getPath().substring(
+                "/img/".length());
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "image/png");
+            condition.set(exchange.getRequestHeaders()
+                .getFirst("If-None-Match"));
+            if (name.startsWith("fresh")) {
+                headers.set("Cache-Control", "public, max-age=60");
+            } else if (name.equals("etag")) {
+                headers.set("Cache-Control", "no-cache");
+                headers.set("ETag", ETAG);
+                if (ETAG.equals(condition.get())) {
+                    exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+                    exchange.close();
+                    return;
+                }
+            } else if (name.equals("private")) {
+                headers.set("Cache-Control", "private, max-age=60");
+            } else if (name.equals("missing")) {
+                exchange.sendResponseHeaders(HTTP_NOT_FOUND, 0);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(HTTP_OK, IMAGE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(IMAGE);
+            }
+        });
+        server.start();
+        cache = new ImageCache(IMAGES * IMAGE_SIZE);
+    }
+
+    @After
+    public void stopServer() {
+        cache.shutdown();
+        server.stop(0);
+    }
+
+    private byte[] get(String name) throws IOException, ImageException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.getImage("http://localhost:" + server.getAddress().getPort()
+            + "/img/" + name, TIMEOUT, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testFresh() throws IOException, ImageException {
+        Assert.assertArrayEquals(IMAGE, get("fresh"));
+        Assert.assertArrayEquals(IMAGE, get("fresh"));
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(IMAGE_SIZE, cache.getBytes());
+    }
+
+    @Test
+    public void testRevalidated() throws IOException, ImageException {
+        Assert.assertArrayEquals(IMAGE, get("etag"));
+        Assert.assertNull(condition.get());
+        Assert.assertArrayEquals(IMAGE, get("etag"));
+        Assert.assertEquals(ETAG, condition.get());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, cache.getRevalidations());
+        Assert.assertEquals(1.0 / 2, cache.getHitRatio(), 0);
+    }
+
+    @Test
+    public void testNotStored() throws IOException, ImageException {
+        get("private");
+        get("private");
+        get("plain");
+        get("plain");
+        Assert.assertEquals(2 + 2, requests.get());
+        Assert.assertEquals(0, cache.getBytes());
+        Assert.assertEquals(0, cache.getHitRatio(), 0);
+    }
+
+    @Test
+    public void testEvicted() throws IOException, ImageException {
+        for (int i = 0; i <= IMAGES; i++) {
+            get("fresh" + i);
+        }
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(IMAGES * IMAGE_SIZE, cache.getBytes());
+        get("fresh0");
+        Assert.assertEquals("evicted image loaded again",
+            IMAGES + 2, requests.get());
+        get("fresh" + IMAGES);
+        Assert.assertEquals(IMAGES + 2, requests.get());
+    }
+
+    @Test(expected = ImageException.class)
+    public void testError() throws IOException, ImageException {
+        get("missing");
+    }
+}
@@ -0,0 +1,183 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.Digests;
+import de.intevation.irix.Job;
+import de.intevation.irix.JobEndpoint;
+import de.intevation.irix.JobRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JobEndpointTest {
+    static final int THRESHOLD = 1024;
+    static final long EVENTS_TIMEOUT_MS = 10000;
+    static final int BAD_GATEWAY = 502;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private JobRegistry registry;
+    private JobEndpoint endpoint;
+    private ByteArrayOutputStream body;
+    private AtomicInteger status;
+    private AtomicReference<String> message;
+    private List<Runnable> started;
+    private AtomicInteger completions;
+
+    @Before
+    public void setUp() {
+        registry = new JobRegistry(JobRegistry.DEFAULT_CAPACITY,
+            JobRegistry.DEFAULT_TTL, THRESHOLD, tmp.getRoot().toPath(),
+            Digests.DEFAULT_ALGORITHM);
+        endpoint = new JobEndpoint(registry, EVENTS_TIMEOUT_MS);
+        body = new ByteArrayOutputStream();
+        status = new AtomicInteger(HttpServletResponse.SC_OK);
+        message = new AtomicReference<String>();
+        started = new ArrayList<Runnable>();
+        completions = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    /** Send a GET request of a job resource. */
+    private void get(String pathInfo) throws Exception {
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        HttpServletResponse response = (HttpServletResponse)
+            Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return out;
+                        case "setStatus":
+                            status.set((Integer) args[0]);
+                            return null;
+                        case "sendError":
+                            status.set((Integer) args[0]);
+                            message.set((String) args[1]);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        AsyncContext context = (AsyncContext) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {AsyncContext.class},
+            (p, method, args) -> {
+                switch (method.getName()) {
+                    case "getResponse":
+                        return response;
+                    case "start":
+                        // run later, like a container thread would
+                        started.add((Runnable) args[0]);
+                        return null;
+                    case "complete":
+                        completions.incrementAndGet();
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+        HttpServletRequest request = (HttpServletRequest)
+            Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class},
+                (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPathInfo":
+                            return pathInfo;
+                        case "isAsyncSupported":
+                            return true;
+                        case "startAsync":
+                            return context;
+                        default:
+                            return null;
+                    }
+                });
+        endpoint.handle(request, response);
+    }
+
+    private void runStarted() {
+        List<Runnable> tasks = new ArrayList<Runnable>(started);
+        started.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private String written() {
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFailedReport() throws Exception {
+        Job job = registry.create();
+        job.fail(BAD_GATEWAY, "print service failed");
+        get(JobEndpoint.PREFIX + job.getId() + "/report");
+        Assert.assertEquals(BAD_GATEWAY, status.get());
+        Assert.assertEquals("print service failed", message.get());
+
+        Job running = registry.create();
+        running.start();
+        get(JobEndpoint.PREFIX + running.getId() + "/report");
+        Assert.assertEquals(HttpServletResponse.SC_ACCEPTED, status.get());
+    }
+
+    @Test
+    public void testEventsNotWrittenByJob() throws Exception {
+        Job job = registry.create();
+        get(JobEndpoint.PREFIX + job.getId() + "/events");
+        runStarted();
+        Assert.assertTrue(written().contains("\"queued\""));
+
+        job.start();
+        job.fail(BAD_GATEWAY, "failed");
+        Assert.assertFalse("the job thread does not write",
+            written().contains("\"failed\""));
+        Assert.assertEquals(0, completions.get());
+
+        runStarted();
+        Assert.assertTrue(written().contains("\"failed\""));
+        Assert.assertEquals(1, completions.get());
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.Digests;
+import de.intevation.irix.Job;
+import de.intevation.irix.JobRegistry;
+import de.intevation.irix.Payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JobRegistryTest {
+    static final int THRESHOLD = 1024;
+    static final int CAPACITY = 2;
+    static final int OK = 200;
+    static final int SERVER_ERROR = 500;
+    static final int BAD_GATEWAY = 502;
+    static final long EXPIRY_WAIT_MS = 10;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private JobRegistry newRegistry(long ttl) {
+        return new JobRegistry(CAPACITY, ttl, THRESHOLD,
+            tmp.getRoot().toPath(), Digests.DEFAULT_ALGORITHM);
+    }
+
+    private static Payload body() {
+        return Payload.of("<report/>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStates() throws Exception {
+        JobRegistry registry = newRegistry(JobRegistry.DEFAULT_TTL);
+        Job job = registry.create();
+        List<Job.State> seen = new ArrayList<Job.State>();
+        job.addListener(j -> seen.add(j.getState()));
+        Assert.assertSame(job, registry.get(job.getId()));
+        Assert.assertEquals("queued",
+            job.toJSON("/jobs/" + job.getId()).getString("status"));
+
+        job.start();
+        job.finish(OK, "application/xml", body());
+        Assert.assertEquals(List.of(Job.State.RUNNING, Job.State.DONE), seen);
+        Assert.assertArrayEquals(body().toByteArray(),
+            job.getResult().toByteArray());
+
+        JSONObject json = job.toJSON("/jobs/" + job.getId());
+        Assert.assertEquals("done", json.getString("status"));
+        Assert.assertEquals(OK, json.getInt("httpStatus"));
+        Assert.assertEquals("/jobs/" + job.getId() + "/report",
+            json.getString("report"));
+        registry.shutdown();
+    }
+
+    @Test
+    public void testErrorStatusFails() {
+        JobRegistry registry = newRegistry(JobRegistry.DEFAULT_TTL);
+        Job job = registry.create();
+        job.finish(BAD_GATEWAY, "text/plain", body());
+        Assert.assertEquals(Job.State.FAILED, job.getState());
+
+        Job other = registry.create();
+        other.fail(SERVER_ERROR, "broken");
+        Assert.assertEquals("broken",
+            other.toJSON("/jobs/x").getString("message"));
+        Assert.assertFalse(other.toJSON("/jobs/x").has("report"));
+        registry.shutdown();
+    }
+
+    @Test
+    public void testRejectWhenFullOfUnfinishedJobs() {
+        JobRegistry registry = newRegistry(JobRegistry.DEFAULT_TTL);
+        registry.create();
+        registry.create().start();
+        try {
+            registry.create();
+            Assert.fail("Expected rejection");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(CAPACITY, registry.size());
+        }
+        registry.shutdown();
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedFinished() {
+        JobRegistry registry = newRegistry(JobRegistry.DEFAULT_TTL);
+        Job first = registry.create();
+        Job second = registry.create();
+        first.finish(OK, "application/xml", body());
+        second.finish(OK, "application/xml", body());
+        // accessing the first job makes the second the eldest
+        registry.get(first.getId());
+
+        Job third = registry.create();
+        Assert.assertNull(registry.get(second.getId()));
+        Assert.assertSame(first, registry.get(first.getId()));
+        Assert.assertSame(third, registry.get(third.getId()));
+        registry.shutdown();
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        JobRegistry registry = newRegistry(0);
+        Job running = registry.create();
+        running.start();
+        Job done = registry.create();
+        done.finish(OK, "application/xml", body());
+        Thread.sleep(EXPIRY_WAIT_MS);
+
+        Assert.assertNull(registry.get(done.getId()));
+        Assert.assertSame(running, registry.get(running.getId()));
+        registry.shutdown();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testShutdown() {
+        JobRegistry registry = newRegistry(JobRegistry.DEFAULT_TTL);
+        registry.create();
+        registry.shutdown();
+        Assert.assertEquals(0, registry.size());
+        registry.create();
+    }
+}
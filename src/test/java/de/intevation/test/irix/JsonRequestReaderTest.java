@@ -0,0 +1,105 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.JsonRequestReader;
+import de.intevation.irix.SpilledValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonRequestReaderTest {
+    static final int THRESHOLD = 16;
+    static final int LARGE_SIZE = 100000;
+    static final int NULL_INDEX = 3;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testExamples() throws IOException {
+        File[] examples = new File("examples").listFiles(
+            (dir, name) -> name.endsWith(".json"));
+        Assert.assertNotNull(examples);
+        for (File example : examples) {
+            String json = Files.readString(example.toPath(),
+                StandardCharsets.UTF_8);
+            JSONObject expected = new JSONObject(new JSONTokener(json));
+            try (JsonRequestReader reader =
+                    new JsonRequestReader(0, tmp.getRoot().toPath())) {
+                JSONObject parsed = reader.readObject(new StringReader(json));
+                Assert.assertTrue(example.getName(),
+                    expected.similar(parsed));
+            }
+        }
+    }
+
+    @Test
+    public void testEscapes() throws IOException {
+        String json = "{\"a\":\"x\\\"\\u00e4\\n\",\"b\":[1,2.5,true,null]}";
+        try (JsonRequestReader reader =
+                new JsonRequestReader(0, tmp.getRoot().toPath())) {
+            JSONObject parsed = reader.readObject(new StringReader(json));
+            Assert.assertEquals("x\"ä\n", parsed.getString("a"));
+            Assert.assertEquals(1, parsed.getJSONArray("b").getInt(0));
+            Assert.assertEquals(1, reader.readObject(
+                new StringReader("{'a':1, b:2,}")).getInt("a"));
+            Assert.assertTrue(parsed.getJSONArray("b").isNull(NULL_INDEX));
+        }
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            large.append((char) ('A' + i % ('Z' - 'A')));
+        }
+        String json = "{\"value\":\"" + large + "\",\"title\":\"" + large
+            + "\",\"mimetype\":\"image/png\"}";
+        SpilledValue value;
+        try (JsonRequestReader reader =
+                new JsonRequestReader(THRESHOLD, tmp.getRoot().toPath())) {
+            JSONObject parsed = reader.readObject(new StringReader(json));
+            Assert.assertTrue(parsed.get("value") instanceof SpilledValue);
+            // only values of spill keys are spilled
+            Assert.assertEquals(large.toString(), parsed.getString("title"));
+            value = (SpilledValue) parsed.get("value");
+            Assert.assertEquals(LARGE_SIZE, value.length());
+            Assert.assertEquals(large.toString(), value.toString());
+            try (Reader in = value.openReader()) {
+                Assert.assertEquals('A', in.read());
+            }
+            Assert.assertEquals(1, tmp.getRoot().list().length);
+            Assert.assertTrue(new JSONObject(parsed.toString())
+                .getString("value").equals(large.toString()));
+        }
+        Assert.assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testInvalid() throws IOException {
+        try (JsonRequestReader reader =
+                new JsonRequestReader(0, tmp.getRoot().toPath())) {
+            reader.readObject(new StringReader("{\"a\" 1}"));
+        }
+    }
+}
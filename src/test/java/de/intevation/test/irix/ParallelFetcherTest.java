@@ -0,0 +1,117 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.ParallelFetcher;
+import de.intevation.irix.PrintException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelFetcherTest {
+    static final int THREADS = 8;
+    static final int PARALLELISM = 3;
+    static final int FETCHES = 12;
+    static final int FAILING = 1;
+    static final long DELAY_MS = 20;
+    static final long SLOW_MS = 10000;
+    static final int TEST_TIMEOUT = 5000;
+
+    private ParallelFetcher fetcher;
+
+    @Before
+    public void setup() {
+        fetcher = new ParallelFetcher(THREADS, PARALLELISM);
+    }
+
+    @After
+    public void shutdown() {
+        fetcher.shutdown();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted");
+        }
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testOrderAndLimit() throws IOException, PrintException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<ParallelFetcher.Fetch<Integer, PrintException>> fetches =
+            new ArrayList<ParallelFetcher.Fetch<Integer, PrintException>>();
+        for (int i = 0; i < FETCHES; i++) {
+            int n = i;
+            fetches.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(),
+                    Math::max);
+                // later fetches finish first
+                sleep(DELAY_MS * (FETCHES - n) / FETCHES);
+                running.decrementAndGet();
+                return n;
+            });
+        }
+        List<Integer> results = fetcher.fetchAll(fetches,
+            PrintException.class);
+        for (int i = 0; i < FETCHES; i++) {
+            Assert.assertEquals(Integer.valueOf(i), results.get(i));
+        }
+        Assert.assertTrue(maxRunning.get() <= PARALLELISM);
+        Assert.assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testFailureCancelsOthers() throws IOException {
+        List<ParallelFetcher.Fetch<Integer, PrintException>> fetches =
+            new ArrayList<ParallelFetcher.Fetch<Integer, PrintException>>();
+        for (int i = 0; i < FETCHES; i++) {
+            int n = i;
+            fetches.add(() -> {
+                if (n == FAILING) {
+                    throw new PrintException("failed");
+                }
+                // only returns in time if cancelled
+                sleep(SLOW_MS);
+                return n;
+            });
+        }
+        try {
+            fetcher.fetchAll(fetches, PrintException.class);
+            Assert.fail("PrintException expected");
+        } catch (PrintException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testSequential() throws IOException, PrintException {
+        ParallelFetcher sequential = new ParallelFetcher(THREADS, 1);
+        try {
+            List<ParallelFetcher.Fetch<Integer, PrintException>> fetches =
+                new ArrayList<ParallelFetcher.Fetch<Integer, PrintException>>();
+            fetches.add(() -> 1);
+            fetches.add(() -> {
+                throw new IOException("failed");
+            });
+            sequential.fetchAll(fetches, PrintException.class);
+        } finally {
+            sequential.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.PropertyAccessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PropertyAccessorsTest {
+
+    public static class Bean {
+        private String name;
+        private Boolean flag;
+        private int count;
+        private List<String> items;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String value) {
+            this.name = value;
+        }
+
+        public Boolean isFlag() {
+            return flag;
+        }
+
+        public void setFlag(Boolean value) {
+            this.flag = value;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int value) {
+            this.count = value;
+        }
+
+        public List<String> getItems() {
+            if (items == null) {
+                items = new ArrayList<String>();
+            }
+            return items;
+        }
+    }
+
+    private static final PropertyAccessors<Bean> ACCESSORS =
+        PropertyAccessors.of(Bean.class);
+
+    @Test
+    public void testSet() {
+        Bean bean = new Bean();
+        ACCESSORS.set(bean, "Name", "foo");
+        ACCESSORS.set(bean, "Flag", true);
+        ACCESSORS.set(bean, "Count", 2);
+        Assert.assertEquals("foo", bean.getName());
+        Assert.assertTrue(bean.isFlag());
+        Assert.assertEquals(2, bean.getCount());
+        Assert.assertFalse(ACCESSORS.hasSetter("Items"));
+    }
+
+    @Test
+    public void testList() {
+        Bean bean = new Bean();
+        Assert.assertTrue(ACCESSORS.hasList("Items"));
+        Assert.assertFalse(ACCESSORS.hasList("Name"));
+        ACCESSORS.getList(bean, "Items").add("a");
+        Assert.assertEquals(List.of("a"), bean.getItems());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongType() {
+        ACCESSORS.set(new Bean(), "Name", Boolean.TRUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknown() {
+        ACCESSORS.set(new Bean(), "Unknown", "foo");
+    }
+}
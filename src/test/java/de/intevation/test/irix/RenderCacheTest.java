@@ -0,0 +1,185 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.Payload;
+import de.intevation.irix.RenderCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderCacheTest {
+    static final int DOCUMENT = 40;
+    static final int MEMORY = 100;
+    static final int DISK = 1000;
+    static final long TTL = 60;
+    static final int THIRD = 3;
+    static final String URL = "http://print/print/app/buildreport";
+    static final String CAPA_URL = "http://print/print/app/capabilities.json";
+
+    private Path dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("render-cache");
+    }
+
+    @After
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static Payload document(int fill) {
+        byte[] content = new byte[DOCUMENT];
+        Arrays.fill(content, (byte) fill);
+        return Payload.of(content);
+    }
+
+    private static byte[] read(RenderCache cache, String key)
+            throws IOException {
+        try (InputStream in = cache.get(key)) {
+            if (in == null) {
+                return null;
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    private static long files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testKey() {
+        String key = RenderCache.key(
+            "{\"layout\": \"A4\", \"attributes\": {\"b\": 1, \"a\": [1, 2]}}",
+            "pdf", URL);
+        Assert.assertEquals(key, RenderCache.key(
+            "{\"attributes\":{\"a\":[1,2],\"b\":1},\"layout\":\"A4\"}",
+            "pdf", URL));
+        Assert.assertNotEquals(key, RenderCache.key(
+            "{\"attributes\":{\"a\":[2,1],\"b\":1},\"layout\":\"A4\"}",
+            "pdf", URL));
+        Assert.assertNotEquals(key, RenderCache.key(
+            "{\"attributes\":{\"a\":[1,2],\"b\":1},\"layout\":\"A4\"}",
+            "png", URL));
+        Assert.assertNotEquals(key, RenderCache.key(
+            "{\"attributes\":{\"a\":[1,2],\"b\":1},\"layout\":\"A4\"}",
+            "pdf", URL + "2"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws IOException {
+        RenderCache cache = new RenderCache(MEMORY, null, 0);
+        cache.put("a", document(1), TTL, CAPA_URL,
+            cache.generation());
+        cache.put("b", document(2), TTL, CAPA_URL,
+            cache.generation());
+        Assert.assertNotNull(read(cache, "a"));
+        cache.put("c", document(THIRD), TTL, CAPA_URL,
+            cache.generation());
+        Assert.assertNull(read(cache, "b"));
+        Assert.assertArrayEquals(document(1).toByteArray(), read(cache, "a"));
+        Assert.assertArrayEquals(document(THIRD).toByteArray(), read(cache, "c"));
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(2 * DOCUMENT, cache.getMemoryBytes());
+        Assert.assertEquals(2 + 1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testDiskTier() throws IOException {
+        RenderCache cache = new RenderCache(DOCUMENT, dir, DISK);
+        cache.put("a", document(1), TTL, CAPA_URL,
+            cache.generation());
+        cache.put("b", document(2), TTL, CAPA_URL,
+            cache.generation());
+        Assert.assertEquals(DOCUMENT, cache.getMemoryBytes());
+        Assert.assertEquals(DOCUMENT, cache.getDiskBytes());
+        Assert.assertEquals(1, files(dir));
+        Assert.assertArrayEquals(document(1).toByteArray(), read(cache, "a"));
+
+        RenderCache small = new RenderCache(DOCUMENT - 1, dir, DISK);
+        Assert.assertEquals("stale files deleted", 0, files(dir));
+        small.put("c", document(THIRD), TTL, CAPA_URL,
+            small.generation());
+        Assert.assertEquals(0, small.getMemoryBytes());
+        Assert.assertArrayEquals(document(THIRD).toByteArray(), read(small, "c"));
+        small.shutdown();
+        Assert.assertEquals(0, files(dir));
+    }
+
+    @Test
+    public void testInvalidateAndTtl() throws IOException {
+        RenderCache cache = new RenderCache(MEMORY, null, 0);
+        cache.put("a", document(1), TTL, CAPA_URL,
+            cache.generation());
+        cache.put("b", document(2), TTL, CAPA_URL + "2",
+            cache.generation());
+        cache.put("c", document(THIRD), 0, CAPA_URL,
+            cache.generation());
+        Assert.assertNull(read(cache, "c"));
+        cache.invalidate(CAPA_URL);
+        Assert.assertNull(read(cache, "a"));
+        Assert.assertNotNull(read(cache, "b"));
+        Assert.assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void testInvalidatedWhileRendered() throws IOException {
+        RenderCache cache = new RenderCache(DOCUMENT, dir, DISK);
+        long rendered = cache.generation();
+        // the capabilities change while "a" is rendered
+        cache.invalidate(CAPA_URL);
+        cache.put("a", document(1), TTL, CAPA_URL, rendered);
+        Assert.assertNull("stale document not cached", read(cache, "a"));
+        Assert.assertEquals(0, cache.getMemoryBytes());
+
+        cache.put("a", document(1), TTL, CAPA_URL, cache.generation());
+        Assert.assertNotNull(read(cache, "a"));
+    }
+
+    @Test
+    public void testInvalidatedWhileDemoted() throws IOException {
+        RenderCache cache = new RenderCache(DOCUMENT, dir, DISK) {
+            @Override
+            protected Path write(String key, InputStream content)
+                    throws IOException {
+                Path file = super.write(key, content);
+                // the capabilities change while "a" is written to disk
+                invalidate(CAPA_URL);
+                return file;
+            }
+        };
+        cache.put("a", document(1), TTL, CAPA_URL,
+            cache.generation());
+        cache.put("b", document(2), TTL, CAPA_URL,
+            cache.generation());
+        Assert.assertNull("stale document not demoted", read(cache, "a"));
+        Assert.assertNull(read(cache, "b"));
+        Assert.assertEquals(0, cache.getDiskBytes());
+        Assert.assertEquals(0, files(dir));
+    }
+}
@@ -28,6 +28,7 @@ import de.intevation.irix.ReportUtils;
 import org.xml.sax.SAXException;
 
 import java.io.File;
+import java.io.IOException;
 
 import jakarta.xml.bind.JAXBException;
 public class ReportUtilsTest {
@@ -360,7 +361,7 @@ public class ReportUtilsTest {
     // }
 
     @Test
-    public void testAttachFile() {
+    public void testAttachFile() throws IOException {
         JSONObject json = new JSONObject(REQUEST);
         ReportType report = ReportUtils.prepareReport(json);
         ReportUtils.attachFile("foo", "testdata".getBytes(), report,
@@ -368,10 +369,10 @@ public class ReportUtilsTest {
         Assert.assertEquals(
             "foo", report.getAnnexes().getFileEnclosure().get(0).getTitle());
         byte[] expected  = "testdata".getBytes();
+        byte[] actual = report.getAnnexes().getFileEnclosure().get(0)
+            .getEnclosedObject().getInputStream().readAllBytes();
         for (int i = 0; i < expected.length; i++) {
-            Assert.assertEquals(expected[i],
-                report.getAnnexes().getFileEnclosure().get(0)
-                    .getEnclosedObject()[i]);
+            Assert.assertEquals(expected[i], actual[i]);
         }
     }
 
@@ -0,0 +1,81 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.SchemaRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.xml.validation.Schema;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+public class SchemaRegistryTest {
+
+    private static final String XSD =
+        "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+        + "<xs:element name=\"%s\" type=\"xs:string\"/>"
+        + "</xs:schema>";
+
+    /** Schema files are only looked at once per second. */
+    private static final long CHECK_WAIT_MS = 1100;
+    private static final long MTIME_STEP_MS = 10000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        SchemaRegistry.clear();
+    }
+
+    private File writeSchema(String element) throws IOException {
+        File xsd = new File(tmp.getRoot(), "test.xsd");
+        Files.write(xsd.toPath(),
+            String.format(XSD, element).getBytes(StandardCharsets.UTF_8));
+        return xsd;
+    }
+
+    @Test
+    public void testCompiledOnce() throws IOException, SAXException {
+        File xsd = writeSchema("foo");
+        long compiles = SchemaRegistry.getCompiles();
+        long hits = SchemaRegistry.getHits();
+        Schema first = SchemaRegistry.getSchema(xsd);
+        Schema second = SchemaRegistry.getSchema(xsd);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(compiles + 1, SchemaRegistry.getCompiles());
+        Assert.assertEquals(hits + 1, SchemaRegistry.getHits());
+    }
+
+    @Test
+    public void testReloadOnChange()
+            throws IOException, SAXException, InterruptedException {
+        File xsd = writeSchema("foo");
+        Schema first = SchemaRegistry.getSchema(xsd);
+        writeSchema("bar");
+        xsd.setLastModified(xsd.lastModified() + MTIME_STEP_MS);
+        Thread.sleep(CHECK_WAIT_MS);
+        Schema second = SchemaRegistry.getSchema(xsd);
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test(expected = SAXException.class)
+    public void testMissingSchema() throws SAXException {
+        SchemaRegistry.getSchema(new File(tmp.getRoot(), "missing.xsd"));
+    }
+}
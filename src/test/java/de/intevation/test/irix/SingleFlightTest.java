@@ -0,0 +1,184 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.AttachmentStore;
+import de.intevation.irix.Payload;
+import de.intevation.irix.PrintException;
+import de.intevation.irix.SingleFlight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SingleFlightTest {
+    static final int CALLERS = 4;
+    static final int THRESHOLD = 16;
+    static final int LARGE_SIZE = 1000;
+    static final long TIMEOUT_S = 10;
+    static final String KEY = SingleFlight.key("POST", "http://print/a.pdf",
+        "{}");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final SingleFlight flights = new SingleFlight();
+    private final ExecutorService executor =
+        Executors.newFixedThreadPool(CALLERS);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Wait until the first caller runs, then start the others. */
+    private <T> List<Future<T>> callConcurrently(Callable<T> call)
+            throws InterruptedException {
+        List<Future<T>> results = new ArrayList<Future<T>>();
+        results.add(executor.submit(call));
+        Assert.assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            results.add(executor.submit(call));
+        }
+        while (flights.getShared() < CALLERS - 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        return results;
+    }
+
+    private void block() throws PrintException {
+        calls.incrementAndGet();
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new PrintException("interrupted");
+        }
+    }
+
+    @Test
+    public void testKey() {
+        Assert.assertEquals(KEY, SingleFlight.key("POST",
+            "http://print/a.pdf", "{}"));
+        Assert.assertNotEquals(KEY, SingleFlight.key("POST",
+            "http://print/a.pdf", "{ }"));
+        Assert.assertNotEquals(KEY, SingleFlight.key("POST",
+            "http://print/a.png", "{}"));
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        Object result = new Object();
+        List<Future<Object>> results = callConcurrently(() ->
+            flights.execute(KEY, () -> {
+                block();
+                return result;
+            }, PrintException.class));
+        for (Future<Object> future : results) {
+            Assert.assertSame(result, future.get(TIMEOUT_S, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, flights.getSent());
+        Assert.assertEquals(0, flights.getInFlight());
+
+        flights.execute(KEY, () -> calls.incrementAndGet(),
+            PrintException.class);
+        Assert.assertEquals("finished requests are not reused",
+            2, calls.get());
+    }
+
+    @Test
+    public void testFailureShared() throws Exception {
+        List<Future<Object>> results = callConcurrently(() ->
+            flights.execute(KEY, () -> {
+                block();
+                throw new PrintException("failed");
+            }, PrintException.class));
+        for (Future<Object> future : results) {
+            try {
+                future.get(TIMEOUT_S, TimeUnit.SECONDS);
+                Assert.fail("PrintException expected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof PrintException);
+                Assert.assertEquals("failed", e.getCause().getMessage());
+            }
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testLeaderInterrupted() throws Exception {
+        Object result = new Object();
+        Callable<Object> call = () -> flights.execute(KEY, () -> {
+            if (calls.incrementAndGet() == 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PrintException("interrupted");
+                }
+            }
+            return result;
+        }, PrintException.class);
+        Future<Object> leader = executor.submit(call);
+        Assert.assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        Future<Object> follower = executor.submit(call);
+        while (flights.getShared() < 1) {
+            Thread.sleep(1);
+        }
+        leader.cancel(true);
+        Assert.assertSame("follower sends the request again",
+            result, follower.get(TIMEOUT_S, TimeUnit.SECONDS));
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(0, flights.getInFlight());
+    }
+
+    @Test
+    public void testPayloadCopied() throws Exception {
+        byte[] data = new byte[LARGE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        List<Future<byte[]>> results = callConcurrently(() -> {
+            Payload payload;
+            try (AttachmentStore store = new AttachmentStore(THRESHOLD,
+                    tmp.getRoot().toPath())) {
+                payload = flights.store(KEY, store, out -> {
+                    block();
+                    out.write(data);
+                }, PrintException.class);
+                Assert.assertFalse(payload.isInMemory());
+                return payload.toByteArray();
+            }
+        });
+        for (Future<byte[]> future : results) {
+            Assert.assertArrayEquals(data,
+                future.get(TIMEOUT_S, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+}
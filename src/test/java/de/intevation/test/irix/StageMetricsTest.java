@@ -0,0 +1,93 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.StageMetrics;
+import de.intevation.irix.StageStatistics;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StageMetricsTest {
+    static final int SAMPLES = 100;
+    static final long FAST_MS = 3;
+    static final long SLOW_MS = 300;
+    static final int SLOW_EVERY = 10;
+    static final double DELTA = 1e-9;
+    static final double P50_MAX_MS = 5;
+    static final double P99_MIN_MS = 200;
+
+    private static StageMetrics record() {
+        StageMetrics metrics = new StageMetrics();
+        for (int i = 0; i < SAMPLES; i++) {
+            long ms = FAST_MS;
+            if (i % SLOW_EVERY == 0) {
+                ms = SLOW_MS;
+            }
+            metrics.record(StageMetrics.PRINT + "pdf", "app",
+                StageMetrics.host("http://print:8080/print/app/buildreport"),
+                TimeUnit.MILLISECONDS.toNanos(ms), i == 0);
+        }
+        return metrics;
+    }
+
+    @Test
+    public void testStatistics() {
+        List<StageStatistics> stats = record().getStatistics();
+        Assert.assertEquals(1, stats.size());
+        StageStatistics print = stats.get(0);
+        Assert.assertEquals("print_pdf", print.getStage());
+        Assert.assertEquals("print:8080", print.getHost());
+        Assert.assertEquals(SAMPLES, print.getCount());
+        Assert.assertEquals(1, print.getErrors());
+        Assert.assertEquals(SLOW_MS, print.getMaxMs(), DELTA);
+        Assert.assertTrue(print.getP50Ms() <= P50_MAX_MS);
+        Assert.assertTrue(print.getP99Ms() >= P99_MIN_MS);
+        Assert.assertTrue(print.getP99Ms() <= SLOW_MS + SLOW_MS);
+    }
+
+    @Test
+    public void testPrometheus() throws Exception {
+        StringWriter out = new StringWriter();
+        record().writePrometheus(out);
+        String text = out.toString();
+        String labels = "stage=\"print_pdf\",app=\"app\",host=\"print:8080\"";
+        Assert.assertTrue(text.contains(
+            "# TYPE irix_stage_duration_seconds histogram"));
+        Assert.assertTrue(text.contains("irix_stage_duration_seconds_bucket{"
+            + labels + ",le=\"0.002\"} 0\n"));
+        Assert.assertTrue(text.contains("irix_stage_duration_seconds_bucket{"
+            + labels + ",le=\"0.005\"} " + (SAMPLES - SAMPLES / SLOW_EVERY)
+            + "\n"));
+        Assert.assertTrue(text.contains("irix_stage_duration_seconds_bucket{"
+            + labels + ",le=\"+Inf\"} " + SAMPLES + "\n"));
+        Assert.assertTrue(text.contains("irix_stage_duration_seconds_count{"
+            + labels + "} " + SAMPLES + "\n"));
+        Assert.assertTrue(text.contains("irix_stage_errors_total{"
+            + labels + "} 1\n"));
+    }
+
+    @Test
+    public void testAddedSeries() throws Exception {
+        StageMetrics metrics = new StageMetrics();
+        metrics.addCounter("irix_test_hits_total", "Hits.", () -> 2);
+        metrics.addGauge("irix_test_bytes", "Bytes.", () -> 1);
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        String text = out.toString();
+        Assert.assertTrue(text.contains("# TYPE irix_test_hits_total counter\n"
+            + "irix_test_hits_total 2.0\n"));
+        Assert.assertTrue(text.contains("# TYPE irix_test_bytes gauge\n"
+            + "irix_test_bytes 1.0\n"));
+    }
+}
@@ -0,0 +1,165 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.UploadOutbox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadOutboxTest {
+    static final int PARALLELISM = 2;
+    static final int ATTEMPTS = 3;
+    static final long BACKOFF_MS = 1;
+    static final long LONG_BACKOFF_MS = 60000;
+    static final long WAIT_S = 10;
+    static final long SHUTDOWN_MS = 1000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private UploadOutbox newOutbox(UploadOutbox.Uploader uploader,
+            long backoff) throws IOException {
+        UploadOutbox outbox = new UploadOutbox(tmp.getRoot().toPath(),
+            uploader, PARALLELISM, ATTEMPTS, backoff, backoff);
+        outbox.start();
+        return outbox;
+    }
+
+    private static void enqueue(UploadOutbox outbox, String content)
+            throws IOException {
+        outbox.enqueue(out -> out.write(
+            content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private List<String> list(String dir) throws IOException {
+        try (Stream<Path> files =
+                Files.list(tmp.getRoot().toPath().resolve(dir))) {
+            return files.map(p -> p.getFileName().toString()).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        List<String> uploaded = new CopyOnWriteArrayList<String>();
+        CountDownLatch done = new CountDownLatch(2);
+        UploadOutbox outbox = newOutbox(file -> {
+            uploaded.add(read(file));
+            done.countDown();
+        }, BACKOFF_MS);
+        enqueue(outbox, "<report>1</report>");
+        enqueue(outbox, "<report>2</report>");
+
+        Assert.assertTrue(done.await(WAIT_S, TimeUnit.SECONDS));
+        outbox.shutdown(SHUTDOWN_MS);
+        Assert.assertEquals(2, uploaded.size());
+        Assert.assertTrue(uploaded.contains("<report>1</report>"));
+        Assert.assertTrue(list("pending").isEmpty());
+        Assert.assertTrue(list("dead").isEmpty());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        UploadOutbox outbox = newOutbox(file -> {
+            if (calls.incrementAndGet() < ATTEMPTS) {
+                throw new IOException("Service unavailable");
+            }
+            done.countDown();
+        }, BACKOFF_MS);
+        enqueue(outbox, "<report/>");
+
+        Assert.assertTrue(done.await(WAIT_S, TimeUnit.SECONDS));
+        outbox.shutdown(SHUTDOWN_MS);
+        Assert.assertEquals(ATTEMPTS, calls.get());
+        Assert.assertTrue(list("pending").isEmpty());
+        Assert.assertTrue(list("dead").isEmpty());
+    }
+
+    @Test
+    public void testDeadLetterRejected() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        UploadOutbox outbox = newOutbox(file -> {
+            calls.incrementAndGet();
+            throw new UploadOutbox.RejectedException("Invalid report", null);
+        }, BACKOFF_MS);
+        enqueue(outbox, "<report/>");
+        outbox.shutdown(SHUTDOWN_MS);
+
+        Assert.assertEquals(1, calls.get());
+        Assert.assertTrue(list("pending").isEmpty());
+        List<String> dead = list("dead");
+        Assert.assertEquals(2, dead.size());
+        Assert.assertTrue(dead.get(0).endsWith(".xml"));
+        Assert.assertTrue(dead.get(1).endsWith(".xml.error"));
+    }
+
+    @Test
+    public void testDeadLetterAfterAttempts() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        UploadOutbox outbox = newOutbox(file -> {
+            calls.incrementAndGet();
+            throw new IOException("Service unavailable");
+        }, BACKOFF_MS);
+        enqueue(outbox, "<report/>");
+
+        long deadline = System.currentTimeMillis()
+            + TimeUnit.SECONDS.toMillis(WAIT_S);
+        while (outbox.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(BACKOFF_MS);
+        }
+        outbox.shutdown(SHUTDOWN_MS);
+        Assert.assertEquals(ATTEMPTS, calls.get());
+        Assert.assertEquals(2, list("dead").size());
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        UploadOutbox failing = newOutbox(file -> {
+            throw new IOException("Service unavailable");
+        }, LONG_BACKOFF_MS);
+        enqueue(failing, "<report/>");
+        // the retry is due in a minute, the shutdown tries once more
+        failing.shutdown(SHUTDOWN_MS);
+        Assert.assertEquals(1, list("pending").size());
+
+        List<String> uploaded = new CopyOnWriteArrayList<String>();
+        CountDownLatch done = new CountDownLatch(1);
+        UploadOutbox outbox = new UploadOutbox(tmp.getRoot().toPath(),
+            file -> {
+                uploaded.add(read(file));
+                done.countDown();
+            }, PARALLELISM, ATTEMPTS, BACKOFF_MS, BACKOFF_MS);
+        Assert.assertEquals(1, outbox.start());
+        Assert.assertTrue(done.await(WAIT_S, TimeUnit.SECONDS));
+        outbox.shutdown(SHUTDOWN_MS);
+        Assert.assertEquals(List.of("<report/>"), uploaded);
+        Assert.assertTrue(list("pending").isEmpty());
+    }
+}
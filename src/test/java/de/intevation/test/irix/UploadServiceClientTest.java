@@ -0,0 +1,197 @@
+/* Copyright (C) 2015-2025 by Bundesamt fuer Strahlenschutz
+ * Software engineering by Intevation GmbH
+ *
+ * This file is Free Software under the GNU GPL (v>=3)
+ * and comes with ABSOLUTELY NO WARRANTY!
+ * See LICENSE for details.
+ */
+
+package de.intevation.test.irix;
+
+import de.intevation.irix.UploadServiceClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.servlet.ServletException;
+import jakarta.xml.ws.BindingProvider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadServiceClientTest {
+    static final int POOL_SIZE = 2;
+    static final long ACQUIRE_TIMEOUT_MS = 10;
+    static final int HTTP_OK = 200;
+    static final int HTTP_NOT_FOUND = 404;
+    static final Path META_INF = Path.of("src/main/webapp/META-INF");
+    static final String WSDL_NAME = "upload-report-v1.wsdl";
+    static final String XSD_NAME = "upload-report.xsd";
+    static final String CHUNK_SIZE_PROPERTY =
+        "com.sun.xml.ws.transport.http.client.streaming.chunk.size";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicReference<byte[]> wsdl = new AtomicReference<byte[]>();
+    private UploadServiceClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        wsdl.set(Files.readAllBytes(META_INF.resolve(WSDL_NAME)));
+        // the stored WSDL refers to the schema next to it
+        Files.copy(META_INF.resolve(XSD_NAME),
+            tmp.getRoot().toPath().resolve(XSD_NAME));
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/upload", exchange -> {
+            fetches.incrementAndGet();
+            byte[] body = wsdl.get();
+            if (body == null) {
+                exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        server.stop(0);
+    }
+
+    private UploadServiceClient newClient(URL fallback) throws IOException {
+        client = new UploadServiceClient(
+            new URL("http://localhost:" + server.getAddress().getPort()
+                + "/upload"),
+            "none", null, tmp.getRoot().toPath().resolve(WSDL_NAME),
+            fallback, 0, POOL_SIZE);
+        client.setAcquireTimeout(ACQUIRE_TIMEOUT_MS);
+        return client;
+    }
+
+    private static void assertExhausted(UploadServiceClient pool) {
+        try {
+            pool.acquire();
+            Assert.fail("ServletException expected");
+        } catch (ServletException e) {
+            Assert.assertTrue(e.getMessage().contains("proxy"));
+        }
+    }
+
+    @Test
+    public void testReused() throws Exception {
+        newClient(null);
+        UploadServiceClient.PooledPort port = client.acquire();
+        client.release(port);
+        UploadServiceClient.PooledPort again = client.acquire();
+        Assert.assertSame(port.getPort(), again.getPort());
+
+        client.discard(again);
+        UploadServiceClient.PooledPort fresh = client.acquire();
+        Assert.assertNotSame("discarded proxies are not reused",
+            port.getPort(), fresh.getPort());
+        client.release(fresh);
+        Assert.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        newClient(null);
+        UploadServiceClient.PooledPort first = client.acquire();
+        UploadServiceClient.PooledPort second = client.acquire();
+        assertExhausted(client);
+
+        client.release(first);
+        client.release(first);
+        UploadServiceClient.PooledPort third = client.acquire();
+        assertExhausted(client);
+        client.discard(second);
+        client.release(third);
+        client.acquire();
+        client.acquire();
+        assertExhausted(client);
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        newClient(null);
+        UploadServiceClient.PooledPort port = client.acquire();
+        client.release(port);
+        client.refresh();
+        UploadServiceClient.PooledPort same = client.acquire();
+        Assert.assertSame("unchanged WSDL keeps the proxies",
+            port.getPort(), same.getPort());
+
+        wsdl.set((new String(wsdl.get(), StandardCharsets.UTF_8)
+            + "<!-- v2 -->").getBytes(StandardCharsets.UTF_8));
+        client.refresh();
+        client.release(same);
+        UploadServiceClient.PooledPort changed = client.acquire();
+        Assert.assertNotSame("changed WSDL replaces the proxies",
+            port.getPort(), changed.getPort());
+        Assert.assertTrue(new String(Files.readAllBytes(
+            tmp.getRoot().toPath().resolve(WSDL_NAME)),
+            StandardCharsets.UTF_8).endsWith("<!-- v2 -->"));
+        Assert.assertEquals(2 + 1, fetches.get());
+    }
+
+    @Test
+    public void testBundledFallback() throws Exception {
+        wsdl.set(null);
+        newClient(META_INF.resolve(WSDL_NAME).toUri().toURL());
+        client.release(client.acquire());
+
+        client.shutdown();
+        newClient(null);
+        try {
+            client.acquire();
+            Assert.fail("ServletException expected");
+        } catch (ServletException e) {
+            Assert.assertTrue(e.getMessage().contains("WSDL"));
+        }
+    }
+
+    private static Object chunkSize(UploadServiceClient.PooledPort port) {
+        return ((BindingProvider) port.getPort()).getRequestContext()
+            .get(CHUNK_SIZE_PROPERTY);
+    }
+
+    @Test
+    public void testChunkedOnlyWithMtom() throws Exception {
+        newClient(null);
+        client.configureTransfer(false, 0,
+            UploadServiceClient.DEFAULT_CHUNK_SIZE);
+        Assert.assertNull(chunkSize(client.acquire()));
+
+        newClient(null);
+        client.configureTransfer(true, 0,
+            UploadServiceClient.DEFAULT_CHUNK_SIZE);
+        Assert.assertEquals(UploadServiceClient.DEFAULT_CHUNK_SIZE,
+            chunkSize(client.acquire()));
+    }
+}